@@ -0,0 +1,91 @@
+package com.holyk.clearsolutions.benchmarks;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+
+/**
+ * Birthdate index range query, whole and first page, against the former full
+ * stream filter over a list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class BirthdateRangeBenchmark {
+
+	static final LocalDate EARLIEST = LocalDate.of(1950, 1, 1);
+	static final int DAYS = 20_000;
+
+	@Param({ "10000", "1000000", "10000000" })
+	int size;
+
+	@Param({ "1", "30", "365" })
+	int windowDays;
+
+	LongHashUserStore store;
+	List<User> list;
+	LocalDate from;
+	LocalDate to;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		store = new LongHashUserStore(size);
+		list = new ArrayList<>(size);
+		SplittableRandom random = new SplittableRandom(42);
+		for (int i = 1; i <= size; i++) {
+			User user = new User("mail" + i + "@mail.com", "John", "Doe", EARLIEST.plusDays(random.nextInt(DAYS)),
+					"address", "phone");
+			user.setId(i);
+			store.put(user);
+			list.add(user);
+		}
+		from = EARLIEST.plusDays(DAYS / 2);
+		to = from.plusDays(windowDays - 1);
+	}
+
+	@Benchmark
+	public List<User> indexed() {
+		return store.findByBirthdateBetween(from, to);
+	}
+
+	/**
+	 * First page of 100 users, the cost does not grow with the window
+	 */
+	@Benchmark
+	public List<User> indexedPage() {
+		List<User> page = new ArrayList<>(100);
+		store.forEachByBirthdateBetween(from, Long.MIN_VALUE, to, user -> {
+			page.add(user);
+			return page.size() < 100;
+		});
+		return page;
+	}
+
+	@Benchmark
+	public List<User> streamFilter() {
+		return list.stream().filter(u -> from.compareTo(u.getBirthdate()) * u.getBirthdate().compareTo(to) >= 0)
+				.toList();
+	}
+
+}
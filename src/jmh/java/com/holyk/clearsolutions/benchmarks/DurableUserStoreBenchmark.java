@@ -0,0 +1,82 @@
+package com.holyk.clearsolutions.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.store.DurableUserStore;
+
+/**
+ * Durable puts, each one waits for its fsync. With more threads the writes
+ * waiting together are committed by one fsync, so throughput grows while the
+ * number of fsyncs does not.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DurableUserStoreBenchmark {
+
+	Path directory;
+	DurableUserStore store;
+	AtomicLong ids;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("user-store-benchmark");
+		store = DurableUserStore.open(directory, 1_000_000);
+		ids = new AtomicLong(1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		System.out.println("fsyncs: " + store.syncs() + ", users: " + store.size());
+		store.close();
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+				Files.delete(file);
+			}
+		}
+	}
+
+	@Benchmark
+	@Threads(1)
+	public User put() {
+		return store.put(user());
+	}
+
+	@Benchmark
+	@Threads(8)
+	public User put8Threads() {
+		return store.put(user());
+	}
+
+	private User user() {
+		User user = new User("mail@mail.com", "John", "Doe", LocalDate.of(2000, 1, 1), "address", "phone");
+		user.setId(ids.getAndIncrement());
+		return user;
+	}
+
+}
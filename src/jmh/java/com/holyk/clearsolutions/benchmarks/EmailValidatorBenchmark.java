@@ -0,0 +1,65 @@
+package com.holyk.clearsolutions.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.holyk.clearsolutions.validation.EmailValidator;
+
+/**
+ * Email check as it was, with String.matches compiling the pattern on every
+ * call, with a precompiled pattern and with the scanner. The hostile input is a
+ * long run of labels that fails only at the last character.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailValidatorBenchmark {
+
+	private static final Pattern COMPILED = Pattern.compile(EmailValidator.PATTERN);
+
+	@Param({ "valid", "invalid", "hostile" })
+	String input;
+
+	String email;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		email = switch (input) {
+		case "valid" -> "first.last-1@mail.example.com";
+		case "invalid" -> "first.last-1@mail";
+		default -> "user@" + "a-b.".repeat(250) + "com!";
+		};
+	}
+
+	@Benchmark
+	public boolean stringMatches() {
+		return email.matches(EmailValidator.PATTERN);
+	}
+
+	@Benchmark
+	public boolean compiledPattern() {
+		return COMPILED.matcher(email).matches();
+	}
+
+	@Benchmark
+	public boolean scanner() {
+		return EmailValidator.isValid(email);
+	}
+
+}
@@ -0,0 +1,136 @@
+package com.holyk.clearsolutions.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.holyk.clearsolutions.UserServiceBuilder;
+import com.holyk.clearsolutions.controllers.UserController;
+import com.holyk.clearsolutions.controllers.UserErrorResponse;
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.services.UserImporter;
+import com.holyk.clearsolutions.services.UserNdjsonWriter;
+import com.holyk.clearsolutions.services.UserService;
+import com.holyk.clearsolutions.validation.UserValidator;
+import com.holyk.clearsolutions.validation.UserValidator.Today;
+import com.holyk.clearsolutions.validation.ValidationError;
+
+/**
+ * A sign-up with an invalid email turned into an error response: thrown as an
+ * exception with a stack trace as before, thrown as the shared stackless
+ * exception of the controller and returned as a {@link ValidationError} like
+ * the batch endpoints do. The depth adds frames below the validation, a
+ * request served by Spring is about a hundred frames deep.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RejectPathBenchmark {
+
+	@Param({ "0", "100" })
+	int depth;
+
+	UserValidator validator;
+	MethodHandle validateUser;
+	UserController controller;
+	UserRequest request;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Throwable {
+		validator = new UserValidator(18);
+		UserService service = new UserServiceBuilder().build();
+		ObjectMapper mapper = JsonMapper.builder().findAndAddModules().build();
+		controller = new UserController(service, validator, new UserImporter(service, mapper, 1000, 100, 65536),
+				new UserNdjsonWriter(mapper));
+
+		MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(UserController.class, MethodHandles.lookup());
+		validateUser = lookup.findVirtual(UserController.class, "validateUser",
+				MethodType.methodType(void.class, UserRequest.class));
+
+		request = UserRequest.of("not an email", "John", "Doe", LocalDate.of(2000, 1, 1), "address", "phone");
+	}
+
+	@Benchmark
+	public UserErrorResponse filledException() {
+		return deep(depth, () -> {
+			ValidationError error = validator.validate(request.data());
+			if (error != null) {
+				throw new FilledException(error.message());
+			}
+		});
+	}
+
+	@Benchmark
+	public UserErrorResponse stacklessException() {
+		return deep(depth, () -> {
+			try {
+				validateUser.invokeExact(controller, request);
+			} catch (RuntimeException ex) {
+				throw ex;
+			} catch (Throwable ex) {
+				throw new IllegalStateException(ex);
+			}
+		});
+	}
+
+	@Benchmark
+	public UserErrorResponse result() {
+		return deepResult(depth);
+	}
+
+	private UserErrorResponse deep(int frames, Runnable validation) {
+		if (frames > 0) {
+			return deep(frames - 1, validation);
+		}
+		try {
+			validation.run();
+			return null;
+		} catch (RuntimeException ex) {
+			return new UserErrorResponse(HttpStatus.BAD_REQUEST.toString(), ex.getMessage());
+		}
+	}
+
+	private UserErrorResponse deepResult(int frames) {
+		if (frames > 0) {
+			return deepResult(frames - 1);
+		}
+		Today today = validator.today();
+		ValidationError error = validator.validate(request.data(), today);
+		return error == null ? null : new UserErrorResponse(HttpStatus.BAD_REQUEST.toString(), error.message());
+	}
+
+	/**
+	 * How the validation errors were thrown before
+	 */
+	static class FilledException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		FilledException(String message) {
+			super(message);
+		}
+
+	}
+
+}
@@ -0,0 +1,133 @@
+package com.holyk.clearsolutions.benchmarks;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.holyk.clearsolutions.UserServiceBuilder;
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.services.UserService;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+import com.holyk.clearsolutions.store.ShardedUserStore;
+import com.holyk.clearsolutions.store.UserStore;
+
+/**
+ * Service operations on one {@link LongHashUserStore} ({@code shards=1}) and on
+ * a {@link ShardedUserStore}. Run by {@link #main(String[])} for a sweep of
+ * thread counts, with {@code -Dbenchmark.main=...ShardedUserStoreBenchmark
+ * -Dbenchmark="1 2 4 8"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class ShardedUserStoreBenchmark {
+
+	static final LocalDate EARLIEST = LocalDate.of(1950, 1, 1);
+	static final int DAYS = 20_000;
+	static final int SIZE = 200_000;
+
+	@Param({ "1", "8" })
+	int shards;
+
+	UserService service;
+	long[] ids;
+	UserRequest[] updates;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		UserStore store = shards == 1 ? new LongHashUserStore(SIZE) : new ShardedUserStore(shards, SIZE);
+		service = UserServiceBuilder.service(store);
+		SplittableRandom random = new SplittableRandom(42);
+		ids = new long[SIZE];
+		updates = new UserRequest[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			LocalDate birthdate = EARLIEST.plusDays(random.nextInt(DAYS));
+			ids[i] = service.save(UserRequest.of("mail" + i + "@mail.com", "John", "Doe", birthdate, "address", "phone"))
+					.getId();
+			updates[i] = UserRequest.of("mail" + i + "@mail.com", "Jane", "Doe", birthdate, "address", "phone");
+		}
+	}
+
+	@Benchmark
+	public User update() {
+		int i = ThreadRandom.next(SIZE);
+		return service.update(ids[i], updates[i]);
+	}
+
+	@Benchmark
+	public Optional<User> findUserById() {
+		return service.findUserById(ids[ThreadRandom.next(SIZE)]);
+	}
+
+	@Benchmark
+	public List<User> getUsersByDateRangeMonth() {
+		LocalDate from = EARLIEST.plusDays(ThreadRandom.next(DAYS));
+		return service.getUsersByDateRange(from, from.plusDays(30));
+	}
+
+	/**
+	 * @param args thread counts, 1 2 4 8 if none, other arguments are ignored
+	 */
+	public static void main(String[] args) throws RunnerException {
+		int[] threads = Arrays.stream(args).filter(arg -> arg.matches("\\d+")).mapToInt(Integer::parseInt).toArray();
+		if (threads.length == 0) {
+			threads = new int[] { 1, 2, 4, 8 };
+		}
+		List<String> rows = new ArrayList<>();
+		for (int count : threads) {
+			//@formatter:off
+			Collection<RunResult> results = new Runner(new OptionsBuilder()
+					.include(ShardedUserStoreBenchmark.class.getSimpleName())
+					.threads(count)
+					.build()).run();
+			//@formatter:on
+			for (RunResult result : results) {
+				rows.add(String.format("%-26s %7s %8d %14.0f", result.getParams().getBenchmark().replaceAll(".*\\.", ""),
+						result.getParams().getParam("shards"), count, result.getPrimaryResult().getScore()));
+			}
+		}
+		System.out.printf("%-26s %7s %8s %14s%n", "operation", "shards", "threads", "ops/s");
+		rows.stream().sorted().forEach(System.out::println);
+	}
+
+	/**
+	 * Random numbers without contention between the benchmark threads
+	 */
+	static final class ThreadRandom {
+
+		private static final ThreadLocal<SplittableRandom> RANDOM = ThreadLocal
+				.withInitial(() -> new SplittableRandom(Thread.currentThread().getId()));
+
+		static int next(int bound) {
+			return RANDOM.get().nextInt(bound);
+		}
+
+	}
+
+}
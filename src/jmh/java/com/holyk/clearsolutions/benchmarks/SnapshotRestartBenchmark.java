@@ -0,0 +1,92 @@
+package com.holyk.clearsolutions.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+import com.holyk.clearsolutions.store.MappedUserSnapshot;
+import com.holyk.clearsolutions.store.SnapshotUserStore;
+import com.holyk.clearsolutions.store.UserStore;
+
+/**
+ * Time from a snapshot on disk to the first answered lookup and range query:
+ * serving the mapped snapshot lazily against decoding every user up front.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class SnapshotRestartBenchmark {
+
+	static final LocalDate EARLIEST = LocalDate.of(1950, 1, 1);
+
+	@Param({ "100000", "1000000" })
+	int size;
+
+	Path path;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		List<User> users = new ArrayList<>(size);
+		SplittableRandom random = new SplittableRandom(42);
+		for (int i = 1; i <= size; i++) {
+			User user = new User("mail" + i + "@mail.com", "John", "Doe", EARLIEST.plusDays(random.nextInt(20_000)),
+					"address", "phone");
+			user.setId(i);
+			users.add(user);
+		}
+		path = Files.createTempFile("user-snapshot", ".bin");
+		MappedUserSnapshot.write(path, users, size + 1L);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(path);
+	}
+
+	@Benchmark
+	public List<User> mapped() throws IOException {
+		return firstQueries(new SnapshotUserStore(MappedUserSnapshot.open(path)));
+	}
+
+	@Benchmark
+	public List<User> decodeAll() throws IOException {
+		MappedUserSnapshot snapshot = MappedUserSnapshot.open(path);
+		LongHashUserStore store = new LongHashUserStore(snapshot.size());
+		for (int position = 0; position < snapshot.size(); position++) {
+			store.put(snapshot.userAt(position));
+		}
+		return firstQueries(store);
+	}
+
+	private List<User> firstQueries(UserStore store) {
+		List<User> result = new ArrayList<>(store.findByBirthdateBetween(EARLIEST.plusDays(10_000),
+				EARLIEST.plusDays(10_030)));
+		result.add(store.findById(size / 2).get());
+		return result;
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.holyk.clearsolutions.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.holyk.clearsolutions.UserServiceBuilder;
+import com.holyk.clearsolutions.controllers.UserController;
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.services.UserImporter;
+import com.holyk.clearsolutions.services.UserNdjsonWriter;
+import com.holyk.clearsolutions.services.UserService;
+import com.holyk.clearsolutions.validation.UserValidator;
+
+/**
+ * Request validation done by the controller before the service is touched and
+ * the whole PATCH path. The private validator is reached through a method
+ * handle.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserControllerBenchmark {
+
+	UserController controller;
+	MethodHandle validateUser;
+	UserRequest request;
+	JsonPatch patch;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Throwable {
+		UserValidator validator = new UserValidator(18);
+		UserService service = new UserServiceBuilder().validator(validator).build();
+		ObjectMapper mapper = JsonMapper.builder().findAndAddModules().build();
+		controller = new UserController(service, validator, new UserImporter(service, mapper, 1000, 100, 65536),
+				new UserNdjsonWriter(mapper));
+
+		MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(UserController.class, MethodHandles.lookup());
+		validateUser = lookup.findVirtual(UserController.class, "validateUser",
+				MethodType.methodType(void.class, UserRequest.class));
+
+		request = UserRequest.of("mail@mail.com", "John", "Doe", LocalDate.of(2000, 1, 1), "address", "phone");
+		service.save(request);
+		patch = JsonPatch.fromJson(new ObjectMapper()
+				.readTree("[{\"op\": \"replace\", \"path\": \"/email\", \"value\": \"patched@mail.com\"}]"));
+	}
+
+	@Benchmark
+	public void validateUser() throws Throwable {
+		validateUser.invokeExact(controller, request);
+	}
+
+	@Benchmark
+	public Object patchUser() throws Throwable {
+		return controller.patchUser(1L, patch);
+	}
+
+}
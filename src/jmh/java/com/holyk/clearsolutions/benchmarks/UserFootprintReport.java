@@ -0,0 +1,97 @@
+package com.holyk.clearsolutions.benchmarks;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+import com.holyk.clearsolutions.store.OffHeapUserStore;
+
+/**
+ * Memory held by the same users in a {@code List<User>}, the on-heap store and
+ * the off-heap store, with the time of a full collection while they are alive.
+ * Not a JMH benchmark: heap and direct memory are read after a full collection.
+ * <p>
+ * Arguments are user counts, anything else is ignored, so it runs through the
+ * benchmark profile with {@code -Dbenchmark.main=...UserFootprintReport
+ * -Dbenchmark=1000000 -Dbenchmark.profilers=}.
+ */
+public class UserFootprintReport {
+
+	static final LocalDate EARLIEST = LocalDate.of(1950, 1, 1);
+
+	private static Object retained;
+
+	public static void main(String[] args) {
+		long[] sizes = Arrays.stream(args).filter(arg -> arg.matches("\\d+")).mapToLong(Long::parseLong).toArray();
+		if (sizes.length == 0) {
+			sizes = new long[] { 100_000, 1_000_000 };
+		}
+		System.out.printf("%-20s %10s %12s %12s %10s %10s%n", "layout", "users", "heap MB", "direct MB", "bytes/user",
+				"full gc ms");
+		for (long size : sizes) {
+			report("List<User>", size, ArrayList::new, List::add);
+			report("LongHashUserStore", size, LongHashUserStore::new, LongHashUserStore::put);
+			report("OffHeapUserStore", size, OffHeapUserStore::new, OffHeapUserStore::put);
+		}
+	}
+
+	private static <T> void report(String layout, long size, Supplier<T> factory, Adder<T> adder) {
+		retained = null;
+		long heapBefore = heapAfterGc();
+		long directBefore = direct();
+
+		T target = factory.get();
+		users(size, user -> adder.add(target, user));
+		retained = target;
+
+		long heap = heapAfterGc() - heapBefore;
+		long direct = direct() - directBefore;
+		long start = System.nanoTime();
+		System.gc();
+		long gcMillis = (System.nanoTime() - start) / 1_000_000;
+		System.out.printf("%-20s %10d %12.1f %12.1f %10d %10d%n", layout, size, heap / 1e6, direct / 1e6,
+				(heap + direct) / size, gcMillis);
+		retained = null;
+	}
+
+	/**
+	 * Distinct strings for every user, as if they were parsed from requests
+	 */
+	private static void users(long size, Consumer<User> consumer) {
+		SplittableRandom random = new SplittableRandom(42);
+		for (long i = 1; i <= size; i++) {
+			User user = new User("mail" + i + "@mail.com", "Firstname" + random.nextInt(1_000),
+					"Lastname" + random.nextInt(10_000), EARLIEST.plusDays(random.nextInt(20_000)),
+					"Street " + random.nextInt(100_000) + ", " + i, "+380" + (500_000_000 + i));
+			user.setId(i);
+			consumer.accept(user);
+		}
+	}
+
+	private static long heapAfterGc() {
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static long direct() {
+		return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+				.filter(pool -> pool.getName().equals("direct")).mapToLong(BufferPoolMXBean::getMemoryUsed).sum();
+	}
+
+	@FunctionalInterface
+	private interface Adder<T> {
+		void add(T target, User user);
+	}
+
+}
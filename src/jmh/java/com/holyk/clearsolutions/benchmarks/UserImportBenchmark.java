@@ -0,0 +1,78 @@
+package com.holyk.clearsolutions.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.holyk.clearsolutions.UserServiceBuilder;
+import com.holyk.clearsolutions.controllers.UserImportResponse;
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.services.UserImporter;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+
+/**
+ * Streaming NDJSON import of 10k users by chunk size. The store and the email
+ * index of the service are emptied before every invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserImportBenchmark {
+
+	private static final int USERS = 10_000;
+
+	@Param({ "1", "100", "1000" })
+	int chunkSize;
+
+	ObjectMapper mapper;
+	LongHashUserStore store;
+	UserImporter importer;
+	byte[] upload;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		mapper = JsonMapper.builder().findAndAddModules().build();
+		store = new LongHashUserStore();
+
+		StringBuilder ndjson = new StringBuilder();
+		LocalDate birthdate = LocalDate.of(1970, 1, 1);
+		for (int i = 0; i < USERS; i++) {
+			UserRequest request = UserRequest.of("user" + i + "@mail.com", "John", "Doe", birthdate.plusDays(i % 10_000),
+					"address", "phone");
+			ndjson.append(mapper.writeValueAsString(request)).append('\n');
+		}
+		upload = ndjson.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Setup(Level.Invocation)
+	public void clear() {
+		store.clear();
+		importer = new UserImporter(UserServiceBuilder.service(store), mapper, chunkSize, 100, 65536);
+	}
+
+	@Benchmark
+	public UserImportResponse importUsers() throws IOException {
+		return importer.importUsers(new ByteArrayInputStream(upload), request -> null);
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.holyk.clearsolutions.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.holyk.clearsolutions.UserServiceBuilder;
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.services.UserJsonCache;
+import com.holyk.clearsolutions.services.UserNdjsonWriter;
+import com.holyk.clearsolutions.services.UserService;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+
+/**
+ * NDJSON of a range of users, serialized by Jackson for every request
+ * ({@code maxBytes=0}) or taken from the {@link UserJsonCache}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserJsonBenchmark {
+
+	static final LocalDate EARLIEST = LocalDate.of(1950, 1, 1);
+
+	@Param({ "0", "67108864" })
+	long maxBytes;
+
+	@Param({ "1000" })
+	int size;
+
+	UserService service;
+	UserNdjsonWriter writer;
+	OutputStream out = OutputStream.nullOutputStream();
+	LocalDate to;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		ObjectMapper mapper = new ObjectMapper().findAndRegisterModules()
+				.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+		UserJsonCache json = new UserJsonCache(mapper, maxBytes);
+		service = new UserServiceBuilder().store(new LongHashUserStore(size)).json(json).build();
+		for (int i = 0; i < size; i++) {
+			service.save(UserRequest.of("mail" + i + "@mail.com", "John", "Doe", EARLIEST.plusDays(i),
+					"Somewhere over the rainbow", "+36985214702"));
+		}
+		writer = new UserNdjsonWriter(json);
+		to = EARLIEST.plusDays(size);
+	}
+
+	@Benchmark
+	public void range() throws IOException {
+		writer.write(out, users -> service.forEachUserByDateRange(EARLIEST, to, users));
+	}
+
+}
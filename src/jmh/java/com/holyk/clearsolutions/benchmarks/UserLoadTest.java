@@ -0,0 +1,233 @@
+package com.holyk.clearsolutions.benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.FileSystemUtils;
+
+import com.holyk.clearsolutions.ClearSolutionsTestAssignmentApplication;
+
+/**
+ * Throughput and latency of the running service with requests on platform
+ * threads, on virtual threads and on the reactive stack, side by side. Every
+ * mode starts the application on a
+ * random port with the durable store, so a create waits for the disk, and is
+ * loaded by closed loop clients that each create a user and read it back by
+ * email. Not a JMH benchmark: the numbers come from real HTTP requests.
+ * <p>
+ * Arguments are the modes, {@code platform}, {@code virtual} and
+ * {@code reactive}, and options
+ * as {@code name=value}: {@code clients}, {@code seconds}, {@code warmup},
+ * {@code threads} (Tomcat pool of the platform mode) and {@code store}. Virtual
+ * threads need Java 21 and the reactive mode the reactive Maven profile,
+ * otherwise the mode is skipped. Runs through the
+ * benchmark profile with {@code -Dbenchmark.main=...UserLoadTest
+ * -Dbenchmark="platform virtual" -Dbenchmark.profilers=
+ * -Dbenchmark.args="clients=400 seconds=30"}.
+ */
+public class UserLoadTest {
+
+	static final LocalDate EARLIEST = LocalDate.of(1950, 1, 1);
+
+	public static void main(String[] args) throws Exception {
+		List<String> modes = new ArrayList<>();
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			int split = arg.indexOf('=');
+			if (split > 0) {
+				options.put(arg.substring(0, split), arg.substring(split + 1));
+			} else if (arg.equals("platform") || arg.equals("virtual") || arg.equals("reactive")) {
+				modes.add(arg);
+			}
+		}
+		if (modes.isEmpty()) {
+			modes = List.of("platform", "virtual", "reactive");
+		}
+		int clients = Integer.parseInt(options.getOrDefault("clients", "400"));
+		int seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+		int warmup = Integer.parseInt(options.getOrDefault("warmup", "10"));
+		int threads = Integer.parseInt(options.getOrDefault("threads", "200"));
+		String store = options.getOrDefault("store", "durable");
+
+		System.out.printf("%-10s %8s %8s %12s %10s %10s %10s %8s%n", "mode", "clients", "threads", "requests/s",
+				"p50 ms", "p99 ms", "max ms", "errors");
+		for (String mode : modes) {
+			if (mode.equals("virtual") && Runtime.version().feature() < 21) {
+				System.out.printf("%-10s skipped, needs Java 21, running on %s%n", mode, Runtime.version());
+				continue;
+			}
+			if (mode.equals("reactive")
+					&& !ClassUtils.isPresent("org.springframework.web.reactive.DispatcherHandler", null)) {
+				System.out.printf("%-10s skipped, needs the reactive Maven profile%n", mode);
+				continue;
+			}
+			run(mode, clients, seconds, warmup, threads, store);
+		}
+	}
+
+	private static void run(String mode, int clients, int seconds, int warmup, int threads, String store)
+			throws Exception {
+		boolean platform = mode.equals("platform");
+		Path directory = Files.createTempDirectory("user-load-test");
+		//@formatter:off
+		ConfigurableApplicationContext context = new SpringApplicationBuilder(ClearSolutionsTestAssignmentApplication.class)
+				.properties(
+						"server.port=0",
+						"spring.main.banner-mode=off",
+						"logging.level.root=warn",
+						"spring.main.web-application-type=" + (mode.equals("reactive") ? "reactive" : "servlet"),
+						"spring.threads.virtual.enabled=" + mode.equals("virtual"),
+						"server.tomcat.threads.max=" + threads,
+						"server.tomcat.max-connections=" + Math.max(8192, clients * 2),
+						"app.user.store.mode=" + store,
+						"app.user.store.directory=" + directory)
+				.run();
+		//@formatter:on
+		try {
+			int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+			Load load = new Load(URI.create("http://localhost:" + port + "/users"), clients);
+			load.run(Duration.ofSeconds(warmup));
+			Result result = load.run(Duration.ofSeconds(seconds));
+			System.out.printf("%-10s %8d %8s %12.0f %10.2f %10.2f %10.2f %8d%n", mode, clients,
+					platform ? String.valueOf(threads) : "-", result.requests() / (double) seconds,
+					result.percentile(0.50), result.percentile(0.99), result.percentile(1), result.errors());
+		} finally {
+			context.close();
+			FileSystemUtils.deleteRecursively(directory);
+		}
+	}
+
+	/**
+	 * Closed loop clients on platform threads, the same in every mode
+	 */
+	private static class Load {
+
+		private final URI uri;
+		private final int clients;
+		private final HttpClient http;
+		private final AtomicLong emails = new AtomicLong();
+
+		Load(URI uri, int clients) {
+			super();
+			this.uri = uri;
+			this.clients = clients;
+			this.http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+					.connectTimeout(Duration.ofSeconds(10)).build();
+		}
+
+		Result run(Duration duration) throws InterruptedException {
+			long deadline = System.nanoTime() + duration.toNanos();
+			Client[] running = new Client[clients];
+			Thread[] threads = new Thread[clients];
+			for (int i = 0; i < clients; i++) {
+				running[i] = new Client(deadline);
+				threads[i] = new Thread(running[i], "load-client-" + i);
+				threads[i].start();
+			}
+			long errors = 0;
+			int count = 0;
+			for (int i = 0; i < clients; i++) {
+				threads[i].join();
+				errors += running[i].errors;
+				count += running[i].count;
+			}
+			long[] latencies = new long[count];
+			int offset = 0;
+			for (Client client : running) {
+				System.arraycopy(client.latencies, 0, latencies, offset, client.count);
+				offset += client.count;
+			}
+			Arrays.sort(latencies);
+			return new Result(latencies, errors);
+		}
+
+		private class Client implements Runnable {
+
+			private final long deadline;
+			long[] latencies = new long[1024];
+			int count;
+			long errors;
+
+			Client(long deadline) {
+				super();
+				this.deadline = deadline;
+			}
+
+			@Override
+			public void run() {
+				while (System.nanoTime() < deadline) {
+					long number = emails.incrementAndGet();
+					String email = "load" + number + "@mail.com";
+					//@formatter:off
+					HttpRequest create = HttpRequest.newBuilder(uri)
+							.header("Content-Type", "application/json")
+							.POST(HttpRequest.BodyPublishers.ofString("{\"data\": {\"email\": \"" + email
+									+ "\", \"firstname\": \"John\", \"lastname\": \"Doe\", \"birthdate\": \""
+									+ EARLIEST.plusDays(number % 20_000) + "\"}}"))
+							.build();
+					//@formatter:on
+					send(create, 201);
+					send(HttpRequest.newBuilder(uri.resolve("/users/by-email/" + email)).build(), 200);
+				}
+			}
+
+			private void send(HttpRequest request, int expected) {
+				long start = System.nanoTime();
+				try {
+					HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+					if (response.statusCode() != expected) {
+						errors++;
+					}
+				} catch (IOException ex) {
+					errors++;
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					errors++;
+				}
+				if (count == latencies.length) {
+					latencies = Arrays.copyOf(latencies, count * 2);
+				}
+				latencies[count++] = System.nanoTime() - start;
+			}
+
+		}
+
+	}
+
+	/**
+	 * @param latencies sorted, in nanoseconds
+	 */
+	private record Result(long[] latencies, long errors) {
+
+		long requests() {
+			return latencies.length;
+		}
+
+		double percentile(double percentile) {
+			if (latencies.length == 0) {
+				return 0;
+			}
+			int index = (int) Math.ceil(percentile * latencies.length) - 1;
+			return latencies[Math.max(0, index)] / 1e6;
+		}
+
+	}
+
+}
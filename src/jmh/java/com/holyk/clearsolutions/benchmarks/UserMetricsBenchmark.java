@@ -0,0 +1,94 @@
+package com.holyk.clearsolutions.benchmarks;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.holyk.clearsolutions.UserServiceBuilder;
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.services.UserMetrics;
+import com.holyk.clearsolutions.services.UserService;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+/**
+ * Cost of the service meters on the cheapest operations, an update of one
+ * user and a narrow birthdate range, recorded into a Prometheus registry by
+ * several threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class UserMetricsBenchmark {
+
+	static final LocalDate EARLIEST = LocalDate.of(1950, 1, 1);
+	static final int SIZE = 100_000;
+
+	@Param({ "OFF", "LIGHT", "FULL" })
+	UserMetrics.Mode mode;
+
+	UserService service;
+	UserRequest[] updates;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+		service = new UserServiceBuilder().store(new LongHashUserStore(SIZE)).metrics(new UserMetrics(registry, mode)).build();
+		SplittableRandom random = new SplittableRandom(42);
+		updates = new UserRequest[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			LocalDate birthdate = EARLIEST.plusDays(random.nextInt(20_000));
+			service.save(UserRequest.of("mail" + i + "@mail.com", "John", "Doe", birthdate, "address", "phone"));
+			updates[i] = UserRequest.of("mail" + i + "@mail.com", "Jane", "Doe", birthdate, "address", "phone");
+		}
+	}
+
+	@Benchmark
+	public User update() {
+		int i = SplittableRandomHolder.next(SIZE);
+		return service.update(i + 1, updates[i]);
+	}
+
+	@Benchmark
+	public List<User> range() {
+		LocalDate from = EARLIEST.plusDays(SplittableRandomHolder.next(20_000));
+		return service.getUsersByDateRange(from, from.plusDays(1));
+	}
+
+	/**
+	 * Random numbers without contention between the benchmark threads
+	 */
+	static final class SplittableRandomHolder {
+
+		private static final ThreadLocal<SplittableRandom> RANDOM = ThreadLocal
+				.withInitial(() -> new SplittableRandom(Thread.currentThread().getId()));
+
+		static int next(int bound) {
+			return RANDOM.get().nextInt(bound);
+		}
+
+	}
+
+}
@@ -0,0 +1,80 @@
+package com.holyk.clearsolutions.benchmarks;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.services.UserPatcher;
+
+/**
+ * Cost of applying one JSON Patch to a user.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserPatchBenchmark {
+
+	User user;
+	JsonPatch patch;
+	UserPatcher patcher;
+	ObjectMapper sharedMapper;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		user = new User("mail@mail.com", "John", "Doe", LocalDate.of(2000, 1, 1), "address", "phone");
+		user.setId(1);
+		patch = JsonPatch.fromJson(new ObjectMapper().readTree("["
+				+ "{\"op\": \"replace\", \"path\": \"/email\", \"value\": \"patched@mail.com\"},"
+				+ "{\"op\": \"replace\", \"path\": \"/birthdate\", \"value\": \"1999-12-31\"}]"));
+		patcher = new UserPatcher();
+		sharedMapper = JsonMapper.builder().findAndAddModules().build();
+	}
+
+	/**
+	 * The way patches were applied before: a new mapper per call
+	 */
+	@Benchmark
+	public User freshObjectMapper() throws Exception {
+		ObjectMapper objectMapper = new ObjectMapper();
+		objectMapper.findAndRegisterModules();
+		JsonNode patched = patch.apply(objectMapper.convertValue(user, JsonNode.class));
+		return objectMapper.treeToValue(patched, User.class);
+	}
+
+	/**
+	 * JsonNode round trip with a shared mapper
+	 */
+	@Benchmark
+	public User sharedObjectMapper() throws Exception {
+		JsonNode patched = patch.apply(sharedMapper.valueToTree(user));
+		return sharedMapper.treeToValue(patched, User.class);
+	}
+
+	/**
+	 * Field level patching, falls back to the round trip for other operations
+	 */
+	@Benchmark
+	public User userPatcher() throws Exception {
+		return patcher.apply(patch, user);
+	}
+
+}
@@ -0,0 +1,135 @@
+package com.holyk.clearsolutions.benchmarks;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.holyk.clearsolutions.UserServiceBuilder;
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.services.UserService;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+
+/**
+ * Throughput of the UserService operations behind each endpoint at several
+ * store sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class UserServiceBenchmark {
+
+	static final LocalDate EARLIEST = LocalDate.of(1950, 1, 1);
+	static final int DAYS = 20_000;
+
+	@Param({ "1000", "100000", "1000000" })
+	int size;
+
+	LongHashUserStore store;
+	UserService service;
+	LocalDate[] birthdates;
+	JsonPatch patch;
+	long savedFrom;
+	long cursor;
+	long saves;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		store = new LongHashUserStore(size);
+		service = UserServiceBuilder.service(store);
+		SplittableRandom random = new SplittableRandom(42);
+		for (int i = 0; i < size; i++) {
+			service.save(UserRequest.of("mail" + i + "@mail.com", "John", "Doe", EARLIEST.plusDays(random.nextInt(DAYS)),
+					"address", "phone"));
+		}
+		birthdates = new LocalDate[1024];
+		for (int i = 0; i < birthdates.length; i++) {
+			birthdates[i] = EARLIEST.plusDays(random.nextInt(DAYS));
+		}
+		// emails are unique, so the patch changes a name
+		patch = JsonPatch.fromJson(new ObjectMapper()
+				.readTree("[{\"op\": \"replace\", \"path\": \"/firstname\", \"value\": \"Patched\"}]"));
+		savedFrom = service.getIncrement();
+	}
+
+	/**
+	 * Drop users created by {@link #save()}, so every iteration starts from the
+	 * same store size
+	 */
+	@TearDown(Level.Iteration)
+	public void shrink() {
+		for (long id = savedFrom; id < service.getIncrement(); id++) {
+			service.delete(id);
+		}
+	}
+
+	@Benchmark
+	public User save() {
+		long n = saves++;
+		return service.save(UserRequest.of("new" + n + "@mail.com", "Jane", "Doe",
+				birthdates[(int) (n & (birthdates.length - 1))], "address", "phone"));
+	}
+
+	@Benchmark
+	public Optional<User> findUserById() {
+		return service.findUserById(nextId());
+	}
+
+	@Benchmark
+	public User patch() throws Exception {
+		return service.patch(nextId(), patch);
+	}
+
+	@Benchmark
+	public User update() {
+		long id = nextId();
+		// the user keeps the email it was saved with
+		return service.update(id, UserRequest.of("mail" + (id - 1) + "@mail.com", "Jane", "Doe",
+				birthdates[(int) (id & (birthdates.length - 1))], "address", "phone"));
+	}
+
+	@Benchmark
+	public List<User> getUsersByDateRangeMonth() {
+		LocalDate from = EARLIEST.plusDays(nextId() % DAYS);
+		return service.getUsersByDateRange(from, from.plusDays(30));
+	}
+
+	/**
+	 * The victim is put straight back into the store, so the size stays stable
+	 */
+	@Benchmark
+	public boolean delete() {
+		long id = nextId();
+		User user = store.findById(id).get();
+		boolean deleted = service.delete(id);
+		store.put(user);
+		return deleted;
+	}
+
+	private long nextId() {
+		cursor = cursor % size + 1;
+		return cursor;
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.holyk.clearsolutions.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.holyk.clearsolutions.controllers.UserJsonHttpMessageConverter;
+import com.holyk.clearsolutions.services.UserJsonCache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Serialized users, bounded by {@code app.user.json-cache.max-size} of JSON,
+ * 0 turns the cache off. Statistics are published as {@code cache.*} meters
+ * with {@code cache=users.json}. Responses of single users and of ranges are
+ * written from it by a converter placed before the Jackson one.
+ */
+@Configuration
+public class UserJsonConfiguration {
+
+	@Bean
+	public UserJsonCache userJsonCache(ObjectMapper objectMapper, MeterRegistry registry,
+			@Value("${app.user.json-cache.max-size:64MB}") DataSize maxSize) {
+		UserJsonCache cache = new UserJsonCache(objectMapper, maxSize.toBytes());
+		cache.bind(registry);
+		return cache;
+	}
+
+	@Bean
+	@ConditionalOnWebApplication(type = Type.SERVLET)
+	public UserJsonHttpMessageConverter userJsonHttpMessageConverter(UserJsonCache json) {
+		return new UserJsonHttpMessageConverter(json);
+	}
+
+}
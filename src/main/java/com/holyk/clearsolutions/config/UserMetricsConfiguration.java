@@ -0,0 +1,28 @@
+package com.holyk.clearsolutions.config;
+
+import java.util.Locale;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.holyk.clearsolutions.services.UserMetrics;
+import com.holyk.clearsolutions.services.UserMetrics.Mode;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Meters of the user service by {@code app.user.metrics.mode}: {@code full},
+ * the default, with histograms and percentiles, {@code light} with counts and
+ * totals only, or {@code off}. They are exposed with the other application
+ * meters on {@code /actuator/prometheus}.
+ */
+@Configuration
+public class UserMetricsConfiguration {
+
+	@Bean
+	public UserMetrics userMetrics(MeterRegistry registry, @Value("${app.user.metrics.mode:full}") String mode) {
+		return new UserMetrics(registry, Mode.valueOf(mode.toUpperCase(Locale.ROOT)));
+	}
+
+}
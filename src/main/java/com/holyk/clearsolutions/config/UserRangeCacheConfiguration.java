@@ -0,0 +1,34 @@
+package com.holyk.clearsolutions.config;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.holyk.clearsolutions.services.UserRangeCache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Cache of birthdate range results, bounded by {@code app.user.range-cache.max-users}
+ * users in all results and kept for {@code app.user.range-cache.ttl}. No users
+ * turns it off. Statistics are published as {@code cache.*} meters with
+ * {@code cache=users.range}.
+ */
+@Configuration
+public class UserRangeCacheConfiguration {
+
+	@Bean
+	public UserRangeCache userRangeCache(MeterRegistry registry,
+			@Value("${app.user.range-cache.max-users:100000}") long maxUsers,
+			@Value("${app.user.range-cache.ttl:60s}") Duration ttl) {
+		if (maxUsers <= 0) {
+			return UserRangeCache.NONE;
+		}
+		UserRangeCache cache = new UserRangeCache(maxUsers, ttl);
+		cache.bind(registry);
+		return cache;
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.holyk.clearsolutions.config;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.holyk.clearsolutions.store.DurableUserStore;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+import com.holyk.clearsolutions.store.OffHeapUserStore;
+import com.holyk.clearsolutions.store.ShardedUserStore;
+import com.holyk.clearsolutions.store.UserStore;
+
+/**
+ * Chooses the user store by {@code app.user.store.mode}: {@code memory}, the
+ * default, {@code offheap}, kept in direct memory, {@code sharded}, split into
+ * {@code app.user.store.shards} in memory stores, or {@code durable}, kept in
+ * {@code app.user.store.directory}.
+ */
+@Configuration
+public class UserStoreConfiguration {
+
+	@Bean
+	@ConditionalOnProperty(name = "app.user.store.mode", havingValue = "memory", matchIfMissing = true)
+	public UserStore memoryUserStore() {
+		return new LongHashUserStore();
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = "app.user.store.mode", havingValue = "offheap")
+	public UserStore offHeapUserStore() {
+		return new OffHeapUserStore();
+	}
+
+	/**
+	 * @param shards 0 for one per processor
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "app.user.store.mode", havingValue = "sharded")
+	public UserStore shardedUserStore(@Value("${app.user.store.shards:0}") int shards) {
+		return new ShardedUserStore(shards > 0 ? shards : Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param directory     log segments and snapshots
+	 * @param snapshotEvery log records between snapshots
+	 */
+	@Bean(destroyMethod = "close")
+	@ConditionalOnProperty(name = "app.user.store.mode", havingValue = "durable")
+	public DurableUserStore durableUserStore(@Value("${app.user.store.directory}") Path directory,
+			@Value("${app.user.store.snapshot-every:100000}") int snapshotEvery) throws IOException {
+		return DurableUserStore.open(directory, snapshotEvery);
+	}
+
+}
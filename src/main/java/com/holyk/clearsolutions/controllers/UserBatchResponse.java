@@ -0,0 +1,19 @@
+package com.holyk.clearsolutions.controllers;
+
+import java.util.List;
+
+/**
+ * Outcome of a batch operation, one item per request item in the same order
+ */
+public record UserBatchResponse(List<UserBatchItem> data) {
+
+	/**
+	 * @param index   position of the item in the request
+	 * @param id      id of the user, null if the user was not created
+	 * @param status  same as for the single item endpoint
+	 * @param message error message, null on success
+	 */
+	public record UserBatchItem(int index, Long id, String status, String message) {
+
+	}
+}
@@ -1,12 +1,16 @@
 package com.holyk.clearsolutions.controllers;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDate;
-import java.time.Period;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -17,22 +21,36 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import jakarta.servlet.http.HttpServletResponse;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.fge.jsonpatch.JsonPatch;
 import com.github.fge.jsonpatch.JsonPatchException;
+import com.holyk.clearsolutions.controllers.UserBatchResponse.UserBatchItem;
+import com.holyk.clearsolutions.controllers.UserRequest.UserRequestData;
 import com.holyk.clearsolutions.entity.User;
 import com.holyk.clearsolutions.exceptions.DateRangeIsNotValidException;
+import com.holyk.clearsolutions.exceptions.FieldIsNullException;
+import com.holyk.clearsolutions.exceptions.PageIsNotValidException;
 import com.holyk.clearsolutions.exceptions.UserAgeNotSatisfyException;
+import com.holyk.clearsolutions.exceptions.UserEmailConflictException;
 import com.holyk.clearsolutions.exceptions.UserNotFoundException;
 import com.holyk.clearsolutions.exceptions.UserNotValidException;
 import com.holyk.clearsolutions.exceptions.UserPatchIsNotValidException;
+import com.holyk.clearsolutions.exceptions.UserVersionMismatchException;
+import com.holyk.clearsolutions.services.UserImporter;
+import com.holyk.clearsolutions.services.UserNdjsonWriter;
 import com.holyk.clearsolutions.services.UserService;
+import com.holyk.clearsolutions.services.VersionedUser;
+import com.holyk.clearsolutions.validation.UserValidator;
+import com.holyk.clearsolutions.validation.UserValidator.Today;
+import com.holyk.clearsolutions.validation.ValidationError;
 
 //@formatter:off
 /**
@@ -41,23 +59,39 @@ import com.holyk.clearsolutions.services.UserService;
  * 2.3. Update all user fields
  * 2.4. Delete user
  * 2.5. Search for users by birth date range. Add the validation which checks that “From” is less than “To”.  Should return a list of objects
-
+ * Batch create, update and delete, with a status per item.
+ * Streaming NDJSON import of any size.
+ * Birth date range search by pages or as a NDJSON stream.
+ * Emails are unique, a user can be found by email.
+ * A user can be read by id with an ETag and written only if it was not changed since, by If-Match.
  */
 //@formatter:on
 @RestController
 @RequestMapping("/users")
+@ConditionalOnWebApplication(type = Type.SERVLET)
 public class UserController {
 
+	public static final String NDJSON = "application/x-ndjson";
+	static final int MAX_PAGE_LIMIT = 1000;
+
 	private UserService service;
-	@Value("${app.user.minimum.age}")
-	private Integer ageRequired;
+	private UserValidator validator;
+	private UserImporter importer;
+	private UserNdjsonWriter writer;
 
 	/**
 	 * @param service
+	 * @param validator
+	 * @param importer
+	 * @param writer
 	 */
-	public UserController(@Autowired UserService service) {
+	public UserController(@Autowired UserService service, @Autowired UserValidator validator,
+			@Autowired UserImporter importer, @Autowired UserNdjsonWriter writer) {
 		super();
 		this.service = service;
+		this.validator = validator;
+		this.importer = importer;
+		this.writer = writer;
 	}
 
 	/**
@@ -78,7 +112,8 @@ public class UserController {
 	}
 
 	/**
-	 * 2.2. Update one/some user fields
+	 * 2.2. Update one/some user fields. The patch is applied and validated once,
+	 * by the service.
 	 * 
 	 * @param id
 	 * @param patch
@@ -89,16 +124,28 @@ public class UserController {
 	@PatchMapping(path = "/{id}", consumes = "application/json-patch+json")
 	public ResponseEntity<UserResponse> patchUser(@PathVariable long id, @RequestBody JsonPatch patch)
 			throws JsonProcessingException, JsonPatchException {
-		Optional<User> optional = service.findUserById(id);
-		User user = optional.orElseThrow(() -> new UserNotFoundException("User not found!"));
-
-		validatePatch(patch, user);
-
 		User updateUser = service.patch(id, patch);
 		return ResponseEntity.status(HttpStatus.OK).body(UserResponse.of(updateUser));
 
 	}
 
+	/**
+	 * {@link #patchUser(long, JsonPatch)} only while the user is in a version of
+	 * the {@code If-Match} tags, without a lock
+	 * 
+	 * @param id
+	 * @param patch
+	 * @param ifMatch tags of {@link #getUser(long, WebRequest)}
+	 * @return patched user and its new tag
+	 * @throws JsonProcessingException
+	 * @throws JsonPatchException
+	 */
+	@PatchMapping(path = "/{id}", consumes = "application/json-patch+json", headers = HttpHeaders.IF_MATCH)
+	public ResponseEntity<UserResponse> patchUser(@PathVariable long id, @RequestBody JsonPatch patch,
+			@RequestHeader(HttpHeaders.IF_MATCH) String ifMatch) throws JsonProcessingException, JsonPatchException {
+		return versioned(HttpStatus.OK, service.patch(id, patch, UserETag.matcher(ifMatch)));
+	}
+
 	@PutMapping("/{id}")
 	public ResponseEntity<UserResponse> updateUser(@PathVariable long id, @RequestBody UserRequest data) {
 		validateUser(data);
@@ -108,6 +155,41 @@ public class UserController {
 
 	}
 
+	/**
+	 * {@link #updateUser(long, UserRequest)} only while the user is in a version
+	 * of the {@code If-Match} tags, without a lock
+	 * 
+	 * @param id
+	 * @param data
+	 * @param ifMatch tags of {@link #getUser(long, WebRequest)}
+	 * @return updated user and its new tag
+	 */
+	@PutMapping(path = "/{id}", headers = HttpHeaders.IF_MATCH)
+	public ResponseEntity<UserResponse> updateUser(@PathVariable long id, @RequestBody UserRequest data,
+			@RequestHeader(HttpHeaders.IF_MATCH) String ifMatch) {
+		validateUser(data);
+		return versioned(HttpStatus.OK, service.update(id, data, UserETag.matcher(ifMatch)));
+	}
+
+	/**
+	 * User with a strong {@code ETag} of its version, {@code 304 Not Modified}
+	 * if the {@code If-None-Match} tags have it
+	 * 
+	 * @param id
+	 * @param request
+	 * @return
+	 */
+	@GetMapping("/{id}")
+	public ResponseEntity<UserResponse> getUser(@PathVariable long id, WebRequest request) {
+		VersionedUser user = service.findVersionedUserById(id)
+				.orElseThrow(() -> new UserNotFoundException("User not found!"));
+		String etag = UserETag.of(user).encode();
+		if (request.checkNotModified(etag)) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+		}
+		return ResponseEntity.status(HttpStatus.OK).eTag(etag).body(UserResponse.of(user.user()));
+	}
+
 	@GetMapping()
 	public ResponseEntity<List<User>> getUsersByBirthdateRange(@RequestParam("fromDate") LocalDate from,
 			@RequestParam("toDate") LocalDate to) {
@@ -120,6 +202,78 @@ public class UserController {
 
 	}
 
+	/**
+	 * Page of {@link #getUsersByBirthdateRange(LocalDate, LocalDate)}, ordered by
+	 * birthdate and then by id
+	 * 
+	 * @param from
+	 * @param to
+	 * @param limit  maximum size of the page, up to {@value #MAX_PAGE_LIMIT}
+	 * @param cursor {@link UserPageResponse#next()} of the previous page, absent
+	 *               for the first page
+	 * @return
+	 */
+	@GetMapping(params = "limit")
+	public ResponseEntity<UserPageResponse> getUsersByBirthdateRangePage(@RequestParam("fromDate") LocalDate from,
+			@RequestParam("toDate") LocalDate to, @RequestParam("limit") int limit,
+			@RequestParam(name = "cursor", required = false) String cursor) {
+		validateRange(from, to);
+		if (limit < 1 || limit > MAX_PAGE_LIMIT) {
+			throw new PageIsNotValidException("Page is not valid!");
+		}
+		UserPageCursor after = cursor == null ? null : UserPageCursor.decode(cursor);
+
+		// one more user tells whether there is a next page
+		List<User> page = after == null ? service.getUsersByDateRange(from, to, null, 0, limit + 1)
+				: service.getUsersByDateRange(from, to, after.birthdate(), after.id(), limit + 1);
+		if (page.isEmpty()) {
+			return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+		}
+		String next = null;
+		if (page.size() > limit) {
+			page.remove(limit);
+			next = UserPageCursor.of(page.get(limit - 1)).encode();
+		}
+		return ResponseEntity.status(HttpStatus.OK).body(new UserPageResponse(page, next));
+	}
+
+	/**
+	 * {@link #getUsersByBirthdateRange(LocalDate, LocalDate)} as newline delimited
+	 * JSON, users are written as they are found. An invalid range is answered
+	 * with 400 and the error as the only line.
+	 * 
+	 * @param from
+	 * @param to
+	 * @param response
+	 * @throws IOException
+	 */
+	@GetMapping(produces = NDJSON)
+	public void streamUsersByBirthdateRange(@RequestParam("fromDate") LocalDate from,
+			@RequestParam("toDate") LocalDate to, HttpServletResponse response) throws IOException {
+		ValidationError error = validator.validateRange(from, to, validator.today());
+		if (error != null) {
+			// the error handlers write JSON, which this mapping cannot produce
+			response.setStatus(HttpStatus.BAD_REQUEST.value());
+			response.setHeader(HttpHeaders.CONTENT_TYPE, NDJSON);
+			writer.writeError(response.getOutputStream(), HttpStatus.BAD_REQUEST.toString(),
+					error.exception().getMessage());
+			return;
+		}
+		response.setStatus(HttpStatus.OK.value());
+		response.setHeader(HttpHeaders.CONTENT_TYPE, NDJSON);
+		writer.write(response.getOutputStream(), users -> service.forEachUserByDateRange(from, to, users));
+	}
+
+	/**
+	 * @param email in any case
+	 * @return
+	 */
+	@GetMapping("/by-email/{email}")
+	public ResponseEntity<UserResponse> getUserByEmail(@PathVariable String email) {
+		User user = service.findUserByEmail(email).orElseThrow(() -> new UserNotFoundException("User not found!"));
+		return ResponseEntity.status(HttpStatus.OK).body(UserResponse.of(user));
+	}
+
 	@DeleteMapping("/{id}")
 	public ResponseEntity<Object> deleteUser(@PathVariable Long id) {
 		boolean success = service.delete(id);
@@ -129,81 +283,152 @@ public class UserController {
 			return ResponseEntity.noContent().build();
 	}
 
-	private void validatePatch(JsonPatch patch, User user) throws JsonPatchException, JsonProcessingException {
-
-		ObjectMapper objectMapper = new ObjectMapper();
-		objectMapper.findAndRegisterModules();
-		JsonNode patched = patch.apply(objectMapper.convertValue(user, JsonNode.class));
-
-		User patchedUser = objectMapper.treeToValue(patched, User.class);
-
-		if (//@formatter:off
-			patchedUser.getBirthdate() == null 
-				|| !isBirthdateValid(patchedUser.getBirthdate())
-				|| isNullOrEmpty(patchedUser.getEmail()) 
-				|| !isEmailValid(patchedUser.getEmail())
-				|| isNullOrEmpty(patchedUser.getFirstname())
-				|| isNullOrEmpty(patchedUser.getLastname())
-			//@formatter:on
-		) {
-			throw new UserPatchIsNotValidException("Patch is not valid!");
+	/**
+	 * Create many users at once. Every item is validated like in
+	 * {@link #createUser(UserRequest)}, the valid ones are saved together.
+	 * 
+	 * @param data
+	 * @return status per item
+	 */
+	@PostMapping("/batch")
+	public ResponseEntity<UserBatchResponse> createUsers(@RequestBody List<UserRequest> data) {
+		UserBatchItem[] items = new UserBatchItem[data.size()];
+		List<UserRequest> valid = new ArrayList<>(data.size());
+		List<Integer> positions = new ArrayList<>(data.size());
+		Today today = validator.today();
+		for (int i = 0; i < data.size(); i++) {
+			ValidationError error = validator.validate(data(data.get(i)), today);
+			if (error == null) {
+				valid.add(data.get(i));
+				positions.add(i);
+			} else {
+				items[i] = rejected(i, null, error);
+			}
 		}
 
+		List<User> saved = service.saveAll(valid);
+		for (int k = 0; k < saved.size(); k++) {
+			int i = positions.get(k);
+			items[i] = saved.get(k) != null
+					? new UserBatchItem(i, saved.get(k).getId(), HttpStatus.CREATED.toString(), null)
+					: new UserBatchItem(i, null, HttpStatus.CONFLICT.toString(), "Email is already in use!");
+		}
+		return ResponseEntity.status(HttpStatus.OK).body(new UserBatchResponse(Arrays.asList(items)));
 	}
 
-	private void validateUser(UserRequest request) {
-		var data = request.data();
-		var birthdate = data.birthdate();
-
-		if (isNullOrEmpty(data.email()) || isNullOrEmpty(data.firstname()) || isNullOrEmpty(data.lastname())
-				|| data.birthdate() == null) {
-			throw new NullPointerException("One or more required fields are null!");
+	/**
+	 * Update all fields of many users at once
+	 * 
+	 * @param data
+	 * @return status per item
+	 */
+	@PutMapping("/batch")
+	public ResponseEntity<UserBatchResponse> updateUsers(@RequestBody List<UserUpdateRequest> data) {
+		UserBatchItem[] items = new UserBatchItem[data.size()];
+		List<User> valid = new ArrayList<>(data.size());
+		List<Integer> positions = new ArrayList<>(data.size());
+		Today today = validator.today();
+		for (int i = 0; i < data.size(); i++) {
+			UserUpdateRequest item = data.get(i);
+			ValidationError error = validator.validate(data(item.request()), today);
+			if (error == null) {
+				User user = User.of(item.request());
+				user.setId(item.id());
+				valid.add(user);
+				positions.add(i);
+			} else {
+				items[i] = rejected(i, item.id(), error);
+			}
 		}
 
-		if (!isEmailValid(data.email()) || birthdate.isAfter(LocalDate.now())) {
-			throw new UserNotValidException("User is not valid!");
+		List<RuntimeException> errors = service.updateAll(valid);
+		for (int k = 0; k < errors.size(); k++) {
+			int i = positions.get(k);
+			long id = valid.get(k).getId();
+			items[i] = errors.get(k) == null ? new UserBatchItem(i, id, HttpStatus.OK.toString(), null)
+					: rejected(i, id, errors.get(k));
 		}
+		return ResponseEntity.status(HttpStatus.OK).body(new UserBatchResponse(Arrays.asList(items)));
+	}
 
-		if (!isUserAgeSaitsfy(birthdate)) {
-			throw new UserAgeNotSatisfyException("Too young!");
+	/**
+	 * Delete many users at once
+	 * 
+	 * @param ids
+	 * @return status per id
+	 */
+	@DeleteMapping("/batch")
+	public ResponseEntity<UserBatchResponse> deleteUsers(@RequestBody long[] ids) {
+		boolean[] deleted = service.deleteAll(ids);
+		List<UserBatchItem> items = new ArrayList<>(ids.length);
+		for (int i = 0; i < ids.length; i++) {
+			items.add(deleted[i] ? new UserBatchItem(i, ids[i], HttpStatus.NO_CONTENT.toString(), null)
+					: new UserBatchItem(i, ids[i], HttpStatus.NOT_FOUND.toString(), "User not found!"));
 		}
+		return ResponseEntity.status(HttpStatus.OK).body(new UserBatchResponse(items));
+	}
 
+	/**
+	 * Import users from newline delimited JSON, one user request per line. Lines
+	 * are validated like in {@link #createUser(UserRequest)}, a bad line does not
+	 * stop the import.
+	 * 
+	 * @param body
+	 * @return counters, throughput and rejected lines
+	 * @throws IOException
+	 */
+	@PostMapping(path = "/import", consumes = NDJSON)
+	public ResponseEntity<UserImportResponse> importUsers(InputStream body) throws IOException {
+		Today today = validator.today();
+		return ResponseEntity.status(HttpStatus.OK)
+				.body(importer.importUsers(body, request -> validator.validate(data(request), today)));
 	}
 
-	private void validateRange(LocalDate from, LocalDate to) {
-		if (from==null||to==null) {
-			throw new NullPointerException("Range of dates is not presented!");
+	private static ResponseEntity<UserResponse> versioned(HttpStatus status, VersionedUser user) {
+		ResponseEntity.BodyBuilder response = ResponseEntity.status(status);
+		if (user.version() > 0) {
+			response.eTag(UserETag.of(user).encode());
 		}
-		if (Period.between(from, to).isNegative() || to.isAfter(LocalDate.now()))
-			throw new DateRangeIsNotValidException("Range of dates is not valid!");
-
-		/**
-		 * Meant to be unreachable lol
-		 */
-		if (from.isBefore(LocalDate.of(1900, 1, 1)) && to.isAfter(LocalDate.now())) {
-			throw new DateRangeIsNotValidException("І мертвим, і живим, і ненародженим...");
+		return response.body(UserResponse.of(user.user()));
+	}
 
-		}
+	private UserBatchItem rejected(int index, Long id, ValidationError error) {
+		HttpStatus status = error == ValidationError.TOO_YOUNG ? HttpStatus.FORBIDDEN : HttpStatus.BAD_REQUEST;
+		return new UserBatchItem(index, id, status.toString(), error.message());
 	}
 
-	private boolean isUserAgeSaitsfy(LocalDate birthdate) {
-		return birthdate.plusYears(ageRequired).isBefore(LocalDate.now());
+	private UserBatchItem rejected(int index, Long id, RuntimeException ex) {
+		HttpStatus status = HttpStatus.BAD_REQUEST;
+		if (ex instanceof UserAgeNotSatisfyException) {
+			status = HttpStatus.FORBIDDEN;
+		} else if (ex instanceof UserNotFoundException) {
+			status = HttpStatus.NOT_FOUND;
+		} else if (ex instanceof UserEmailConflictException) {
+			status = HttpStatus.CONFLICT;
+		}
+		return new UserBatchItem(index, id, status.toString(), ex.getMessage());
 	}
 
-	private boolean isEmailValid(String email) {
-		return email.matches("^[\\w-\\.]+@([\\w-]+\\.)+[\\w-]{2,4}$");
+	private void validateUser(UserRequest request) {
+		ValidationError error = validator.validate(data(request));
+		if (error != null) {
+			throw error.exception();
+		}
 	}
 
-	private boolean isNullOrEmpty(String string) {
-		return string == null || "".equals(string);
+	private void validateRange(LocalDate from, LocalDate to) {
+		ValidationError error = validator.validateRange(from, to, validator.today());
+		if (error != null) {
+			throw error.exception();
+		}
 	}
 
-	private boolean isBirthdateValid(LocalDate birthdate) {
-		return birthdate != null && birthdate.isBefore(LocalDate.now()) && isUserAgeSaitsfy(birthdate);
+	private static UserRequestData data(UserRequest request) {
+		return request == null ? null : request.data();
 	}
 
 	@ExceptionHandler(value = { DateRangeIsNotValidException.class, NullPointerException.class,
-			UserPatchIsNotValidException.class, UserNotValidException.class })
+			FieldIsNullException.class, UserPatchIsNotValidException.class, UserNotValidException.class, PageIsNotValidException.class })
 	public ResponseEntity<UserErrorResponse> handle(RuntimeException ex) {
 
 		return ResponseEntity.status(HttpStatus.BAD_REQUEST)
@@ -222,4 +447,16 @@ public class UserController {
 				.body(new UserErrorResponse(HttpStatus.NOT_FOUND.toString(), ex.getMessage()));
 	}
 
+	@ExceptionHandler
+	public ResponseEntity<UserErrorResponse> handle(UserEmailConflictException ex) {
+		return ResponseEntity.status(HttpStatus.CONFLICT)
+				.body(new UserErrorResponse(HttpStatus.CONFLICT.toString(), ex.getMessage()));
+	}
+
+	@ExceptionHandler
+	public ResponseEntity<UserErrorResponse> handle(UserVersionMismatchException ex) {
+		return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+				.body(new UserErrorResponse(HttpStatus.PRECONDITION_FAILED.toString(), ex.getMessage()));
+	}
+
 }
@@ -0,0 +1,61 @@
+package com.holyk.clearsolutions.controllers;
+
+import java.util.function.LongPredicate;
+import java.util.stream.LongStream;
+
+import com.holyk.clearsolutions.services.VersionedUser;
+
+/**
+ * Strong entity tag of a user version. Versions start again with the process,
+ * so the tag also carries the start time and tags of an earlier process never
+ * match.
+ */
+public record UserETag(long version) {
+
+	private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+	private static final String PREFIX = "\"" + EPOCH + ".";
+
+	public static UserETag of(VersionedUser user) {
+		return new UserETag(user.version());
+	}
+
+	/**
+	 * @return quoted tag
+	 */
+	public String encode() {
+		return PREFIX + version + "\"";
+	}
+
+	/**
+	 * @param ifMatch {@code If-Match} header, null or {@code *} for any version
+	 * @return accepts the versions of the listed strong tags
+	 */
+	public static LongPredicate matcher(String ifMatch) {
+		if (ifMatch == null || ifMatch.trim().equals("*")) {
+			return version -> true;
+		}
+		LongStream.Builder versions = LongStream.builder();
+		for (String tag : ifMatch.split(",")) {
+			tag = tag.trim();
+			// weak tags never match, If-Match uses the strong comparison
+			if (!tag.startsWith(PREFIX) || !tag.endsWith("\"") || tag.length() == PREFIX.length()) {
+				continue;
+			}
+			try {
+				versions.add(Long.parseLong(tag.substring(PREFIX.length(), tag.length() - 1)));
+			} catch (NumberFormatException e) {
+				// not one of our tags
+			}
+		}
+		long[] expected = versions.build().toArray();
+		return version -> {
+			for (long tag : expected) {
+				if (tag == version && version > 0) {
+					return true;
+				}
+			}
+			return false;
+		};
+	}
+
+}
@@ -0,0 +1,25 @@
+package com.holyk.clearsolutions.controllers;
+
+import java.util.List;
+
+/**
+ * Outcome of a streaming import
+ * 
+ * @param lines          non blank lines read
+ * @param imported       users saved
+ * @param rejected       lines that were not saved
+ * @param elapsedMillis  time spent on the whole stream
+ * @param usersPerSecond imported users per second
+ * @param errors         first rejected lines, at most app.user.import.max-errors
+ */
+public record UserImportResponse(long lines, long imported, long rejected, long elapsedMillis, double usersPerSecond,
+		List<UserImportError> errors) {
+
+	/**
+	 * @param line    1-based line number in the upload
+	 * @param message why the line was rejected
+	 */
+	public record UserImportError(long line, String message) {
+
+	}
+}
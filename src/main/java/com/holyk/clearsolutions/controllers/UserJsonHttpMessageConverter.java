@@ -0,0 +1,96 @@
+package com.holyk.clearsolutions.controllers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.services.UserJsonCache;
+
+/**
+ * Writes {@link User}, {@link UserResponse} and lists of users from the
+ * serialized users of the {@link UserJsonCache}, the JSON is the same as
+ * Jackson would give. A range is the cached users joined into an array.
+ * Everything else, and all reading, is left to the Jackson converter.
+ */
+public class UserJsonHttpMessageConverter extends AbstractGenericHttpMessageConverter<Object> {
+
+	private static final byte[] DATA_START = "{\"data\":".getBytes(StandardCharsets.UTF_8);
+
+	private final UserJsonCache json;
+
+	/**
+	 * @param json
+	 */
+	public UserJsonHttpMessageConverter(UserJsonCache json) {
+		super(MediaType.APPLICATION_JSON);
+		this.json = json;
+	}
+
+	@Override
+	protected boolean supports(Class<?> clazz) {
+		return User.class == clazz || UserResponse.class == clazz;
+	}
+
+	@Override
+	public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+		return false;
+	}
+
+	@Override
+	public boolean canRead(Class<?> clazz, MediaType mediaType) {
+		return false;
+	}
+
+	@Override
+	public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+		if (type != null && Collection.class.isAssignableFrom(clazz)) {
+			return ResolvableType.forType(type).asCollection().resolveGeneric(0) == User.class
+					&& canWrite(mediaType);
+		}
+		return canWrite(clazz, mediaType);
+	}
+
+	@Override
+	protected void writeInternal(Object value, Type type, HttpOutputMessage outputMessage) throws IOException {
+		OutputStream out = outputMessage.getBody();
+		if (value instanceof User user) {
+			out.write(json.json(user));
+		} else if (value instanceof UserResponse response) {
+			out.write(DATA_START);
+			out.write(json.json(User.of(response)));
+			out.write('}');
+		} else {
+			out.write('[');
+			boolean first = true;
+			for (Object user : (Collection<?>) value) {
+				if (!first) {
+					out.write(',');
+				}
+				out.write(json.json((User) user));
+				first = false;
+			}
+			out.write(']');
+		}
+	}
+
+	@Override
+	public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+		throw new HttpMessageNotReadableException("Users are read by Jackson", inputMessage);
+	}
+
+	@Override
+	protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+		throw new HttpMessageNotReadableException("Users are read by Jackson", inputMessage);
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.holyk.clearsolutions.controllers;
+
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Base64;
+
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.exceptions.PageIsNotValidException;
+
+/**
+ * Position in the birthdate range search: birthdate and id of the last user of
+ * a page. Clients get it as an opaque url safe string.
+ */
+public record UserPageCursor(LocalDate birthdate, long id) {
+
+	private static final int BYTES = 2 * Long.BYTES;
+
+	public static UserPageCursor of(User user) {
+		return new UserPageCursor(user.getBirthdate(), user.getId());
+	}
+
+	public String encode() {
+		byte[] bytes = ByteBuffer.allocate(BYTES).putLong(birthdate.toEpochDay()).putLong(id).array();
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+
+	/**
+	 * @throws PageIsNotValidException if the cursor was not produced by
+	 *                                 {@link #encode()}
+	 */
+	public static UserPageCursor decode(String cursor) {
+		try {
+			byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+			if (bytes.length != BYTES) {
+				throw new PageIsNotValidException("Page is not valid!");
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			return new UserPageCursor(LocalDate.ofEpochDay(buffer.getLong()), buffer.getLong());
+		} catch (IllegalArgumentException | DateTimeException e) {
+			throw new PageIsNotValidException("Page is not valid!");
+		}
+	}
+}
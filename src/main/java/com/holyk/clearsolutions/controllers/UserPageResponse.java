@@ -0,0 +1,15 @@
+package com.holyk.clearsolutions.controllers;
+
+import java.util.List;
+
+import com.holyk.clearsolutions.entity.User;
+
+/**
+ * One page of users
+ * 
+ * @param data users of the page
+ * @param next cursor of the next page, null on the last page
+ */
+public record UserPageResponse(List<User> data, String next) {
+
+}
@@ -0,0 +1,13 @@
+package com.holyk.clearsolutions.controllers;
+
+import com.holyk.clearsolutions.controllers.UserRequest.UserRequestData;
+
+/**
+ * Item of a batch update, all user fields of the user with given id
+ */
+public record UserUpdateRequest(long id, UserRequestData data) {
+
+	public UserRequest request() {
+		return new UserRequest(data);
+	}
+}
@@ -4,12 +4,15 @@ import java.time.LocalDate;
 import java.util.Objects;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.holyk.clearsolutions.controllers.UserRequest;
 import com.holyk.clearsolutions.controllers.UserResponse;
 
 public class User {
 
 	private long id;
+	// of this content, kept by the store and not part of equals, see UserStore
+	private long version;
 
 	private String email;
 	private String firstname;
@@ -82,6 +85,15 @@ public class User {
 		this.id = id;
 	}
 
+	@JsonIgnore
+	public long getVersion() {
+		return version;
+	}
+
+	public void setVersion(long version) {
+		this.version = version;
+	}
+
 	/**
 	 * @param email
 	 * @param firstname
@@ -129,7 +141,15 @@ public class User {
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(address, birthdate, email, firstname, id, lastname, phone);
+		// same value as Objects.hash over the fields, without boxing the id
+		int hash = 1;
+		hash = 31 * hash + Objects.hashCode(address);
+		hash = 31 * hash + Objects.hashCode(birthdate);
+		hash = 31 * hash + Objects.hashCode(email);
+		hash = 31 * hash + Objects.hashCode(firstname);
+		hash = 31 * hash + Long.hashCode(id);
+		hash = 31 * hash + Objects.hashCode(lastname);
+		return 31 * hash + Objects.hashCode(phone);
 	}
 
 	@Override
@@ -147,7 +167,7 @@ public class User {
 	@Override
 	public String toString() {
 		return "User [id=" + id + ", email=" + email + ", firstname=" + firstname + ", lastname=" + lastname
-				+ ", birthdate=" + birthdate + ", address=" + address + ", phone=" + phone + "]";
+				+ ", birthdate=" + birthdate + ", address=" + address + ", phone=" + phone + ", version=" + version + "]";
 	}
 
 }
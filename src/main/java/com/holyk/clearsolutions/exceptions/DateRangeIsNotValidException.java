@@ -1,6 +1,6 @@
 package com.holyk.clearsolutions.exceptions;
 
-public class DateRangeIsNotValidException extends RuntimeException {
+public class DateRangeIsNotValidException extends StacklessException {
 
 	private static final long serialVersionUID = 8166465100800236021L;
 
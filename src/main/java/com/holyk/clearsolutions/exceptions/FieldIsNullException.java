@@ -0,0 +1,14 @@
+package com.holyk.clearsolutions.exceptions;
+
+public class FieldIsNullException extends StacklessException {
+
+	private static final long serialVersionUID = -3620954218750311448L;
+
+	/**
+	 * @param message
+	 */
+	public FieldIsNullException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,14 @@
+package com.holyk.clearsolutions.exceptions;
+
+public class PageIsNotValidException extends StacklessException {
+
+	private static final long serialVersionUID = -2394857102938475610L;
+
+	/**
+	 * @param message
+	 */
+	public PageIsNotValidException(String message) {
+		super(message);
+	}
+
+}
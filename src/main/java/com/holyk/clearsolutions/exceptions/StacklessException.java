@@ -0,0 +1,19 @@
+package com.holyk.clearsolutions.exceptions;
+
+/**
+ * Base of the errors answered with a client error status. They are expected
+ * and the handlers only read the message, so no stack trace is filled in and
+ * creating one costs about as much as any small object.
+ */
+public abstract class StacklessException extends RuntimeException {
+
+	private static final long serialVersionUID = 2210478932654127395L;
+
+	/**
+	 * @param message
+	 */
+	protected StacklessException(String message) {
+		super(message, null, false, false);
+	}
+
+}
@@ -1,6 +1,6 @@
 package com.holyk.clearsolutions.exceptions;
 
-public class UserAgeNotSatisfyException extends RuntimeException {
+public class UserAgeNotSatisfyException extends StacklessException {
 
 	private static final long serialVersionUID = -7785964411285718029L;
 
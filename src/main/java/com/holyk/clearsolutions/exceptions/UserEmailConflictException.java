@@ -0,0 +1,14 @@
+package com.holyk.clearsolutions.exceptions;
+
+public class UserEmailConflictException extends StacklessException {
+
+	private static final long serialVersionUID = 4417052917431258806L;
+
+	/**
+	 * @param message
+	 */
+	public UserEmailConflictException(String message) {
+		super(message);
+	}
+
+}
@@ -1,6 +1,6 @@
 package com.holyk.clearsolutions.exceptions;
 
-public class UserNotFoundException extends RuntimeException {
+public class UserNotFoundException extends StacklessException {
 
 	private static final long serialVersionUID = -8991897541908359023L;
 
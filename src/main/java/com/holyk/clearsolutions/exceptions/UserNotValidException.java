@@ -1,6 +1,6 @@
 package com.holyk.clearsolutions.exceptions;
 
-public class UserNotValidException extends RuntimeException {
+public class UserNotValidException extends StacklessException {
 
 	private static final long serialVersionUID = -7785964411285718029L;
 
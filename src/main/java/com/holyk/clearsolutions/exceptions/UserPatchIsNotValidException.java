@@ -1,6 +1,6 @@
 package com.holyk.clearsolutions.exceptions;
 
-public class UserPatchIsNotValidException extends RuntimeException {
+public class UserPatchIsNotValidException extends StacklessException {
 
 	private static final long serialVersionUID = 6863172702128132501L;
 
@@ -0,0 +1,17 @@
+package com.holyk.clearsolutions.exceptions;
+
+/**
+ * The user is not in the version a conditional write expected
+ */
+public class UserVersionMismatchException extends StacklessException {
+
+	private static final long serialVersionUID = 4187609374526912031L;
+
+	/**
+	 * @param message
+	 */
+	public UserVersionMismatchException(String message) {
+		super(message);
+	}
+
+}
@@ -0,0 +1,91 @@
+package com.holyk.clearsolutions.services;
+
+import java.util.Locale;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.holyk.clearsolutions.exceptions.UserEmailConflictException;
+
+/**
+ * Unique index of emails, trimmed and lower case, to user ids. An email is held
+ * by one user id at a time: a write claims the new email before it goes to the
+ * store and releases it if the write fails, a successful write releases the
+ * email of the user it replaced. Claims of the same id are counted, so
+ * concurrent writes of one user never drop each other's email.
+ * <p>
+ * Thread safe without a global lock, every change is an atomic update of one
+ * entry. Null emails are not indexed.
+ */
+final class EmailIndex {
+
+	private final ConcurrentHashMap<String, Holder> emails = new ConcurrentHashMap<>();
+
+	static String normalize(String email) {
+		return email.trim().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * @throws UserEmailConflictException if another user holds the email
+	 */
+	void claim(String email, long id) {
+		if (email == null) {
+			return;
+		}
+		emails.compute(normalize(email), (key, holder) -> {
+			if (holder == null) {
+				return new Holder(id, 1);
+			}
+			if (holder.id() != id) {
+				throw new UserEmailConflictException("Email is already in use!");
+			}
+			return new Holder(id, holder.claims() + 1);
+		});
+	}
+
+	/**
+	 * Undo one {@link #claim(String, long)}, the email is free after the last one
+	 */
+	void release(String email, long id) {
+		if (email == null) {
+			return;
+		}
+		emails.computeIfPresent(normalize(email), (key, holder) -> {
+			if (holder.id() != id) {
+				return holder;
+			}
+			return holder.claims() == 1 ? null : new Holder(id, holder.claims() - 1);
+		});
+	}
+
+	/**
+	 * Index a stored user, an email stored twice before the index existed stays
+	 * with the first user
+	 */
+	void restore(String email, long id) {
+		try {
+			claim(email, id);
+		} catch (UserEmailConflictException ex) {
+			// keep the first holder
+		}
+	}
+
+	/**
+	 * @return id of the user holding the email, may be a write in progress
+	 */
+	OptionalLong find(String email) {
+		Holder holder = email == null ? null : emails.get(normalize(email));
+		return holder == null ? OptionalLong.empty() : OptionalLong.of(holder.id());
+	}
+
+	int size() {
+		return emails.size();
+	}
+
+	void clear() {
+		emails.clear();
+	}
+
+	private record Holder(long id, int claims) {
+	}
+
+}
@@ -0,0 +1,159 @@
+package com.holyk.clearsolutions.services;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.holyk.clearsolutions.entity.User;
+
+/**
+ * Applies {@code add}, {@code replace} and {@code remove} of the top level
+ * User fields straight to a copy of the user, without the JsonNode round trip.
+ * Gives up (returns null) on anything else, so the caller can fall back to the
+ * generic JSON Patch path, which then produces the very same result or error.
+ * <p>
+ * Operations are read from the JSON form of the patch, which a
+ * {@link JsonPatch} writes through its public serializer.
+ */
+final class UserFieldPatcher {
+
+	private enum Field {
+		EMAIL("email"), FIRSTNAME("firstname"), LASTNAME("lastname"), BIRTHDATE("birthdate"), ADDRESS("address"),
+		PHONE("phone");
+
+		private final String path;
+
+		Field(String name) {
+			this.path = "/" + name;
+		}
+	}
+
+	private static final Field[] FIELDS = Field.values();
+
+	private UserFieldPatcher() {
+	}
+
+	/**
+	 * @param operations JSON array of the patch
+	 * @return patched copy of the user or null if the patch has operations this
+	 *         patcher does not handle
+	 */
+	static User apply(JsonNode operations, User user) {
+		if (!operations.isArray()) {
+			return null;
+		}
+		User patched = null;
+		for (int i = 0; i < operations.size(); i++) {
+			JsonNode operation = operations.get(i);
+			Field field = fieldOf(operation.path("path"));
+			if (field == null) {
+				return null;
+			}
+			Object value;
+			switch (operation.path("op").asText()) {
+			case "remove" -> value = null;
+			case "replace", "add" -> {
+				value = valueOf(field, operation.get("value"));
+				if (value == Unsupported.VALUE) {
+					return null;
+				}
+			}
+			default -> {
+				return null;
+			}
+			}
+			if (patched == null) {
+				patched = copyOf(user);
+			}
+			set(patched, field, value);
+		}
+		return patched == null ? copyOf(user) : patched;
+	}
+
+	private static Field fieldOf(JsonNode path) {
+		if (!path.isTextual()) {
+			return null;
+		}
+		for (Field field : FIELDS) {
+			if (field.path.equals(path.textValue())) {
+				return field;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Only text and null values are taken, that is where the conversion is
+	 * obviously the same as Jackson's
+	 */
+	private static Object valueOf(Field field, JsonNode node) {
+		if (node == null || node.isMissingNode()) {
+			return Unsupported.VALUE;
+		}
+		if (node.isNull()) {
+			return null;
+		}
+		if (!node.isTextual()) {
+			return Unsupported.VALUE;
+		}
+		if (field != Field.BIRTHDATE) {
+			return node.textValue();
+		}
+		try {
+			return parseDate(node.textValue());
+		} catch (DateTimeException e) {
+			return Unsupported.VALUE;
+		}
+	}
+
+	/**
+	 * The common yyyy-MM-dd form is parsed by hand, the formatter allocates a lot
+	 */
+	private static LocalDate parseDate(String text) {
+		if (text.length() == 10 && text.charAt(4) == '-' && text.charAt(7) == '-') {
+			int year = digits(text, 0, 4);
+			int month = digits(text, 5, 7);
+			int day = digits(text, 8, 10);
+			if (year >= 0 && month >= 0 && day >= 0) {
+				return LocalDate.of(year, month, day);
+			}
+		}
+		return LocalDate.parse(text);
+	}
+
+	private static int digits(String text, int from, int to) {
+		int value = 0;
+		for (int i = from; i < to; i++) {
+			char c = text.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	private static void set(User user, Field field, Object value) {
+		switch (field) {
+		case EMAIL -> user.setEmail((String) value);
+		case FIRSTNAME -> user.setFirstname((String) value);
+		case LASTNAME -> user.setLastname((String) value);
+		case BIRTHDATE -> user.setBirthdate((LocalDate) value);
+		case ADDRESS -> user.setAddress((String) value);
+		case PHONE -> user.setPhone((String) value);
+		}
+	}
+
+	private static User copyOf(User user) {
+		User copy = new User(user.getEmail(), user.getFirstname(), user.getLastname(), user.getBirthdate(),
+				user.getAddress(), user.getPhone());
+		copy.setId(user.getId());
+		return copy;
+	}
+
+	private enum Unsupported {
+		VALUE
+	}
+
+}
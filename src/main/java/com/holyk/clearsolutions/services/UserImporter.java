@@ -0,0 +1,247 @@
+package com.holyk.clearsolutions.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.holyk.clearsolutions.controllers.UserImportResponse;
+import com.holyk.clearsolutions.controllers.UserImportResponse.UserImportError;
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.exceptions.UserNotValidException;
+import com.holyk.clearsolutions.validation.ValidationError;
+
+/**
+ * Imports users from newline delimited JSON, one {@link UserRequest} per line.
+ * <p>
+ * The upload is read one line at a time and valid users are saved in chunks of
+ * a fixed size, so memory does not depend on the size of the upload. Reading
+ * is blocking: while a chunk is being saved nothing more is read, which
+ * throttles the client through the connection. A bad line is reported and
+ * skipped, the rest of the stream is still imported. So is a line longer than
+ * the maximum, it is read to its end without being kept.
+ */
+@Component
+public class UserImporter {
+
+	private final UserService service;
+	private final JsonFactory factory;
+	private final ObjectReader requestReader;
+	private final int chunkSize;
+	private final int maxErrors;
+	private final int maxLineLength;
+
+	/**
+	 * @param service      where users are saved
+	 * @param objectMapper application mapper
+	 * @param chunkSize    users saved at once
+	 * @param maxErrors     rejected lines listed in the response, the rest are
+	 *                      only counted
+	 * @param maxLineLength characters of a line, longer lines are rejected
+	 */
+	@Autowired
+	public UserImporter(UserService service, ObjectMapper objectMapper,
+			@Value("${app.user.import.chunk-size:1000}") int chunkSize,
+			@Value("${app.user.import.max-errors:100}") int maxErrors,
+			@Value("${app.user.import.max-line-length:65536}") int maxLineLength) {
+		super();
+		this.service = service;
+		this.factory = objectMapper.getFactory();
+		this.requestReader = objectMapper.readerFor(UserRequest.class);
+		this.chunkSize = chunkSize;
+		this.maxErrors = maxErrors;
+		this.maxLineLength = maxLineLength;
+	}
+
+	/**
+	 * @param in        NDJSON upload, read to the end but not closed
+	 * @param validator error of a user that must not be saved, null if it is
+	 *                  valid
+	 * @return counters, throughput and the first errors
+	 * @throws IOException if the upload itself cannot be read
+	 */
+	public UserImportResponse importUsers(InputStream in, Function<UserRequest, ValidationError> validator) throws IOException {
+		long start = System.nanoTime();
+		LineReader reader = new LineReader(new InputStreamReader(in, StandardCharsets.UTF_8), maxLineLength);
+		List<UserRequest> chunk = new ArrayList<>(chunkSize);
+		long[] numbers = new long[chunkSize];
+		List<UserImportError> errors = new ArrayList<>();
+		long lines = 0;
+		long imported = 0;
+		long rejected = 0;
+
+		String line;
+		for (long number = 1; (line = reader.next()) != null; number++) {
+			if (line.isBlank() && !reader.tooLong()) {
+				continue;
+			}
+			lines++;
+			String message;
+			if (reader.tooLong()) {
+				message = "Line is longer than " + maxLineLength + " characters!";
+			} else {
+				try {
+					UserRequest request = parse(line);
+					ValidationError error = validator.apply(request);
+					if (error == null) {
+						numbers[chunk.size()] = number;
+						chunk.add(request);
+					}
+					message = error == null ? null : error.message();
+				} catch (JsonProcessingException | RuntimeException ex) {
+					message = messageOf(ex);
+				}
+			}
+			if (message != null) {
+				rejected++;
+				if (errors.size() < maxErrors) {
+					errors.add(new UserImportError(number, message));
+				}
+				continue;
+			}
+			if (chunk.size() == chunkSize) {
+				int saved = save(chunk, numbers, errors);
+				imported += saved;
+				rejected += chunk.size() - saved;
+				chunk.clear();
+			}
+		}
+		if (!chunk.isEmpty()) {
+			int saved = save(chunk, numbers, errors);
+			imported += saved;
+			rejected += chunk.size() - saved;
+		}
+
+		long elapsedNanos = System.nanoTime() - start;
+		double usersPerSecond = elapsedNanos == 0 ? 0 : imported * 1_000_000_000d / elapsedNanos;
+		return new UserImportResponse(lines, imported, rejected, elapsedNanos / 1_000_000, usersPerSecond, errors);
+	}
+
+	/**
+	 * @param numbers line of every request in the chunk
+	 * @return number of saved users, the others are added to the errors
+	 */
+	private int save(List<UserRequest> chunk, long[] numbers, List<UserImportError> errors) {
+		List<User> saved = service.saveAll(chunk);
+		int count = 0;
+		for (int i = 0; i < saved.size(); i++) {
+			if (saved.get(i) != null) {
+				count++;
+			} else if (errors.size() < maxErrors) {
+				errors.add(new UserImportError(numbers[i], "Email is already in use!"));
+			}
+		}
+		return count;
+	}
+
+	private UserRequest parse(String line) throws IOException {
+		try (JsonParser parser = factory.createParser(line)) {
+			UserRequest request = requestReader.readValue(parser);
+			if (request == null || request.data() == null) {
+				throw ValidationError.REQUIRED_FIELD_MISSING.exception();
+			}
+			if (parser.nextToken() != null) {
+				throw new UserNotValidException("Only one user per line is allowed!");
+			}
+			return request;
+		}
+	}
+
+	private static String messageOf(Exception ex) {
+		if (ex instanceof JsonProcessingException json) {
+			return "Line is not a valid user: " + json.getOriginalMessage();
+		}
+		return ex.getMessage();
+	}
+
+	/**
+	 * Lines of at most a maximum length, the rest of a longer line is skipped
+	 * without being kept
+	 */
+	private static final class LineReader {
+
+		private final Reader in;
+		private final int maxLength;
+		private final char[] buffer = new char[8192];
+		private final StringBuilder line = new StringBuilder();
+		private int position;
+		private int limit;
+		private boolean tooLong;
+
+		LineReader(Reader in, int maxLength) {
+			this.in = in;
+			this.maxLength = maxLength;
+		}
+
+		/**
+		 * @return next line without its terminator, empty if it is too long, null at
+		 *         the end of the input
+		 */
+		String next() throws IOException {
+			line.setLength(0);
+			tooLong = false;
+			boolean empty = true;
+			while (true) {
+				if (position == limit) {
+					position = 0;
+					limit = Math.max(0, in.read(buffer, 0, buffer.length));
+					if (limit == 0) {
+						return empty ? null : end();
+					}
+				}
+				empty = false;
+				int start = position;
+				while (position < limit && buffer[position] != '\n') {
+					position++;
+				}
+				append(start, position);
+				if (position < limit) {
+					position++;
+					return end();
+				}
+			}
+		}
+
+		boolean tooLong() {
+			return tooLong;
+		}
+
+		private void append(int from, int to) {
+			// one more for a \r before the \n
+			if (tooLong || line.length() + to - from > maxLength + 1) {
+				tooLong = true;
+				line.setLength(0);
+				return;
+			}
+			line.append(buffer, from, to - from);
+		}
+
+		private String end() {
+			int length = line.length();
+			if (length > 0 && line.charAt(length - 1) == '\r') {
+				line.setLength(--length);
+			}
+			if (tooLong || length > maxLength) {
+				tooLong = true;
+				return "";
+			}
+			return line.toString();
+		}
+
+	}
+
+}
@@ -0,0 +1,113 @@
+package com.holyk.clearsolutions.services;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.holyk.clearsolutions.entity.User;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Serialized UTF-8 JSON of users by id, computed when a user is written for
+ * the first time and bounded by the bytes of all cached users. Frequently read
+ * users stay, the rest is evicted.
+ * <p>
+ * An entry keeps only the JSON and the version of the user it was serialized
+ * from, see {@link User#getVersion()}, and is used only for a user of the same
+ * version, so a stale entry put by a reader that raced with a write is never
+ * served. A user without a version, one that did not come from a store, is
+ * never cached. The service still calls {@link #invalidate(long)} after every
+ * change to free the memory early.
+ */
+public class UserJsonCache {
+
+	/**
+	 * Caches nothing, every user is serialized with a default mapper
+	 */
+	public static final UserJsonCache NONE = new UserJsonCache(
+			new ObjectMapper().findAndRegisterModules().disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS), 0);
+
+	private final ObjectWriter writer;
+	private final Cache<Long, Entry> cache;
+
+	/**
+	 * @param objectMapper application mapper, gives the same JSON as the
+	 *                     responses serialized by Jackson
+	 * @param maxBytes     JSON of all cached users, 0 caches nothing
+	 */
+	public UserJsonCache(ObjectMapper objectMapper, long maxBytes) {
+		super();
+		this.writer = objectMapper.writerFor(User.class);
+		if (maxBytes <= 0) {
+			this.cache = null;
+			return;
+		}
+		//@formatter:off
+		this.cache = Caffeine.newBuilder()
+				.maximumWeight(maxBytes)
+				.<Long, Entry>weigher((id, entry) -> entry.json().length)
+				.recordStats()
+				.build();
+		//@formatter:on
+	}
+
+	/**
+	 * @param user
+	 * @return JSON of the user, shared, must not be modified
+	 * @throws IOException if the user cannot be serialized
+	 */
+	public byte[] json(User user) throws IOException {
+		if (cache == null || user.getVersion() == 0) {
+			return writer.writeValueAsBytes(user);
+		}
+		Entry entry = cache.getIfPresent(user.getId());
+		if (entry != null && entry.version() == user.getVersion()) {
+			return entry.json();
+		}
+		byte[] json = writer.writeValueAsBytes(user);
+		cache.put(user.getId(), new Entry(user.getVersion(), json));
+		return json;
+	}
+
+	/**
+	 * @param id of a user changed or removed
+	 */
+	void invalidate(long id) {
+		if (cache != null) {
+			cache.invalidate(id);
+		}
+	}
+
+	void invalidateAll() {
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+
+	/**
+	 * @return hits, misses and evictions by size
+	 */
+	public CacheStats stats() {
+		return cache == null ? CacheStats.empty() : cache.stats();
+	}
+
+	/**
+	 * Publish the statistics as {@code cache.*} meters with
+	 * {@code cache=users.json}
+	 */
+	public void bind(MeterRegistry registry) {
+		if (cache != null) {
+			CaffeineCacheMetrics.monitor(registry, cache, "users.json");
+		}
+	}
+
+	private record Entry(long version, byte[] json) {
+	}
+
+}
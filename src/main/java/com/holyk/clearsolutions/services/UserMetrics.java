@@ -0,0 +1,135 @@
+package com.holyk.clearsolutions.services;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.holyk.clearsolutions.store.DurableUserStore;
+import com.holyk.clearsolutions.store.UserStore;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Meters of {@link UserService}:
+ * <ul>
+ * <li>{@code users.operations}, a timer per {@link Operation}</li>
+ * <li>{@code users.range.size}, users returned by a birthdate range</li>
+ * <li>{@code users.patch.rejected}, failed patches by exception</li>
+ * <li>{@code users.store.size} and {@code users.email.index.size}</li>
+ * </ul>
+ * Meters are created once, recording is a lookup by ordinal. In
+ * {@link Mode#FULL} timers and the range size also publish a histogram and the
+ * p50 and p99, {@link Mode#LIGHT} keeps only count, total and max, which is
+ * cheaper on hot paths. {@link #NONE} does not even read the clock.
+ */
+public class UserMetrics {
+
+	public enum Operation {
+		SAVE, SAVE_ALL, UPDATE, UPDATE_ALL, PATCH, DELETE, DELETE_ALL, RANGE;
+	}
+
+	public enum Mode {
+		FULL, LIGHT, OFF;
+	}
+
+	/**
+	 * Records nothing
+	 */
+	public static final UserMetrics NONE = new UserMetrics();
+
+	private final MeterRegistry registry;
+	private final Timer[] timers;
+	private final DistributionSummary rangeSize;
+	private final ConcurrentHashMap<Class<?>, Counter> rejections = new ConcurrentHashMap<>();
+
+	private UserMetrics() {
+		super();
+		this.registry = null;
+		this.timers = null;
+		this.rangeSize = null;
+	}
+
+	/**
+	 * @param registry
+	 * @param mode     {@link Mode#OFF} behaves as {@link #NONE}
+	 */
+	public UserMetrics(MeterRegistry registry, Mode mode) {
+		super();
+		if (mode == Mode.OFF) {
+			this.registry = null;
+			this.timers = null;
+			this.rangeSize = null;
+			return;
+		}
+		boolean full = mode == Mode.FULL;
+		this.registry = registry;
+		this.timers = new Timer[Operation.values().length];
+		for (Operation operation : Operation.values()) {
+			//@formatter:off
+			Timer.Builder timer = Timer.builder("users.operations")
+					.description("Time of user service operations")
+					.tag("operation", operation.name().toLowerCase());
+			//@formatter:on
+			if (full) {
+				timer.publishPercentiles(0.5, 0.99).publishPercentileHistogram();
+			}
+			timers[operation.ordinal()] = timer.register(registry);
+		}
+		//@formatter:off
+		DistributionSummary.Builder summary = DistributionSummary.builder("users.range.size")
+				.description("Users returned by a birthdate range")
+				.baseUnit("users");
+		//@formatter:on
+		if (full) {
+			summary.publishPercentiles(0.5, 0.99).publishPercentileHistogram();
+		}
+		this.rangeSize = summary.register(registry);
+	}
+
+	/**
+	 * @return start of an operation for {@link #stop(Operation, long)}
+	 */
+	long start() {
+		return timers == null ? 0 : System.nanoTime();
+	}
+
+	void stop(Operation operation, long start) {
+		if (timers != null) {
+			timers[operation.ordinal()].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	void rangeSize(int size) {
+		if (rangeSize != null) {
+			rangeSize.record(size);
+		}
+	}
+
+	void patchRejected(Exception ex) {
+		if (registry == null) {
+			return;
+		}
+		rejections.computeIfAbsent(ex.getClass(), type -> Counter.builder("users.patch.rejected")
+				.description("Patches that were not applied").tag("exception", type.getSimpleName()).register(registry))
+				.increment();
+	}
+
+	void bind(UserStore store, EmailIndex emails) {
+		if (registry == null) {
+			return;
+		}
+		Gauge.builder("users.store.size", store, UserStore::size).description("Users in the store")
+				.baseUnit("users").register(registry);
+		Gauge.builder("users.email.index.size", emails, EmailIndex::size).description("Emails in the unique index")
+				.baseUnit("emails").register(registry);
+		if (store instanceof DurableUserStore durable) {
+			FunctionCounter.builder("users.store.snapshots.failed", durable, DurableUserStore::failedSnapshots)
+					.description("Snapshots that could not be written").register(registry);
+		}
+	}
+
+}
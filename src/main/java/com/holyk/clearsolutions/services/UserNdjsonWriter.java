@@ -0,0 +1,91 @@
+package com.holyk.clearsolutions.services;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.holyk.clearsolutions.entity.User;
+
+/**
+ * Writes users as newline delimited JSON, one user per line, as they are
+ * produced. Only the output buffer is held in memory, it goes to the output
+ * whenever it is full. The JSON of a user comes from the
+ * {@link UserJsonCache}, Jackson runs only for users not cached yet.
+ */
+@Component
+public class UserNdjsonWriter {
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final JsonFactory FACTORY = new JsonFactory();
+
+	private final UserJsonCache json;
+
+	/**
+	 * @param objectMapper application mapper, users are not cached
+	 */
+	public UserNdjsonWriter(ObjectMapper objectMapper) {
+		this(new UserJsonCache(objectMapper, 0));
+	}
+
+	/**
+	 * @param json see UserJsonConfiguration
+	 */
+	@Autowired
+	public UserNdjsonWriter(UserJsonCache json) {
+		super();
+		this.json = json;
+	}
+
+	/**
+	 * @param out    not closed
+	 * @param source calls the given consumer for every user to write
+	 * @throws IOException if the output cannot be written, the source is not
+	 *                     continued then
+	 */
+	public void write(OutputStream out, Consumer<Consumer<User>> source) throws IOException {
+		BufferedOutputStream buffer = new BufferedOutputStream(out, BUFFER_SIZE);
+		try {
+			source.accept(user -> {
+				try {
+					buffer.write(json.json(user));
+					buffer.write('\n');
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		buffer.flush();
+	}
+
+	/**
+	 * An error as the only line, in place of the users
+	 * 
+	 * @param out     not closed
+	 * @param status
+	 * @param message
+	 * @throws IOException if the output cannot be written
+	 */
+	public void writeError(OutputStream out, String status, String message) throws IOException {
+		BufferedOutputStream buffer = new BufferedOutputStream(out, BUFFER_SIZE);
+		try (JsonGenerator generator = FACTORY.createGenerator(buffer)) {
+			generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			generator.writeStartObject();
+			generator.writeStringField("status", status);
+			generator.writeStringField("message", message);
+			generator.writeEndObject();
+		}
+		buffer.write('\n');
+		buffer.flush();
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.holyk.clearsolutions.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.github.fge.jsonpatch.JsonPatchException;
+import com.holyk.clearsolutions.entity.User;
+
+/**
+ * Applies JSON Patch documents to users. Plain field operations are applied
+ * directly by {@link UserFieldPatcher}, everything else goes through the
+ * generic JsonNode round trip. Mapper and reader are built once and shared,
+ * they are thread safe.
+ */
+@Component
+public class UserPatcher {
+
+	private final ObjectMapper objectMapper;
+	private final ObjectReader userReader;
+
+	/**
+	 * @param objectMapper application mapper
+	 */
+	@Autowired
+	public UserPatcher(ObjectMapper objectMapper) {
+		super();
+		this.objectMapper = objectMapper;
+		this.userReader = objectMapper.readerFor(User.class).with(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+	}
+
+	/**
+	 * Patcher with its own mapper, for use outside of the application context
+	 */
+	public UserPatcher() {
+		this(JsonMapper.builder().findAndAddModules().build());
+	}
+
+	/**
+	 * @return patched copy, the given user is never modified
+	 */
+	public User apply(JsonPatch patch, User user) throws JsonPatchException, JsonProcessingException {
+		User patched = UserFieldPatcher.apply(objectMapper.valueToTree(patch), user);
+		return patched != null ? patched : applyGeneric(patch, user);
+	}
+
+	User applyGeneric(JsonPatch patch, User user) throws JsonPatchException, JsonProcessingException {
+		JsonNode patched = patch.apply(objectMapper.valueToTree(user));
+		return userReader.treeToValue(patched, User.class);
+	}
+
+}
@@ -0,0 +1,228 @@
+package com.holyk.clearsolutions.services;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import com.holyk.clearsolutions.entity.User;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Results of {@link UserService#getUsersByDateRange(LocalDate, LocalDate)} by
+ * range. Bounded by the number of cached users and by time since the result
+ * was loaded.
+ * <p>
+ * A write drops only the ranges that contain the birthdate it adds or removes,
+ * the service calls {@link #invalidate(LocalDate)} after the store was
+ * changed. The cached ranges are indexed by their first day, so a write looks
+ * only at the ranges that start at most the widest cached range before its
+ * birthdate. A result loaded while a write was in progress may miss that
+ * write, so it is not kept if a write to one of its days was invalidated
+ * during the load; writes are counted by day in a fixed number of stripes, see
+ * {@link #get(LocalDate, LocalDate, Supplier)}.
+ * <p>
+ * Results are unmodifiable and shared by all callers. A result with more users
+ * than the whole cache holds is not cached.
+ */
+public class UserRangeCache {
+
+	/**
+	 * Caches nothing
+	 */
+	public static final UserRangeCache NONE = new UserRangeCache();
+
+	private static final int STRIPES = 1024;
+
+	private final Cache<Range, List<User>> cache;
+	private final long maxUsers;
+	// a superset of the cached ranges, changed only in a computation of the cache
+	private final NavigableSet<Range> index = new ConcurrentSkipListSet<>();
+	// days between the first and the last day of the widest range ever cached
+	private final AtomicLong widest = new AtomicLong();
+	// writes by day, a day counts in the stripe of its epoch day
+	private final AtomicLongArray writes = new AtomicLongArray(STRIPES);
+	private final LongAdder invalidations = new LongAdder();
+
+	private UserRangeCache() {
+		super();
+		this.cache = null;
+		this.maxUsers = 0;
+	}
+
+	/**
+	 * @param maxUsers users held by all cached results together
+	 * @param ttl      time a result is kept after it was loaded
+	 */
+	public UserRangeCache(long maxUsers, Duration ttl) {
+		super();
+		this.maxUsers = maxUsers;
+		//@formatter:off
+		this.cache = Caffeine.newBuilder()
+				.maximumWeight(maxUsers)
+				.<Range, List<User>>weigher((range, users) -> users.size() + 1)
+				.evictionListener((Range range, List<User> users, RemovalCause cause) -> index.remove(range))
+				.expireAfterWrite(ttl)
+				.recordStats()
+				.build();
+		//@formatter:on
+	}
+
+	/**
+	 * @param from   not after to
+	 * @param to
+	 * @param loader reads the range from the store
+	 * @return cached or loaded users
+	 */
+	List<User> get(LocalDate from, LocalDate to, Supplier<List<User>> loader) {
+		if (cache == null) {
+			return loader.get();
+		}
+		Range range = new Range(from, to);
+		List<User> users = cache.getIfPresent(range);
+		if (users != null) {
+			return users;
+		}
+		long before = writes(range);
+		List<User> loaded = List.copyOf(loader.get());
+		// a result over the whole bound would only evict all the others
+		if (loaded.size() < maxUsers && writes(range) == before) {
+			widest.accumulateAndGet(range.days(), Math::max);
+			cache.asMap().compute(range, (key, cached) -> {
+				index.add(key);
+				return loaded;
+			});
+			// a write that came between the check and the put may have missed it
+			if (writes(range) != before) {
+				cache.asMap().computeIfPresent(range, (key, cached) -> cached == loaded ? unindex(key) : cached);
+			}
+		}
+		return loaded;
+	}
+
+	/**
+	 * Drop the ranges that contain the birthdate
+	 *
+	 * @param birthdate of a user added, changed or removed, may be null
+	 */
+	void invalidate(LocalDate birthdate) {
+		if (cache == null || birthdate == null) {
+			return;
+		}
+		long day = birthdate.toEpochDay();
+		writes.incrementAndGet(stripe(day));
+		LocalDate first = LocalDate.ofEpochDay(Math.max(LocalDate.MIN.toEpochDay(), day - widest.get()));
+		for (Range range : index.subSet(new Range(first, LocalDate.MIN), true, new Range(birthdate, LocalDate.MAX),
+				true)) {
+			if (range.contains(birthdate)) {
+				drop(range);
+			}
+		}
+	}
+
+	void invalidateAll() {
+		if (cache == null) {
+			return;
+		}
+		for (int i = 0; i < STRIPES; i++) {
+			writes.incrementAndGet(i);
+		}
+		for (Range range : index) {
+			drop(range);
+		}
+	}
+
+	private void drop(Range range) {
+		cache.asMap().compute(range, (key, cached) -> {
+			if (cached != null) {
+				invalidations.increment();
+			}
+			return unindex(key);
+		});
+	}
+
+	private List<User> unindex(Range range) {
+		index.remove(range);
+		return null;
+	}
+
+	/**
+	 * @return writes invalidated so far to the stripes of the days in the range
+	 */
+	private long writes(Range range) {
+		long sum = 0;
+		if (range.days() >= STRIPES - 1) {
+			for (int i = 0; i < STRIPES; i++) {
+				sum += writes.get(i);
+			}
+			return sum;
+		}
+		for (long day = range.from().toEpochDay(); day <= range.to().toEpochDay(); day++) {
+			sum += writes.get(stripe(day));
+		}
+		return sum;
+	}
+
+	private static int stripe(long day) {
+		return (int) Math.floorMod(day, (long) STRIPES);
+	}
+
+	/**
+	 * @return hits, misses, loads and evictions by size or time
+	 */
+	public CacheStats stats() {
+		return cache == null ? CacheStats.empty() : cache.stats();
+	}
+
+	/**
+	 * @return ranges dropped by writes
+	 */
+	public long invalidations() {
+		return invalidations.sum();
+	}
+
+	/**
+	 * Publish the statistics as {@code cache.*} meters with
+	 * {@code cache=users.range} and {@code users.range.cache.invalidations}
+	 */
+	public void bind(MeterRegistry registry) {
+		if (cache == null) {
+			return;
+		}
+		CaffeineCacheMetrics.monitor(registry, cache, "users.range");
+		FunctionCounter.builder("users.range.cache.invalidations", invalidations, LongAdder::sum)
+				.description("Cached ranges dropped by writes").register(registry);
+	}
+
+	private record Range(LocalDate from, LocalDate to) implements Comparable<Range> {
+
+		boolean contains(LocalDate birthdate) {
+			return !birthdate.isBefore(from) && !birthdate.isAfter(to);
+		}
+
+		long days() {
+			return to.toEpochDay() - from.toEpochDay();
+		}
+
+		@Override
+		public int compareTo(Range other) {
+			int compare = from.compareTo(other.from);
+			return compare != 0 ? compare : to.compareTo(other.to);
+		}
+
+	}
+
+}
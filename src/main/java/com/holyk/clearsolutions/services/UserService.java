@@ -2,142 +2,541 @@ package com.holyk.clearsolutions.services;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.IntStream;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.fge.jsonpatch.JsonPatch;
 import com.github.fge.jsonpatch.JsonPatchException;
 import com.holyk.clearsolutions.controllers.UserRequest;
 import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.exceptions.UserEmailConflictException;
 import com.holyk.clearsolutions.exceptions.UserNotFoundException;
+import com.holyk.clearsolutions.exceptions.UserPatchIsNotValidException;
+import com.holyk.clearsolutions.exceptions.UserVersionMismatchException;
+import com.holyk.clearsolutions.services.UserMetrics.Operation;
+import com.holyk.clearsolutions.store.UserStore;
+import com.holyk.clearsolutions.validation.UserValidator;
+import com.holyk.clearsolutions.validation.UserValidator.Today;
 
+/**
+ * Thread safe: ids are taken from an atomic counter, updates and deletes are
+ * single atomic store operations, patches are committed with a compare-and-set,
+ * reads go straight to the store without locking.
+ * <p>
+ * Emails are unique, case insensitive: every write claims the email in an
+ * {@link EmailIndex} before it reaches the store, so a duplicate is rejected
+ * without scanning the users.
+ * <p>
+ * Results of birthdate ranges may come from a {@link UserRangeCache}, every
+ * write drops the cached ranges of the birthdates it touches. The serialized
+ * JSON of a changed or removed user is dropped from the {@link UserJsonCache}.
+ * <p>
+ * Every user has a version, kept by the store next to the user and bumped by
+ * the write that commits a new content, see {@link UserStore}. Conditional
+ * writes are committed by compare-and-set against the expected version.
+ */
 @Service
 public class UserService {
-	private List<User> list;
-	private long increment;
+	private UserStore store;
+	private final UserPatcher patcher;
+	private final UserValidator patchValidator;
+	private final AtomicLong increment;
+	private final EmailIndex emails = new EmailIndex();
+	private final UserMetrics metrics;
+	private final UserRangeCache ranges;
+	private final UserJsonCache json;
 
-	public UserService() {
-		this.list = new ArrayList<>();
-		this.increment = 1L;
+	/**
+	 * @param store          in memory or durable, see UserStoreConfiguration
+	 * @param patcher
+	 * @param patchValidator decides if a patched user may be stored, null if
+	 *                       any may
+	 * @param metrics        see UserMetricsConfiguration
+	 * @param ranges         see UserRangeCacheConfiguration
+	 * @param json           see UserJsonConfiguration
+	 */
+	@Autowired
+	public UserService(UserStore store, UserPatcher patcher, UserValidator patchValidator, UserMetrics metrics,
+			UserRangeCache ranges, UserJsonCache json) {
+		super();
+		this.store = store;
+		this.metrics = metrics;
+		this.ranges = ranges;
+		this.json = json;
+		this.patcher = patcher;
+		this.patchValidator = patchValidator;
+		// a recovered store continues after the last id it has ever seen
+		this.increment = new AtomicLong(Math.max(1L, store.nextId()));
+		for (User user : store.values()) {
+			emails.restore(user.getEmail(), user.getId());
+		}
+		metrics.bind(store, emails);
 	}
 
 	/**
-	 * For test purpose only!
-	 * 
-	 * @param list
-	 * @param increment
+	 * @throws UserEmailConflictException if another user has the email
 	 */
-	public UserService(List<User> list, Long increment) {
-		this.list = list;
-		this.increment = increment;
+	public User update(long id, UserRequest userR) {
+		long start = metrics.start();
+		try {
+			User newUser = User.of(userR);
+			newUser.setId(id);
+			claim(newUser);
+			User previous;
+			try {
+				previous = store.replace(newUser);
+			} catch (RuntimeException ex) {
+				emails.release(newUser.getEmail(), id);
+				throw ex;
+			}
+			if (previous == null) {
+				emails.release(newUser.getEmail(), id);
+				throw new UserNotFoundException("User with id " + id + " not found!");
+			}
+			emails.release(previous.getEmail(), id);
+			changed(previous, newUser);
+			return newUser;
+		} finally {
+			metrics.stop(Operation.UPDATE, start);
+		}
 	}
 
-	private User update(long id, User newUser) {
+	/**
+	 * {@link #update(long, UserRequest)} of the user only while it is in one of
+	 * the expected versions, committed by compare-and-set
+	 * 
+	 * @param ifMatch accepts the versions that may be replaced
+	 * @return updated user and its new version
+	 * @throws UserVersionMismatchException if the user is in another version
+	 * @throws UserEmailConflictException   if another user has the email
+	 */
+	public VersionedUser update(long id, UserRequest userR, LongPredicate ifMatch) {
+		long start = metrics.start();
+		try {
+			User newUser = User.of(userR);
+			newUser.setId(id);
+			while (true) {
+				User current = store.findById(id)
+						.orElseThrow(() -> new UserNotFoundException("User with id " + id + " not found!"));
+				if (!ifMatch.test(current.getVersion())) {
+					throw new UserVersionMismatchException("User was changed!");
+				}
+				if (commit(current, newUser)) {
+					return VersionedUser.of(newUser);
+				}
+			}
+		} finally {
+			metrics.stop(Operation.UPDATE, start);
+		}
+	}
 
-		User user = checkIfUserExistElseThrow(id);
-		list.set(list.indexOf(user), newUser);
+	/**
+	 * Replace all existing users at once
+	 * 
+	 * @param users with ids
+	 * @return errors in the same order, null where the user was updated,
+	 *         {@link UserNotFoundException} or {@link UserEmailConflictException}
+	 *         otherwise
+	 */
+	public List<RuntimeException> updateAll(List<User> users) {
+		long start = metrics.start();
+		try {
+			List<RuntimeException> errors = new ArrayList<>(Collections.nCopies(users.size(), null));
+			List<User> claimed = new ArrayList<>(users.size());
+			for (int i = 0; i < users.size(); i++) {
+				User user = users.get(i);
+				try {
+					claim(user);
+					claimed.add(user);
+				} catch (UserEmailConflictException | UserNotFoundException ex) {
+					errors.set(i, ex);
+				}
+			}
 
-		return newUser;
+			List<User> replaced;
+			try {
+				replaced = store.replaceAll(claimed);
+			} catch (RuntimeException ex) {
+				claimed.forEach(user -> emails.release(user.getEmail(), user.getId()));
+				throw ex;
+			}
+			for (int i = 0, k = 0; i < users.size(); i++) {
+				if (errors.get(i) != null) {
+					continue;
+				}
+				User user = claimed.get(k);
+				User previous = replaced.get(k++);
+				if (previous == null) {
+					emails.release(user.getEmail(), user.getId());
+					errors.set(i, new UserNotFoundException("User with id " + user.getId() + " not found!"));
+				} else {
+					emails.release(previous.getEmail(), user.getId());
+					changed(previous, user);
+				}
+			}
+			return errors;
+		} finally {
+			metrics.stop(Operation.UPDATE_ALL, start);
+		}
 	}
 
-	public User update(long id, UserRequest userR) {
+	/**
+	 * @return users of the range, unmodifiable when it comes from the
+	 *         {@link UserRangeCache}
+	 */
+	public List<User> getUsersByDateRange(LocalDate from, LocalDate to) {
+		long start = metrics.start();
+		try {
+			LocalDate low = from.isAfter(to) ? to : from;
+			LocalDate high = from.isAfter(to) ? from : to;
+			List<User> users = ranges.get(low, high, () -> store.findByBirthdateBetween(low, high));
+			metrics.rangeSize(users.size());
+			return users;
+		} finally {
+			metrics.stop(Operation.RANGE, start);
+		}
+	}
 
-		User newUser = User.of(userR);
-		newUser.setId(id);
-		return update(id, newUser);
+	/**
+	 * Keyset page of {@link #getUsersByDateRange(LocalDate, LocalDate)}
+	 * 
+	 * @param afterBirthdate birthdate of the last user of the previous page, null
+	 *                       for the first page
+	 * @param afterId        id of the last user of the previous page
+	 * @param limit          maximum size of the page
+	 * @return users after the given one, ordered by birthdate and then by id
+	 */
+	public List<User> getUsersByDateRange(LocalDate from, LocalDate to, LocalDate afterBirthdate, long afterId,
+			int limit) {
+		long start = metrics.start();
+		try {
+			if (from.isAfter(to)) {
+				LocalDate swap = from;
+				from = to;
+				to = swap;
+			}
+			List<User> page = new ArrayList<>(Math.min(limit, 1024));
+			if (limit <= 0) {
+				return page;
+			}
+			if (afterBirthdate == null || afterBirthdate.isBefore(from)) {
+				afterBirthdate = from;
+				afterId = Long.MIN_VALUE;
+			}
+			store.forEachByBirthdateBetween(afterBirthdate, afterId, to, user -> {
+				page.add(user);
+				return page.size() < limit;
+			});
+			metrics.rangeSize(page.size());
+			return page;
+		} finally {
+			metrics.stop(Operation.RANGE, start);
+		}
 	}
 
-	public List<User> getUsersByDateRange(LocalDate from, LocalDate to) {
-		return list.stream().filter(u -> isDateBetween(u.getBirthdate(), from, to)).toList();
+	/**
+	 * {@link #getUsersByDateRange(LocalDate, LocalDate)} without collecting the
+	 * users
+	 */
+	public void forEachUserByDateRange(LocalDate from, LocalDate to, Consumer<User> action) {
+		long start = metrics.start();
+		try {
+			if (from.isAfter(to)) {
+				LocalDate swap = from;
+				from = to;
+				to = swap;
+			}
+			int[] size = new int[1];
+			store.forEachByBirthdateBetween(from, Long.MIN_VALUE, to, user -> {
+				action.accept(user);
+				size[0]++;
+				return true;
+			});
+			metrics.rangeSize(size[0]);
+		} finally {
+			metrics.stop(Operation.RANGE, start);
+		}
 	}
 
+	/**
+	 * @throws UserEmailConflictException if another user has the email
+	 */
 	public User save(UserRequest userR) {
-		User user = User.of(userR);
-		user.setId(increment++);
-		this.list.add(user);
-		return user;
+		long start = metrics.start();
+		try {
+			User user = User.of(userR);
+			user.setId(increment.getAndIncrement());
+			user.setVersion(1);
+			emails.claim(user.getEmail(), user.getId());
+			try {
+				store.put(user);
+			} catch (RuntimeException ex) {
+				emails.release(user.getEmail(), user.getId());
+				throw ex;
+			}
+			ranges.invalidate(user.getBirthdate());
+			return user;
+		} finally {
+			metrics.stop(Operation.SAVE, start);
+		}
 	}
 
-	public boolean delete(long id) {
-		return list.removeIf(u -> u.getId() == id);
+	/**
+	 * Save all users at once, they get a contiguous block of ids
+	 * 
+	 * @param requests
+	 * @return saved users in the same order, null where the email is already in
+	 *         use, also by an earlier request of the same batch
+	 */
+	public List<User> saveAll(List<UserRequest> requests) {
+		long start = metrics.start();
+		try {
+			long id = increment.getAndAdd(requests.size());
+			List<User> result = new ArrayList<>(requests.size());
+			List<User> users = new ArrayList<>(requests.size());
+			for (UserRequest request : requests) {
+				User user = User.of(request);
+				user.setId(id++);
+				user.setVersion(1);
+				try {
+					emails.claim(user.getEmail(), user.getId());
+					users.add(user);
+					result.add(user);
+				} catch (UserEmailConflictException ex) {
+					result.add(null);
+				}
+			}
+			try {
+				store.putAll(users);
+			} catch (RuntimeException ex) {
+				users.forEach(user -> emails.release(user.getEmail(), user.getId()));
+				throw ex;
+			}
+			users.forEach(user -> ranges.invalidate(user.getBirthdate()));
+			return result;
+		} finally {
+			metrics.stop(Operation.SAVE_ALL, start);
+		}
 	}
 
-	private boolean isDateBetween(LocalDate date, LocalDate from, LocalDate to) {
-		return from.compareTo(date) * date.compareTo(to) >= 0;
+	public boolean delete(long id) {
+		long start = metrics.start();
+		try {
+			User removed = store.remove(id);
+			if (removed == null) {
+				return false;
+			}
+			emails.release(removed.getEmail(), id);
+			ranges.invalidate(removed.getBirthdate());
+			json.invalidate(id);
+			return true;
+		} finally {
+			metrics.stop(Operation.DELETE, start);
+		}
+	}
 
+	/**
+	 * Delete all users at once
+	 * 
+	 * @param ids
+	 * @return for each id if the user was deleted
+	 */
+	public boolean[] deleteAll(long[] ids) {
+		long start = metrics.start();
+		try {
+			List<User> removed = store.removeAll(ids);
+			boolean[] result = new boolean[ids.length];
+			for (int i = 0; i < ids.length; i++) {
+				User user = removed.get(i);
+				if (user != null) {
+					emails.release(user.getEmail(), ids[i]);
+					ranges.invalidate(user.getBirthdate());
+					json.invalidate(ids[i]);
+					result[i] = true;
+				}
+			}
+			return result;
+		} finally {
+			metrics.stop(Operation.DELETE_ALL, start);
+		}
 	}
 
+	/**
+	 * The patch is applied once to the current user, the candidate is validated
+	 * and then committed only if the user was not changed in the meantime,
+	 * otherwise everything is repeated on the fresh state. No lock is held while
+	 * patching.
+	 * 
+	 * @throws UserPatchIsNotValidException if the patched user is not valid
+	 * @throws UserEmailConflictException   if another user has the new email
+	 */
 	public User patch(long id, JsonPatch patch) throws JsonProcessingException, JsonPatchException {
+		return patch(id, patch, version -> true).user();
+	}
 
-		return update(applyPatchToUser(patch, checkIfUserExistElseThrow(id)));
+	/**
+	 * {@link #patch(long, JsonPatch)} of the user only while it is in one of the
+	 * expected versions. The version is checked again on every attempt, the
+	 * compare-and-set of the store makes it hold until the commit.
+	 * 
+	 * @param ifMatch accepts the versions the patch may be applied to
+	 * @return patched user and its new version
+	 * @throws UserVersionMismatchException if the user is in another version
+	 */
+	public VersionedUser patch(long id, JsonPatch patch, LongPredicate ifMatch)
+			throws JsonProcessingException, JsonPatchException {
+		long start = metrics.start();
+		try {
+			Today today = patchValidator == null ? null : patchValidator.today();
+			while (true) {
+				User current = store.findById(id).orElseThrow(() -> new UserNotFoundException("User not found!"));
+				if (!ifMatch.test(current.getVersion())) {
+					throw new UserVersionMismatchException("User was changed!");
+				}
+				User patched = patcher.apply(patch, current);
+				patched.setId(id);
+				if (patchValidator != null && !patchValidator.isPatchedUserValid(patched, today)) {
+					throw new UserPatchIsNotValidException("Patch is not valid!");
+				}
+				if (commit(current, patched)) {
+					return VersionedUser.of(patched);
+				}
+			}
+		} catch (JsonProcessingException | JsonPatchException | RuntimeException ex) {
+			metrics.patchRejected(ex);
+			throw ex;
+		} finally {
+			metrics.stop(Operation.PATCH, start);
+		}
 	}
 
 	/**
-	 * Ensure that user is exist
+	 * Replace the user by compare-and-set, the replacement gets the next version
 	 * 
-	 * @param newUser
-	 * @return
+	 * @return false if the user was changed since it was read
 	 */
-	private User update(User newUser) {
+	private boolean commit(User current, User replacement) {
+		long id = current.getId();
+		replacement.setVersion(current.getVersion() + 1);
+		emails.claim(replacement.getEmail(), id);
+		boolean replaced;
+		try {
+			replaced = store.replace(current, replacement);
+		} catch (RuntimeException ex) {
+			emails.release(replacement.getEmail(), id);
+			throw ex;
+		}
+		if (!replaced) {
+			emails.release(replacement.getEmail(), id);
+			return false;
+		}
+		emails.release(current.getEmail(), id);
+		changed(current, replacement);
+		return true;
+	}
 
-		int index = IntStream.range(0, list.size()).filter(i -> list.get(i).getId() == newUser.getId()).findFirst()
-				.orElse(-1);
-		list.set(index, newUser);
-		return newUser;
+	/**
+	 * Drop the cached ranges of the birthdate before and after a change and the
+	 * serialized user
+	 */
+	private void changed(User before, User after) {
+		json.invalidate(before.getId());
+		ranges.invalidate(before.getBirthdate());
+		if (!Objects.equals(before.getBirthdate(), after.getBirthdate())) {
+			ranges.invalidate(after.getBirthdate());
+		}
 	}
 
-	private User checkIfUserExistElseThrow(long id) {
-		Optional<User> optional = findUserById(id);
-		if (optional.isEmpty()) {
-			throw new UserNotFoundException("User with id " + id + " not found!");
+	/**
+	 * Claim the email of an update, a missing user wins over a taken email
+	 */
+	private void claim(User user) {
+		try {
+			emails.claim(user.getEmail(), user.getId());
+		} catch (UserEmailConflictException ex) {
+			if (!store.contains(user.getId())) {
+				throw new UserNotFoundException("User with id " + user.getId() + " not found!");
+			}
+			throw ex;
 		}
-		return optional.get();
 	}
 
 	public Optional<User> findUserById(long id) {
-		return list.stream().filter(u -> u.getId() == id).findFirst();
+		return store.findById(id);
 	}
 
-	private User applyPatchToUser(JsonPatch patch, User targetUser) throws JsonPatchException, JsonProcessingException {
+	/**
+	 * @return the user and the version of its current content
+	 */
+	public Optional<VersionedUser> findVersionedUserById(long id) {
+		return store.findById(id).map(VersionedUser::of);
+	}
 
-		ObjectMapper objectMapper = new ObjectMapper();
-		objectMapper.findAndRegisterModules();
-		JsonNode patched = patch.apply(objectMapper.convertValue(targetUser, JsonNode.class));
-		return objectMapper.treeToValue(patched, User.class);
+	/**
+	 * Served from the email index, not by a scan
+	 * 
+	 * @param email in any case
+	 */
+	public Optional<User> findUserByEmail(String email) {
+		OptionalLong id = emails.find(email);
+		if (id.isEmpty()) {
+			return Optional.empty();
+		}
+		// the index may already hold the email of a write that is not stored yet
+		String normalized = EmailIndex.normalize(email);
+		return store.findById(id.getAsLong())
+				.filter(user -> user.getEmail() != null && EmailIndex.normalize(user.getEmail()).equals(normalized));
 	}
 
 	/**
 	 * For test purpose only!
 	 */
 	public List<User> getList() {
-		return list;
+		return store.values();
 	}
 
 	/**
 	 * For test purpose only!
 	 */
 	void setList(List<User> list) {
-		this.list = list;
+		store.clear();
+		emails.clear();
+		for (User user : list) {
+			if (user.getId() == 0) {
+				user.setId(increment.getAndIncrement());
+			}
+			if (user.getVersion() == 0) {
+				user.setVersion(1);
+			}
+			store.put(user);
+			emails.restore(user.getEmail(), user.getId());
+		}
+		ranges.invalidateAll();
+		json.invalidateAll();
 	}
 
 	/**
 	 * For test purpose only!
 	 */
 	public long getIncrement() {
-		return increment;
+		return increment.get();
 	}
 
 	/**
 	 * For test purpose only!
 	 */
 	void setIncrement(long increment) {
-		this.increment = increment;
+		this.increment.set(increment);
 	}
 
 }
@@ -0,0 +1,18 @@
+package com.holyk.clearsolutions.services;
+
+import com.holyk.clearsolutions.entity.User;
+
+/**
+ * A stored user and the version of exactly this content
+ *
+ * @param user
+ * @param version given by the write that stored the content, grows with every
+ *                write of the user
+ */
+public record VersionedUser(User user, long version) {
+
+	public static VersionedUser of(User user) {
+		return new VersionedUser(user, user.getVersion());
+	}
+
+}
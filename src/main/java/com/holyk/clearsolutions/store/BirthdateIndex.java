@@ -0,0 +1,132 @@
+package com.holyk.clearsolutions.store;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Secondary index of user ids by birthdate. Keys are epoch days, each bucket
+ * is a sorted array of ids, so a range query walks only the matching days and
+ * yields ids ordered by (birthdate, id).
+ * <p>
+ * Buckets are copy-on-write, so readers never lock. Writers must be
+ * serialized by the owner of the index.
+ */
+public class BirthdateIndex {
+
+	private static final long[] EMPTY = new long[0];
+
+	private final NavigableMap<Long, long[]> buckets;
+	private volatile int size;
+
+	public BirthdateIndex() {
+		super();
+		this.buckets = new ConcurrentSkipListMap<>();
+	}
+
+	public void add(LocalDate birthdate, long id) {
+		if (birthdate != null) {
+			add(birthdate.toEpochDay(), id);
+		}
+	}
+
+	public void add(long epochDay, long id) {
+		long[] bucket = buckets.getOrDefault(epochDay, EMPTY);
+		int position = Arrays.binarySearch(bucket, id);
+		if (position >= 0) {
+			return;
+		}
+		position = -position - 1;
+		long[] updated = new long[bucket.length + 1];
+		System.arraycopy(bucket, 0, updated, 0, position);
+		updated[position] = id;
+		System.arraycopy(bucket, position, updated, position + 1, bucket.length - position);
+		buckets.put(epochDay, updated);
+		size++;
+	}
+
+	public void remove(LocalDate birthdate, long id) {
+		if (birthdate != null) {
+			remove(birthdate.toEpochDay(), id);
+		}
+	}
+
+	public void remove(long epochDay, long id) {
+		long[] bucket = buckets.get(epochDay);
+		int position = bucket == null ? -1 : Arrays.binarySearch(bucket, id);
+		if (position < 0) {
+			return;
+		}
+		if (bucket.length == 1) {
+			buckets.remove(epochDay);
+		} else {
+			long[] updated = new long[bucket.length - 1];
+			System.arraycopy(bucket, 0, updated, 0, position);
+			System.arraycopy(bucket, position + 1, updated, position, updated.length - position);
+			buckets.put(epochDay, updated);
+		}
+		size--;
+	}
+
+	/**
+	 * Move id from the old birthdate bucket to the new one
+	 */
+	public void move(LocalDate oldBirthdate, LocalDate newBirthdate, long id) {
+		if (oldBirthdate != null && oldBirthdate.equals(newBirthdate)) {
+			return;
+		}
+		remove(oldBirthdate, id);
+		add(newBirthdate, id);
+	}
+
+	/**
+	 * Visit keys after ({@code fromDay}, {@code afterId}) up to {@code toDay}
+	 * inclusive, ordered by birthdate and then by id, until the visitor returns
+	 * false
+	 * 
+	 * @param fromDay first epoch day
+	 * @param afterId on the first day only greater ids are visited
+	 * @param toDay   last epoch day
+	 * @param visitor
+	 */
+	public void forEachAfter(long fromDay, long afterId, long toDay, Visitor visitor) {
+		if (fromDay > toDay) {
+			return;
+		}
+		for (Map.Entry<Long, long[]> entry : buckets.subMap(fromDay, true, toDay, true).entrySet()) {
+			long day = entry.getKey();
+			long[] bucket = entry.getValue();
+			int start = 0;
+			if (day == fromDay) {
+				int position = Arrays.binarySearch(bucket, afterId);
+				start = position >= 0 ? position + 1 : -position - 1;
+			}
+			for (int i = start; i < bucket.length; i++) {
+				if (!visitor.visit(day, bucket[i])) {
+					return;
+				}
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		buckets.clear();
+		size = 0;
+	}
+
+	@FunctionalInterface
+	public interface Visitor {
+
+		/**
+		 * @return false to stop
+		 */
+		boolean visit(long epochDay, long id);
+	}
+
+}
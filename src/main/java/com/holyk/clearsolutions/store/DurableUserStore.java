@@ -0,0 +1,731 @@
+package com.holyk.clearsolutions.store;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.holyk.clearsolutions.entity.User;
+
+/**
+ * Keeps another store on disk. Every write is appended to a
+ * {@link WriteAheadLog} and applied to the delegate only once its record is
+ * durable, so reads, which go straight to the delegate, never see a write that
+ * a crash could lose. Writes decide against the latest state, durable or not,
+ * kept as pending writes over the delegate. A failed fsync breaks the log: the
+ * delegate stays at the durable state and every further write fails.
+ * <p>
+ * The log is split into segments {@code wal-<n>.log}. Every
+ * {@code snapshotEvery} records the log moves on to a new segment and the
+ * state of the delegate at that moment is written in the background to
+ * {@code snapshot-<n>.bin}, a {@link MappedUserSnapshot}, after which the older
+ * segments and snapshots are deleted and the new snapshot is served from then
+ * on, with only the writes made since it was taken on the heap. {@link #open}
+ * maps the latest snapshot
+ * into a {@link SnapshotUserStore}, which serves it without decoding it up
+ * front, and replays the segments that follow it; a torn record at the end of
+ * the last segment, left by a crash in the middle of a write, is cut off.
+ * <p>
+ * Writers are serialized by a lock, so the log has the same order as the
+ * delegate. The lock is not held while waiting for the disk.
+ */
+public class DurableUserStore implements UserStore, Closeable {
+
+	private static final String WAL_PREFIX = "wal-";
+	private static final String WAL_SUFFIX = ".log";
+	private static final String SNAPSHOT_PREFIX = "snapshot-";
+	private static final String SNAPSHOT_SUFFIX = ".bin";
+	private static final String TMP_SUFFIX = ".tmp";
+	private static final Logger LOG = LoggerFactory.getLogger(DurableUserStore.class);
+
+	private volatile SnapshotUserStore delegate;
+	private final Path directory;
+	private final int snapshotEvery;
+	private final ReentrantLock writeLock = new ReentrantLock();
+	private final ExecutorService snapshotter;
+	private final WriteAheadLog log;
+	private final ReentrantLock applyLock = new ReentrantLock();
+	private final AtomicLong failedSnapshots = new AtomicLong();
+	private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+	private final ConcurrentHashMap<Long, Pending> overlay = new ConcurrentHashMap<>();
+	private volatile Pending pendingClear;
+	// ids changed since the running snapshot was frozen, guarded by the apply lock
+	private Set<Long> changedSinceFrozen;
+	private boolean clearedSinceFrozen;
+	private volatile long loggedNextId = 1L;
+	private long segment;
+	private int sinceSnapshot;
+	private boolean snapshotRunning;
+	private volatile long recoveredNextId;
+
+	private DurableUserStore(SnapshotUserStore delegate, Path directory, int snapshotEvery, long segment,
+			long recoveredNextId) throws IOException {
+		super();
+		this.delegate = delegate;
+		this.directory = directory;
+		this.snapshotEvery = snapshotEvery;
+		this.segment = segment;
+		this.recoveredNextId = recoveredNextId;
+		this.log = new WriteAheadLog(openSegment(segment));
+		this.snapshotter = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "user-store-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Restore the store from the directory, creating it if needed
+	 *
+	 * @param directory     for log segments and snapshots, one store per directory
+	 * @param snapshotEvery records between snapshots
+	 */
+	public static DurableUserStore open(Path directory, int snapshotEvery) throws IOException {
+		Files.createDirectories(directory);
+		deleteFiles(directory, TMP_SUFFIX, Long.MAX_VALUE);
+
+		long snapshot = latest(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+		SnapshotUserStore delegate = snapshot < 0 ? new SnapshotUserStore()
+				: new SnapshotUserStore(MappedUserSnapshot.open(snapshotPath(directory, snapshot)));
+		long[] recovered = { delegate.nextId() };
+		UserRecordCodec.Handler replay = new UserRecordCodec.Handler() {
+			@Override
+			public void put(User user) {
+				delegate.put(user);
+			}
+
+			@Override
+			public void remove(long id) {
+				delegate.remove(id);
+				recovered[0] = Math.max(recovered[0], id + 1);
+			}
+
+			@Override
+			public void clear() {
+				delegate.clear();
+			}
+		};
+
+		List<Long> segments = list(directory, WAL_PREFIX, WAL_SUFFIX);
+		long last = Math.max(snapshot, 0);
+		for (int i = 0; i < segments.size(); i++) {
+			long number = segments.get(i);
+			if (number >= snapshot) {
+				replaySegment(walPath(directory, number), replay, i == segments.size() - 1);
+			}
+			last = Math.max(last, number);
+		}
+
+		DurableUserStore store = new DurableUserStore(delegate, directory, snapshotEvery, last + 1, recovered[0]);
+		store.deleteBefore(snapshot);
+		return store;
+	}
+
+	@Override
+	public Optional<User> findById(long id) {
+		return delegate.findById(id);
+	}
+
+	@Override
+	public boolean contains(long id) {
+		return delegate.contains(id);
+	}
+
+	@Override
+	public User put(User user) {
+		ByteBuffer record = UserRecordCodec.put(user);
+		User previous;
+		long position;
+		writeLock.lock();
+		try {
+			previous = latest(user.getId());
+			position = append(record);
+			pending(position, user.getId(), user);
+			written(1);
+		} finally {
+			writeLock.unlock();
+		}
+		apply(position);
+		return previous;
+	}
+
+	@Override
+	public User replace(User user) {
+		ByteBuffer record = UserRecordCodec.put(user);
+		User previous;
+		long position = 0;
+		writeLock.lock();
+		try {
+			previous = latest(user.getId());
+			if (previous != null) {
+				stamp(user, record, previous);
+				position = append(record);
+				pending(position, user.getId(), user);
+				written(1);
+			}
+		} finally {
+			writeLock.unlock();
+		}
+		apply(position);
+		return previous;
+	}
+
+	/**
+	 * Compares with the latest write, also one not durable yet. If that one made
+	 * the comparison fail, it is waited for, so the caller reads it next.
+	 */
+	@Override
+	public boolean replace(User expected, User replacement) {
+		ByteBuffer record = UserRecordCodec.put(replacement);
+		boolean replaced;
+		long position = 0;
+		writeLock.lock();
+		try {
+			long id = replacement.getId();
+			User current = latest(id);
+			replaced = current != null && expected.getId() == id && current.getVersion() == expected.getVersion()
+					&& current.equals(expected);
+			if (replaced) {
+				position = append(record);
+				pending(position, id, replacement);
+				written(1);
+			} else {
+				Pending newer = overlay.get(id);
+				position = newer == null ? 0 : newer.position();
+			}
+		} finally {
+			writeLock.unlock();
+		}
+		apply(position);
+		return replaced;
+	}
+
+	@Override
+	public User remove(long id) {
+		ByteBuffer record = UserRecordCodec.remove(id);
+		User removed;
+		long position = 0;
+		writeLock.lock();
+		try {
+			removed = latest(id);
+			if (removed != null) {
+				position = append(record);
+				pending(position, id, null);
+				written(1);
+			}
+		} finally {
+			writeLock.unlock();
+		}
+		apply(position);
+		return removed;
+	}
+
+	@Override
+	public void putAll(List<User> users) {
+		List<ByteBuffer> records = new ArrayList<>(users.size());
+		for (User user : users) {
+			records.add(UserRecordCodec.put(user));
+		}
+		long position = 0;
+		writeLock.lock();
+		try {
+			for (int i = 0; i < users.size(); i++) {
+				position = append(records.get(i));
+				pending(position, users.get(i).getId(), users.get(i));
+			}
+			written(users.size());
+		} finally {
+			writeLock.unlock();
+		}
+		apply(position);
+	}
+
+	@Override
+	public List<User> replaceAll(List<User> users) {
+		List<ByteBuffer> records = new ArrayList<>(users.size());
+		for (User user : users) {
+			records.add(UserRecordCodec.put(user));
+		}
+		List<User> replaced = new ArrayList<>(users.size());
+		long position = 0;
+		writeLock.lock();
+		try {
+			int count = 0;
+			for (int i = 0; i < users.size(); i++) {
+				User user = users.get(i);
+				User previous = latest(user.getId());
+				replaced.add(previous);
+				if (previous != null) {
+					stamp(user, records.get(i), previous);
+					position = append(records.get(i));
+					pending(position, user.getId(), user);
+					count++;
+				}
+			}
+			written(count);
+		} finally {
+			writeLock.unlock();
+		}
+		apply(position);
+		return replaced;
+	}
+
+	@Override
+	public List<User> removeAll(long[] ids) {
+		List<User> removed = new ArrayList<>(ids.length);
+		long position = 0;
+		writeLock.lock();
+		try {
+			int count = 0;
+			for (long id : ids) {
+				User previous = latest(id);
+				removed.add(previous);
+				if (previous != null) {
+					position = append(UserRecordCodec.remove(id));
+					pending(position, id, null);
+					count++;
+				}
+			}
+			written(count);
+		} finally {
+			writeLock.unlock();
+		}
+		apply(position);
+		return removed;
+	}
+
+	@Override
+	public List<User> findByBirthdateBetween(LocalDate from, LocalDate to) {
+		return delegate.findByBirthdateBetween(from, to);
+	}
+
+	@Override
+	public void forEachByBirthdateBetween(LocalDate from, long afterId, LocalDate to, Predicate<User> action) {
+		delegate.forEachByBirthdateBetween(from, afterId, to, action);
+	}
+
+	@Override
+	public int size() {
+		return delegate.size();
+	}
+
+	@Override
+	public long nextId() {
+		return Math.max(Math.max(recoveredNextId, loggedNextId), delegate.nextId());
+	}
+
+	@Override
+	public List<User> values() {
+		return delegate.values();
+	}
+
+	@Override
+	public void clear() {
+		long position;
+		writeLock.lock();
+		try {
+			recoveredNextId = nextId();
+			position = append(UserRecordCodec.clear());
+			Pending clear = new Pending(position, 0, null, true);
+			queue.add(clear);
+			overlay.clear();
+			pendingClear = clear;
+			written(1);
+		} finally {
+			writeLock.unlock();
+		}
+		apply(position);
+	}
+
+	/**
+	 * Start a snapshot now, unless one is already running
+	 */
+	public void snapshot() {
+		writeLock.lock();
+		try {
+			startSnapshot();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of fsyncs of the log so far
+	 */
+	public long syncs() {
+		return log.syncs();
+	}
+
+	/**
+	 * @return number of snapshots that could not be written, the log segments
+	 *         they would have replaced are still kept
+	 */
+	public long failedSnapshots() {
+		return failedSnapshots.get();
+	}
+
+	/**
+	 * Waits for a running snapshot and closes the log
+	 */
+	@Override
+	public void close() throws IOException {
+		snapshotter.shutdown();
+		try {
+			snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writeLock.lock();
+		try {
+			log.close();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	private long append(ByteBuffer record) {
+		try {
+			return log.append(record);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Under the write lock: the user as the latest write left it, durable or not
+	 *
+	 * @return null if it does not exist
+	 */
+	private User latest(long id) {
+		Pending pending = overlay.get(id);
+		if (pending != null) {
+			return pending.user();
+		}
+		return pendingClear != null ? null : delegate.findById(id).orElse(null);
+	}
+
+	/**
+	 * Under the write lock, right after the record was appended, so the queue
+	 * has the order of the log
+	 *
+	 * @param user null for a removal
+	 */
+	private void pending(long position, long id, User user) {
+		Pending pending = new Pending(position, id, user, false);
+		queue.add(pending);
+		overlay.put(id, pending);
+		if (user != null && id >= loggedNextId) {
+			loggedNextId = id + 1;
+		}
+	}
+
+	/**
+	 * Wait until the log is durable up to the position and apply the pending
+	 * writes up to there to the delegate, in the order of the log. If the log
+	 * fails nothing more is applied: the delegate keeps the durable state and
+	 * the broken log rejects every further write.
+	 */
+	private void apply(long position) {
+		if (position == 0) {
+			return;
+		}
+		try {
+			log.sync(position);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		applyLock.lock();
+		try {
+			applyDurable(position);
+		} finally {
+			applyLock.unlock();
+		}
+	}
+
+	/**
+	 * Under the apply lock: apply the pending writes up to the position, which
+	 * must be durable
+	 */
+	private void applyDurable(long position) {
+		List<User> puts = new ArrayList<>();
+		Pending next;
+		while ((next = queue.peek()) != null && next.position() <= position) {
+			queue.poll();
+			if (next.user() != null) {
+				puts.add(next.user());
+				continue;
+			}
+			applyPuts(puts);
+			if (changedSinceFrozen != null) {
+				if (next.clear()) {
+					clearedSinceFrozen = true;
+				} else {
+					changedSinceFrozen.add(next.id());
+				}
+			}
+			if (next.clear()) {
+				delegate.clear();
+				if (pendingClear == next) {
+					pendingClear = null;
+				}
+			} else {
+				delegate.remove(next.id());
+				overlay.remove(next.id(), next);
+			}
+		}
+		applyPuts(puts);
+	}
+
+	private void applyPuts(List<User> puts) {
+		if (puts.isEmpty()) {
+			return;
+		}
+		delegate.putAll(puts);
+		for (User user : puts) {
+			if (changedSinceFrozen != null) {
+				changedSinceFrozen.add(user.getId());
+			}
+			Pending pending = overlay.get(user.getId());
+			if (pending != null && pending.user() == user) {
+				overlay.remove(user.getId(), pending);
+			}
+		}
+		puts.clear();
+	}
+
+	/**
+	 * Under the write lock: a blind replacement gets the version after the
+	 * replaced user
+	 */
+	private static void stamp(User user, ByteBuffer record, User previous) {
+		user.setVersion(previous.getVersion() + 1);
+		UserRecordCodec.version(record, user.getVersion());
+	}
+
+	private void written(int records) {
+		sinceSnapshot += records;
+		if (sinceSnapshot >= snapshotEvery) {
+			startSnapshot();
+		}
+	}
+
+	/**
+	 * Under the write lock: the log moves on to a new segment, so the snapshot
+	 * taken right now plus the new segments is the whole state. Only the
+	 * rotation and a frozen view of the delegate happen under the lock, the
+	 * users are streamed to the file in the background.
+	 */
+	private void startSnapshot() {
+		if (snapshotRunning || snapshotter.isShutdown()) {
+			return;
+		}
+		long number = segment + 1;
+		try {
+			log.rotate(openSegment(number));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		segment = number;
+		sinceSnapshot = 0;
+		snapshotRunning = true;
+		Supplier<Iterator<User>> users;
+		long nextId;
+		applyLock.lock();
+		try {
+			// the rotation made every record durable, the snapshot must hold them all
+			applyDurable(log.appendedPosition());
+			users = delegate.frozen();
+			nextId = nextId();
+			changedSinceFrozen = new HashSet<>();
+			clearedSinceFrozen = false;
+		} finally {
+			applyLock.unlock();
+		}
+		snapshotter.execute(() -> {
+			try {
+				adopt(writeSnapshot(number, users, nextId));
+				deleteBefore(number);
+			} catch (IOException | RuntimeException e) {
+				// the segments are kept, the next snapshot tries again
+				failedSnapshots.incrementAndGet();
+				LOG.warn("Snapshot {} of {} failed, the log segments are kept", number, directory, e);
+			} finally {
+				writeLock.lock();
+				applyLock.lock();
+				try {
+					snapshotRunning = false;
+					changedSinceFrozen = null;
+				} finally {
+					applyLock.unlock();
+					writeLock.unlock();
+				}
+			}
+		});
+	}
+
+	private MappedUserSnapshot writeSnapshot(long number, Supplier<Iterator<User>> users, long nextId)
+			throws IOException {
+		Path target = snapshotPath(directory, number);
+		Path tmp = target.resolveSibling(target.getFileName() + TMP_SUFFIX);
+		MappedUserSnapshot.write(tmp, users, nextId);
+		Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+		syncDirectory(directory);
+		return MappedUserSnapshot.open(target);
+	}
+
+	/**
+	 * Serve the new snapshot with an overlay of only the users changed since it
+	 * was frozen, so the overlay never holds more than the writes between two
+	 * snapshots. The old snapshot is released before its file is deleted.
+	 */
+	private void adopt(MappedUserSnapshot snapshot) {
+		writeLock.lock();
+		applyLock.lock();
+		try {
+			SnapshotUserStore current = delegate;
+			SnapshotUserStore next = new SnapshotUserStore(snapshot);
+			if (clearedSinceFrozen) {
+				next.clear();
+			}
+			for (long id : changedSinceFrozen) {
+				User user = current.findById(id).orElse(null);
+				if (user != null) {
+					next.put(user);
+				} else {
+					next.remove(id);
+				}
+			}
+			delegate = next;
+		} finally {
+			applyLock.unlock();
+			writeLock.unlock();
+		}
+	}
+
+	private static void replaySegment(Path path, UserRecordCodec.Handler replay, boolean last) throws IOException {
+		long valid = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 64 * 1024))) {
+			int read;
+			while ((read = UserRecordCodec.read(in, replay)) > 0) {
+				valid += read;
+			}
+		}
+		long size = Files.size(path);
+		if (valid == size) {
+			return;
+		}
+		if (!last) {
+			throw new IOException("Log segment is corrupted: " + path);
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.truncate(valid);
+			channel.force(true);
+		}
+	}
+
+	private FileChannel openSegment(long number) throws IOException {
+		FileChannel channel = FileChannel.open(walPath(directory, number), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		syncDirectory(directory);
+		return channel;
+	}
+
+	private void deleteBefore(long number) throws IOException {
+		if (number < 0) {
+			return;
+		}
+		deleteFiles(directory, WAL_SUFFIX, number);
+		deleteFiles(directory, SNAPSHOT_SUFFIX, number);
+	}
+
+	/**
+	 * Delete numbered files with the suffix below the number
+	 */
+	private static void deleteFiles(Path directory, String suffix, long below) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				String name = file.getFileName().toString();
+				if (name.endsWith(suffix) && (below == Long.MAX_VALUE || numberOf(name, suffix) < below)) {
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+	}
+
+	private static long latest(Path directory, String prefix, String suffix) throws IOException {
+		List<Long> numbers = list(directory, prefix, suffix);
+		return numbers.isEmpty() ? -1 : numbers.get(numbers.size() - 1);
+	}
+
+	/**
+	 * @return sorted numbers of the files
+	 */
+	private static List<Long> list(Path directory, String prefix, String suffix) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.map(file -> file.getFileName().toString())
+					.filter(name -> name.startsWith(prefix) && name.endsWith(suffix))
+					.map(name -> numberOf(name, suffix)).sorted().toList();
+		}
+	}
+
+	private static long numberOf(String name, String suffix) {
+		return Long.parseLong(name.substring(name.indexOf('-') + 1, name.length() - suffix.length()));
+	}
+
+	private static Path walPath(Path directory, long number) {
+		return directory.resolve(WAL_PREFIX + String.format("%019d", number) + WAL_SUFFIX);
+	}
+
+	private static Path snapshotPath(Path directory, long number) {
+		return directory.resolve(SNAPSHOT_PREFIX + String.format("%019d", number) + SNAPSHOT_SUFFIX);
+	}
+
+	/**
+	 * Makes created and renamed files durable, where the platform allows it
+	 */
+	private static void syncDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// not supported on every platform
+		}
+	}
+
+	/**
+	 * A logged write not applied to the delegate yet
+	 *
+	 * @param user  null for a removal or a clear
+	 * @param clear all users are removed
+	 */
+	private record Pending(long position, long id, User user, boolean clear) {
+	}
+
+}
@@ -0,0 +1,400 @@
+package com.holyk.clearsolutions.store;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+
+import com.holyk.clearsolutions.entity.User;
+
+/**
+ * Open addressing hash table keyed by primitive {@code long} id, so ids are
+ * never boxed. Collisions are resolved with linear probing, removal uses
+ * backward shift, so no tombstones are left behind. A slot is free when its
+ * value is null. Birthdates are kept in a {@link BirthdateIndex} for range
+ * queries.
+ * <p>
+ * Users are kept as immutable {@link UserRecord}s with names and addresses
+ * shared through a {@link StringDictionary}. Every read returns a new copy, so
+ * {@link #replace(User, User)} compares by value, and a change is published
+ * with a single reference write.
+ * <p>
+ * Thread safe: writers are serialized by a {@link StampedLock}, point reads
+ * are optimistic and take the read lock only when they race with a writer.
+ */
+public class LongHashUserStore implements UserStore {
+
+	private static final int DEFAULT_CAPACITY = 16;
+	private static final float LOAD_FACTOR = 0.75f;
+
+	private final StampedLock lock = new StampedLock();
+	private final BirthdateIndex birthdates = new BirthdateIndex();
+	private final StringDictionary strings = new StringDictionary();
+	private volatile Table table;
+	private volatile int size;
+	private volatile long nextId = 1L;
+
+	public LongHashUserStore() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param expectedSize
+	 */
+	public LongHashUserStore(int expectedSize) {
+		super();
+		this.table = new Table(tableSizeFor((int) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR)));
+	}
+
+	@Override
+	public Optional<User> findById(long id) {
+		return Optional.ofNullable(copy(id));
+	}
+
+	@Override
+	public boolean contains(long id) {
+		return get(id) != null;
+	}
+
+	@Override
+	public User put(User user) {
+		long stamp = lock.writeLock();
+		try {
+			return putLocked(user);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public void putAll(List<User> users) {
+		long stamp = lock.writeLock();
+		try {
+			for (User user : users) {
+				putLocked(user);
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public User replace(User user) {
+		long stamp = lock.writeLock();
+		try {
+			return replaceLocked(user);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public List<User> replaceAll(List<User> users) {
+		List<User> replaced = new ArrayList<>(users.size());
+		long stamp = lock.writeLock();
+		try {
+			for (User user : users) {
+				replaced.add(replaceLocked(user));
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		return replaced;
+	}
+
+	@Override
+	public boolean replace(User expected, User replacement) {
+		long stamp = lock.writeLock();
+		try {
+			Table t = table;
+			long id = expected.getId();
+			int slot = t.slotOf(id);
+			if (slot < 0 || !t.values[slot].matches(expected) || replacement.getId() != id) {
+				return false;
+			}
+			UserRecord record = UserRecord.of(replacement, strings);
+			moveBirthdate(t.values[slot], record);
+			t.values[slot] = record;
+			return true;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public User remove(long id) {
+		long stamp = lock.writeLock();
+		try {
+			return removeLocked(id);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public List<User> removeAll(long[] ids) {
+		List<User> removed = new ArrayList<>(ids.length);
+		long stamp = lock.writeLock();
+		try {
+			for (long id : ids) {
+				removed.add(removeLocked(id));
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		return removed;
+	}
+
+	@Override
+	public List<User> findByBirthdateBetween(LocalDate from, LocalDate to) {
+		List<User> result = new ArrayList<>();
+		forEachByBirthdateBetween(from, Long.MIN_VALUE, to, result::add);
+		return result;
+	}
+
+	@Override
+	public void forEachByBirthdateBetween(LocalDate from, long afterId, LocalDate to, Predicate<User> action) {
+		birthdates.forEachAfter(from.toEpochDay(), afterId, to.toEpochDay(), (epochDay, id) -> {
+			UserRecord record = get(id);
+			// the user may have been moved to another date after the index was read
+			if (record == null || record.epochDay() != epochDay) {
+				return true;
+			}
+			return action.test(record.toUser());
+		});
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public long nextId() {
+		return nextId;
+	}
+
+	@Override
+	public List<User> values() {
+		long stamp = lock.readLock();
+		try {
+			List<User> result = new ArrayList<>(size);
+			for (UserRecord record : table.values) {
+				if (record != null) {
+					result.add(record.toUser());
+				}
+			}
+			return result;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public void clear() {
+		long stamp = lock.writeLock();
+		try {
+			table = new Table(DEFAULT_CAPACITY);
+			birthdates.clear();
+			strings.clear();
+			size = 0;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	private User putLocked(User user) {
+		UserRecord record = UserRecord.of(user, strings);
+		Table t = table;
+		long id = record.id();
+		if (id >= nextId) {
+			nextId = id + 1;
+		}
+		int slot = mix(id) & t.mask;
+		while (t.values[slot] != null) {
+			if (t.keys[slot] == id) {
+				UserRecord previous = t.values[slot];
+				moveBirthdate(previous, record);
+				t.values[slot] = record;
+				return previous.toUser();
+			}
+			slot = (slot + 1) & t.mask;
+		}
+		t.keys[slot] = id;
+		t.values[slot] = record;
+		if (record.epochDay() != UserRecord.NO_BIRTHDATE) {
+			birthdates.add(record.epochDay(), id);
+		}
+		if (++size > t.threshold) {
+			table = t.resize(t.keys.length << 1);
+		}
+		return null;
+	}
+
+	private User replaceLocked(User user) {
+		Table t = table;
+		int slot = t.slotOf(user.getId());
+		if (slot < 0) {
+			return null;
+		}
+		UserRecord previous = t.values[slot];
+		user.setVersion(previous.version() + 1);
+		UserRecord record = UserRecord.of(user, strings);
+		moveBirthdate(previous, record);
+		t.values[slot] = record;
+		return previous.toUser();
+	}
+
+	private User removeLocked(long id) {
+		Table t = table;
+		int slot = t.slotOf(id);
+		if (slot < 0) {
+			return null;
+		}
+		UserRecord removed = t.values[slot];
+		t.shiftBack(slot);
+		if (removed.epochDay() != UserRecord.NO_BIRTHDATE) {
+			birthdates.remove(removed.epochDay(), id);
+		}
+		size--;
+		return removed.toUser();
+	}
+
+	private void moveBirthdate(UserRecord previous, UserRecord record) {
+		if (previous.epochDay() == record.epochDay()) {
+			return;
+		}
+		if (previous.epochDay() != UserRecord.NO_BIRTHDATE) {
+			birthdates.remove(previous.epochDay(), record.id());
+		}
+		if (record.epochDay() != UserRecord.NO_BIRTHDATE) {
+			birthdates.add(record.epochDay(), record.id());
+		}
+	}
+
+	private User copy(long id) {
+		UserRecord record = get(id);
+		return record == null ? null : record.toUser();
+	}
+
+	private UserRecord get(long id) {
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			UserRecord record = table.find(id);
+			if (lock.validate(stamp)) {
+				return record;
+			}
+		}
+		stamp = lock.readLock();
+		try {
+			return table.find(id);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	private static int tableSizeFor(int capacity) {
+		return Math.max(DEFAULT_CAPACITY, Integer.highestOneBit(capacity - 1) << 1);
+	}
+
+	/**
+	 * Sequential ids would cluster badly with plain masking, so spread them
+	 */
+	private static int mix(long id) {
+		long h = id * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * Keys and values are swapped together on resize, so an optimistic reader
+	 * never sees arrays of different length
+	 */
+	private static final class Table {
+
+		final long[] keys;
+		final UserRecord[] values;
+		final int mask;
+		final int threshold;
+
+		Table(int capacity) {
+			this.keys = new long[capacity];
+			this.values = new UserRecord[capacity];
+			this.mask = capacity - 1;
+			this.threshold = (int) (capacity * LOAD_FACTOR);
+		}
+
+		/**
+		 * Probing is bounded by the capacity, so a reader racing with a writer
+		 * always terminates, its result is then discarded by the stamp validation
+		 */
+		UserRecord find(long id) {
+			int slot = mix(id) & mask;
+			for (int probes = 0; probes <= mask; probes++) {
+				UserRecord record = values[slot];
+				if (record == null) {
+					return null;
+				}
+				if (keys[slot] == id) {
+					return record;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return null;
+		}
+
+		int slotOf(long id) {
+			int slot = mix(id) & mask;
+			while (values[slot] != null) {
+				if (keys[slot] == id) {
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		/**
+		 * Move following entries of the probe chain one step back, so lookups never
+		 * stop at the freed slot too early
+		 *
+		 * @param free
+		 */
+		void shiftBack(int free) {
+			int slot = free;
+			while (true) {
+				slot = (slot + 1) & mask;
+				if (values[slot] == null) {
+					break;
+				}
+				int home = mix(keys[slot]) & mask;
+				// entry may stay only if its home lies cyclically in (free, slot]
+				boolean stays = free <= slot ? free < home && home <= slot : free < home || home <= slot;
+				if (!stays) {
+					keys[free] = keys[slot];
+					values[free] = values[slot];
+					free = slot;
+				}
+			}
+			values[free] = null;
+		}
+
+		Table resize(int capacity) {
+			Table resized = new Table(capacity);
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] != null) {
+					int slot = mix(keys[i]) & resized.mask;
+					while (resized.values[slot] != null) {
+						slot = (slot + 1) & resized.mask;
+					}
+					resized.keys[slot] = keys[i];
+					resized.values[slot] = values[i];
+				}
+			}
+			return resized;
+		}
+
+	}
+
+}
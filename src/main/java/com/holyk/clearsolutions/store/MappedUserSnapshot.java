@@ -0,0 +1,340 @@
+package com.holyk.clearsolutions.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.holyk.clearsolutions.entity.User;
+
+/**
+ * Read only snapshot of users in a memory mapped file. Nothing is read on open
+ * besides the header, users are decoded on access.
+ *
+ * <pre>
+ * header   int magic, int version, long next id, int count, int heap size
+ * ids      long[count], ascending
+ * versions long[count], version of the user by position
+ * days     int[count], birthdate epoch day by position, MIN_VALUE if none
+ * order    int[count], positions ordered by birthdate and then by id
+ * nulls    byte[count], bit i set if string field i is null
+ * offsets  int[count * 5 + 1], start of every string in the heap
+ * heap     UTF-8 bytes of email, firstname, lastname, address, phone
+ * </pre>
+ *
+ * A position is the index of a user in the id column. A point lookup is a
+ * binary search over the ids, a range query a binary search over the order
+ * column. A file is a single mapping, so it is limited to 2 GB. Files of
+ * version 2 have no versions column, their users are read in version 1.
+ */
+public final class MappedUserSnapshot {
+
+	static final int MAGIC = 0x55534e50;
+	static final int VERSION = 3;
+	private static final int UNVERSIONED = 2;
+
+	private static final int HEADER = 4 * Integer.BYTES + Long.BYTES;
+	private static final int FIELDS = 5;
+	private static final int NO_BIRTHDATE = Integer.MIN_VALUE;
+	private static final MappedUserSnapshot EMPTY = new MappedUserSnapshot(ByteBuffer.allocate(0), VERSION, 1L, 0,
+			0);
+
+	private final ByteBuffer buffer;
+	private final long nextId;
+	private final int count;
+	private final int ids;
+	// -1 in a file without versions
+	private final int versions;
+	private final int days;
+	private final int order;
+	private final int nulls;
+	private final int offsets;
+	private final int heap;
+
+	private MappedUserSnapshot(ByteBuffer buffer, int format, long nextId, int count, int heapSize) {
+		super();
+		this.buffer = buffer;
+		this.nextId = nextId;
+		this.count = count;
+		this.ids = HEADER;
+		this.versions = format == UNVERSIONED ? -1 : ids + count * Long.BYTES;
+		this.days = ids + (format == UNVERSIONED ? 1 : 2) * count * Long.BYTES;
+		this.order = days + count * Integer.BYTES;
+		this.nulls = order + count * Integer.BYTES;
+		this.offsets = nulls + count;
+		this.heap = offsets + (count * FIELDS + 1) * Integer.BYTES;
+	}
+
+	public static MappedUserSnapshot empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Map the file, only the header is read
+	 */
+	public static MappedUserSnapshot open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER || size > Integer.MAX_VALUE) {
+				throw new IOException("Not a user store snapshot: " + path);
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			int format = buffer.getInt(4);
+			if (buffer.getInt(0) != MAGIC || format != VERSION && format != UNVERSIONED) {
+				throw new IOException("Not a user store snapshot: " + path);
+			}
+			long nextId = buffer.getLong(8);
+			int count = buffer.getInt(16);
+			int heapSize = buffer.getInt(20);
+			MappedUserSnapshot snapshot = new MappedUserSnapshot(buffer, format, nextId, count, heapSize);
+			if (count < 0 || heapSize < 0 || (long) snapshot.heap + heapSize != size) {
+				throw new IOException("Snapshot is corrupted: " + path);
+			}
+			return snapshot;
+		}
+	}
+
+	/**
+	 * Write the users to a new file and force it to disk
+	 *
+	 * @throws IOException also if the snapshot would be larger than 2 GB or a
+	 *                     birthdate does not fit an int epoch day
+	 */
+	public static void write(Path path, List<User> users, long nextId) throws IOException {
+		User[] sorted = users.toArray(new User[0]);
+		Arrays.sort(sorted, Comparator.comparingLong(User::getId));
+		write(path, () -> Arrays.asList(sorted).iterator(), nextId);
+	}
+
+	/**
+	 * Write the users to a new file and force it to disk. The users are read
+	 * twice, once for the sizes and once for the content, one at a time, so they
+	 * need not be on the heap together.
+	 *
+	 * @param users gives the same users by ascending id on every call
+	 * @throws IOException also if the snapshot would be larger than 2 GB, a
+	 *                     birthdate does not fit an int epoch day or the users
+	 *                     are not the same twice
+	 */
+	public static void write(Path path, Supplier<Iterator<User>> users, long nextId) throws IOException {
+		int count = 0;
+		long heapSize = 0;
+		for (Iterator<User> it = users.get(); it.hasNext();) {
+			User user = it.next();
+			for (String field : fieldsOf(user)) {
+				heapSize += utf8Length(field);
+			}
+			count++;
+		}
+		long size = HEADER + (long) count * (2 * Long.BYTES + 2 * Integer.BYTES + 1)
+				+ ((long) count * FIELDS + 1) * Integer.BYTES + heapSize;
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Snapshot is larger than 2 GB");
+		}
+
+		MappedUserSnapshot layout = new MappedUserSnapshot(null, VERSION, nextId, count, (int) heapSize);
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			out.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, nextId).putInt(16, count).putInt(20, (int) heapSize);
+
+			// epoch day in the high half, position in the low half: sorting the keys
+			// orders by birthdate and keeps the id order within a day
+			long[] keys = new long[count];
+			int heapOffset = 0;
+			int position = 0;
+			long previousId = Long.MIN_VALUE;
+			for (Iterator<User> it = users.get(); it.hasNext(); position++) {
+				User user = it.next();
+				if (position == count || position > 0 && user.getId() <= previousId) {
+					throw new IOException("Users changed while the snapshot was written");
+				}
+				previousId = user.getId();
+				int day = epochDayOf(user);
+				out.putLong(layout.ids + position * Long.BYTES, user.getId());
+				out.putLong(layout.versions + position * Long.BYTES, user.getVersion());
+				out.putInt(layout.days + position * Integer.BYTES, day);
+				keys[position] = ((long) day << 32) | position;
+
+				byte nullMask = 0;
+				String[] fields = fieldsOf(user);
+				for (int field = 0; field < FIELDS; field++) {
+					out.putInt(layout.offsets + (position * FIELDS + field) * Integer.BYTES, heapOffset);
+					if (fields[field] == null) {
+						nullMask |= 1 << field;
+					} else {
+						byte[] bytes = fields[field].getBytes(StandardCharsets.UTF_8);
+						if (heapOffset + (long) bytes.length > heapSize) {
+							throw new IOException("Users changed while the snapshot was written");
+						}
+						out.put(layout.heap + heapOffset, bytes);
+						heapOffset += bytes.length;
+					}
+				}
+				out.put(layout.nulls + position, nullMask);
+			}
+			if (position != count || heapOffset != heapSize) {
+				throw new IOException("Users changed while the snapshot was written");
+			}
+			out.putInt(layout.offsets + count * FIELDS * Integer.BYTES, heapOffset);
+
+			Arrays.sort(keys);
+			for (int i = 0; i < count; i++) {
+				out.putInt(layout.order + i * Integer.BYTES, (int) keys[i]);
+			}
+			out.force();
+		}
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @return next id at the time of the snapshot
+	 */
+	public long nextId() {
+		return nextId;
+	}
+
+	/**
+	 * @return position of the user or -1
+	 */
+	public int positionOf(long id) {
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long current = idAt(middle);
+			if (current < id) {
+				low = middle + 1;
+			} else if (current > id) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	public long idAt(int position) {
+		return buffer.getLong(ids + position * Long.BYTES);
+	}
+
+	public long versionAt(int position) {
+		return versions < 0 ? 1 : buffer.getLong(versions + position * Long.BYTES);
+	}
+
+	/**
+	 * @return epoch day or {@link Integer#MIN_VALUE} if the user has no birthdate
+	 */
+	public int epochDayAt(int position) {
+		return buffer.getInt(days + position * Integer.BYTES);
+	}
+
+	/**
+	 * @param index in birthdate order
+	 * @return position of the user
+	 */
+	public int positionAtOrder(int index) {
+		return buffer.getInt(order + index * Integer.BYTES);
+	}
+
+	/**
+	 * @return first index in birthdate order whose (birthdate, id) is after the
+	 *         given key, {@link #size()} if there is none
+	 */
+	public int orderAfter(long epochDay, long id) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			int position = positionAtOrder(middle);
+			int day = epochDayAt(position);
+			if (day < epochDay || day == epochDay && idAt(position) <= id) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return new user decoded from the snapshot
+	 */
+	public User userAt(int position) {
+		int day = epochDayAt(position);
+		byte nullMask = buffer.get(nulls + position);
+		int base = offsets + position * FIELDS * Integer.BYTES;
+		User user = new User(string(base, nullMask, 0), string(base, nullMask, 1), string(base, nullMask, 2),
+				day == NO_BIRTHDATE ? null : LocalDate.ofEpochDay(day), string(base, nullMask, 3),
+				string(base, nullMask, 4));
+		user.setId(idAt(position));
+		user.setVersion(versionAt(position));
+		return user;
+	}
+
+	private static String[] fieldsOf(User user) {
+		return new String[] { user.getEmail(), user.getFirstname(), user.getLastname(), user.getAddress(),
+				user.getPhone() };
+	}
+
+	/**
+	 * @return bytes of the string in UTF-8, 0 for null
+	 */
+	private static int utf8Length(String string) {
+		if (string == null) {
+			return 0;
+		}
+		int length = 0;
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < string.length()
+					&& Character.isLowSurrogate(string.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else {
+				// a lone surrogate is encoded as '?'
+				length += Character.isSurrogate(c) ? 1 : 3;
+			}
+		}
+		return length;
+	}
+
+	private static int epochDayOf(User user) throws IOException {
+		if (user.getBirthdate() == null) {
+			return NO_BIRTHDATE;
+		}
+		long day = user.getBirthdate().toEpochDay();
+		if (day <= NO_BIRTHDATE || day > Integer.MAX_VALUE) {
+			throw new IOException("Birthdate out of range: " + user.getBirthdate());
+		}
+		return (int) day;
+	}
+
+	private String string(int base, byte nullMask, int field) {
+		if ((nullMask & (1 << field)) != 0) {
+			return null;
+		}
+		int start = buffer.getInt(base + field * Integer.BYTES);
+		int end = buffer.getInt(base + (field + 1) * Integer.BYTES);
+		byte[] bytes = new byte[end - start];
+		buffer.get(heap + start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,553 @@
+package com.holyk.clearsolutions.store;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+
+import com.holyk.clearsolutions.entity.User;
+
+/**
+ * Keeps users outside of the Java heap, in direct byte buffers, so a large
+ * store adds almost nothing for the garbage collector to trace. A user is a
+ * fixed size slot:
+ *
+ * <pre>
+ * long id, long version, int birthdate epoch day, int live flag, 5 long string references
+ * </pre>
+ *
+ * Strings are UTF-8 in an append only arena of pages, a reference is the page
+ * in the high half and the offset in the low half, -1 for null. Replaced
+ * strings become garbage, the arena is compacted when garbage outweighs live
+ * data. Ids are mapped to slots by a table of primitive arrays, freed slots are
+ * reused.
+ * <p>
+ * {@link User} objects are created only when a user is read, so they live for
+ * one request. {@link #replace(User, User)} compares by value, as a read never
+ * returns the stored instance.
+ * <p>
+ * Thread safe: writers are serialized by a {@link StampedLock}, readers take
+ * its read lock.
+ */
+public class OffHeapUserStore implements UserStore {
+
+	private static final int FIELDS = 5;
+	private static final int ID = 0;
+	private static final int VERSION = ID + Long.BYTES;
+	private static final int DAY = VERSION + Long.BYTES;
+	private static final int LIVE = DAY + Integer.BYTES;
+	private static final int STRINGS = LIVE + Integer.BYTES;
+	private static final int SLOT_BYTES = STRINGS + FIELDS * Long.BYTES;
+	private static final int PAGE_SHIFT = 14;
+	private static final int PAGE_SLOTS = 1 << PAGE_SHIFT;
+	private static final int NO_BIRTHDATE = Integer.MIN_VALUE;
+	private static final long NULL = -1L;
+
+	private final StampedLock lock = new StampedLock();
+	private final BirthdateIndex birthdates = new BirthdateIndex();
+	private List<ByteBuffer> pages;
+	private StringArena strings;
+	private SlotTable index;
+	private int[] freeSlots;
+	private int freeCount;
+	private int slotCount;
+	private volatile int size;
+	private volatile long nextId = 1L;
+
+	public OffHeapUserStore() {
+		super();
+		reset();
+	}
+
+	@Override
+	public Optional<User> findById(long id) {
+		return Optional.ofNullable(get(id));
+	}
+
+	@Override
+	public boolean contains(long id) {
+		long stamp = lock.readLock();
+		try {
+			return index.get(id) >= 0;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public User put(User user) {
+		long stamp = lock.writeLock();
+		try {
+			return putLocked(user);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public User replace(User user) {
+		long stamp = lock.writeLock();
+		try {
+			return replaceLocked(user);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public boolean replace(User expected, User replacement) {
+		long stamp = lock.writeLock();
+		try {
+			int slot = index.get(replacement.getId());
+			if (slot < 0 || page(slot).getLong(offset(slot) + VERSION) != expected.getVersion()
+					|| !decode(slot).equals(expected)) {
+				return false;
+			}
+			putLocked(replacement);
+			return true;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public User remove(long id) {
+		long stamp = lock.writeLock();
+		try {
+			return removeLocked(id);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public void putAll(List<User> users) {
+		long stamp = lock.writeLock();
+		try {
+			for (User user : users) {
+				putLocked(user);
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public List<User> replaceAll(List<User> users) {
+		List<User> replaced = new ArrayList<>(users.size());
+		long stamp = lock.writeLock();
+		try {
+			for (User user : users) {
+				replaced.add(replaceLocked(user));
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		return replaced;
+	}
+
+	@Override
+	public List<User> removeAll(long[] ids) {
+		List<User> removed = new ArrayList<>(ids.length);
+		long stamp = lock.writeLock();
+		try {
+			for (long id : ids) {
+				removed.add(removeLocked(id));
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		return removed;
+	}
+
+	@Override
+	public List<User> findByBirthdateBetween(LocalDate from, LocalDate to) {
+		List<User> result = new ArrayList<>();
+		forEachByBirthdateBetween(from, Long.MIN_VALUE, to, result::add);
+		return result;
+	}
+
+	@Override
+	public void forEachByBirthdateBetween(LocalDate from, long afterId, LocalDate to, Predicate<User> action) {
+		birthdates.forEachAfter(from.toEpochDay(), afterId, to.toEpochDay(), (epochDay, id) -> {
+			User user = get(id);
+			// the user may have been moved to another date after the index was read
+			LocalDate birthdate = user == null ? null : user.getBirthdate();
+			if (birthdate == null || birthdate.toEpochDay() != epochDay) {
+				return true;
+			}
+			return action.test(user);
+		});
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public long nextId() {
+		return nextId;
+	}
+
+	@Override
+	public List<User> values() {
+		long stamp = lock.readLock();
+		try {
+			List<User> result = new ArrayList<>(size);
+			for (int slot = 0; slot < slotCount; slot++) {
+				if (page(slot).getInt(offset(slot) + LIVE) != 0) {
+					result.add(decode(slot));
+				}
+			}
+			return result;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public void clear() {
+		long stamp = lock.writeLock();
+		try {
+			reset();
+			birthdates.clear();
+			size = 0;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * @return bytes of direct memory held by slots and strings
+	 */
+	public long offHeapBytes() {
+		long stamp = lock.readLock();
+		try {
+			return (long) pages.size() * PAGE_SLOTS * SLOT_BYTES + strings.capacity();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	private User get(long id) {
+		long stamp = lock.readLock();
+		try {
+			int slot = index.get(id);
+			return slot < 0 ? null : decode(slot);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	private User putLocked(User user) {
+		int day = epochDayOf(user.getBirthdate());
+		long id = user.getId();
+		int slot = index.get(id);
+		User previous = null;
+		if (slot >= 0) {
+			previous = decode(slot);
+			freeStrings(slot);
+			birthdates.move(previous.getBirthdate(), user.getBirthdate(), id);
+		} else {
+			slot = allocateSlot();
+			index.put(id, slot);
+			birthdates.add(user.getBirthdate(), id);
+			size++;
+		}
+
+		ByteBuffer page = page(slot);
+		int offset = offset(slot);
+		page.putLong(offset + ID, id);
+		page.putLong(offset + VERSION, user.getVersion());
+		page.putInt(offset + DAY, day);
+		page.putInt(offset + LIVE, 1);
+		page.putLong(offset + STRINGS, strings.add(user.getEmail()));
+		page.putLong(offset + STRINGS + Long.BYTES, strings.add(user.getFirstname()));
+		page.putLong(offset + STRINGS + 2 * Long.BYTES, strings.add(user.getLastname()));
+		page.putLong(offset + STRINGS + 3 * Long.BYTES, strings.add(user.getAddress()));
+		page.putLong(offset + STRINGS + 4 * Long.BYTES, strings.add(user.getPhone()));
+
+		if (id >= nextId) {
+			nextId = id + 1;
+		}
+		if (strings.needsCompaction()) {
+			compact();
+		}
+		return previous;
+	}
+
+	private User replaceLocked(User user) {
+		int slot = index.get(user.getId());
+		if (slot < 0) {
+			return null;
+		}
+		user.setVersion(page(slot).getLong(offset(slot) + VERSION) + 1);
+		return putLocked(user);
+	}
+
+	private User removeLocked(long id) {
+		int slot = index.remove(id);
+		if (slot < 0) {
+			return null;
+		}
+		User removed = decode(slot);
+		freeStrings(slot);
+		page(slot).putInt(offset(slot) + LIVE, 0);
+		if (freeCount == freeSlots.length) {
+			freeSlots = Arrays.copyOf(freeSlots, freeCount << 1);
+		}
+		freeSlots[freeCount++] = slot;
+		birthdates.remove(removed.getBirthdate(), id);
+		size--;
+		return removed;
+	}
+
+	private User decode(int slot) {
+		ByteBuffer page = page(slot);
+		int offset = offset(slot);
+		int day = page.getInt(offset + DAY);
+		User user = new User(strings.get(page.getLong(offset + STRINGS)),
+				strings.get(page.getLong(offset + STRINGS + Long.BYTES)),
+				strings.get(page.getLong(offset + STRINGS + 2 * Long.BYTES)),
+				day == NO_BIRTHDATE ? null : LocalDate.ofEpochDay(day),
+				strings.get(page.getLong(offset + STRINGS + 3 * Long.BYTES)),
+				strings.get(page.getLong(offset + STRINGS + 4 * Long.BYTES)));
+		user.setId(page.getLong(offset + ID));
+		user.setVersion(page.getLong(offset + VERSION));
+		return user;
+	}
+
+	private void freeStrings(int slot) {
+		ByteBuffer page = page(slot);
+		int offset = offset(slot);
+		for (int field = 0; field < FIELDS; field++) {
+			strings.free(page.getLong(offset + STRINGS + field * Long.BYTES));
+		}
+	}
+
+	private int allocateSlot() {
+		if (freeCount > 0) {
+			return freeSlots[--freeCount];
+		}
+		if (slotCount == pages.size() * PAGE_SLOTS) {
+			pages.add(ByteBuffer.allocateDirect(PAGE_SLOTS * SLOT_BYTES));
+		}
+		return slotCount++;
+	}
+
+	/**
+	 * Copy live strings to a new arena, the old pages are released with it
+	 */
+	private void compact() {
+		StringArena compacted = new StringArena();
+		for (int slot = 0; slot < slotCount; slot++) {
+			ByteBuffer page = page(slot);
+			int offset = offset(slot);
+			if (page.getInt(offset + LIVE) == 0) {
+				continue;
+			}
+			for (int field = 0; field < FIELDS; field++) {
+				int position = offset + STRINGS + field * Long.BYTES;
+				page.putLong(position, compacted.copy(strings, page.getLong(position)));
+			}
+		}
+		strings = compacted;
+	}
+
+	private void reset() {
+		pages = new ArrayList<>();
+		strings = new StringArena();
+		index = new SlotTable(16);
+		freeSlots = new int[16];
+		freeCount = 0;
+		slotCount = 0;
+	}
+
+	private ByteBuffer page(int slot) {
+		return pages.get(slot >>> PAGE_SHIFT);
+	}
+
+	private static int offset(int slot) {
+		return (slot & (PAGE_SLOTS - 1)) * SLOT_BYTES;
+	}
+
+	private static int epochDayOf(LocalDate birthdate) {
+		if (birthdate == null) {
+			return NO_BIRTHDATE;
+		}
+		long day = birthdate.toEpochDay();
+		if (day <= NO_BIRTHDATE || day > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Birthdate out of range: " + birthdate);
+		}
+		return (int) day;
+	}
+
+	/**
+	 * Append only pages of length prefixed UTF-8 strings
+	 */
+	private static final class StringArena {
+
+		private static final int PAGE_BYTES = 1 << 22;
+
+		private final List<ByteBuffer> pages = new ArrayList<>();
+		private ByteBuffer current;
+		private long capacity;
+		private long live;
+		private long garbage;
+
+		long add(String string) {
+			return string == null ? NULL : add(string.getBytes(StandardCharsets.UTF_8));
+		}
+
+		long copy(StringArena from, long reference) {
+			if (reference == NULL) {
+				return NULL;
+			}
+			ByteBuffer page = from.pages.get((int) (reference >>> 32));
+			int offset = (int) reference;
+			byte[] bytes = new byte[page.getInt(offset)];
+			page.get(offset + Integer.BYTES, bytes);
+			return add(bytes);
+		}
+
+		String get(long reference) {
+			if (reference == NULL) {
+				return null;
+			}
+			ByteBuffer page = pages.get((int) (reference >>> 32));
+			int offset = (int) reference;
+			byte[] bytes = new byte[page.getInt(offset)];
+			page.get(offset + Integer.BYTES, bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		void free(long reference) {
+			if (reference == NULL) {
+				return;
+			}
+			int length = Integer.BYTES + pages.get((int) (reference >>> 32)).getInt((int) reference);
+			live -= length;
+			garbage += length;
+		}
+
+		boolean needsCompaction() {
+			return garbage > PAGE_BYTES && garbage > live;
+		}
+
+		long capacity() {
+			return capacity;
+		}
+
+		private long add(byte[] bytes) {
+			int length = Integer.BYTES + bytes.length;
+			if (current == null || current.remaining() < length) {
+				current = ByteBuffer.allocateDirect(Math.max(PAGE_BYTES, length));
+				pages.add(current);
+				capacity += current.capacity();
+			}
+			int offset = current.position();
+			current.putInt(bytes.length).put(bytes);
+			live += length;
+			return ((long) (pages.size() - 1) << 32) | offset;
+		}
+	}
+
+	/**
+	 * Open addressing map from id to slot, same probing and removal as
+	 * {@link LongHashUserStore}, with primitive arrays only
+	 */
+	private static final class SlotTable {
+
+		private long[] keys;
+		private int[] slots;
+		private int mask;
+		private int size;
+
+		SlotTable(int capacity) {
+			keys = new long[capacity];
+			slots = new int[capacity];
+			Arrays.fill(slots, -1);
+			mask = capacity - 1;
+		}
+
+		int get(long id) {
+			for (int i = mix(id) & mask; slots[i] >= 0; i = (i + 1) & mask) {
+				if (keys[i] == id) {
+					return slots[i];
+				}
+			}
+			return -1;
+		}
+
+		void put(long id, int slot) {
+			int i = mix(id) & mask;
+			while (slots[i] >= 0) {
+				if (keys[i] == id) {
+					slots[i] = slot;
+					return;
+				}
+				i = (i + 1) & mask;
+			}
+			keys[i] = id;
+			slots[i] = slot;
+			if (++size > (keys.length >> 1) + (keys.length >> 2)) {
+				resize();
+			}
+		}
+
+		int remove(long id) {
+			int i = mix(id) & mask;
+			while (slots[i] >= 0 && keys[i] != id) {
+				i = (i + 1) & mask;
+			}
+			int removed = slots[i];
+			if (removed < 0) {
+				return -1;
+			}
+			// backward shift, so no tombstones are left behind
+			int hole = i;
+			for (int j = (hole + 1) & mask; slots[j] >= 0; j = (j + 1) & mask) {
+				int home = mix(keys[j]) & mask;
+				if (((j - home) & mask) >= ((j - hole) & mask)) {
+					keys[hole] = keys[j];
+					slots[hole] = slots[j];
+					hole = j;
+				}
+			}
+			slots[hole] = -1;
+			size--;
+			return removed;
+		}
+
+		private void resize() {
+			long[] oldKeys = keys;
+			int[] oldSlots = slots;
+			keys = new long[oldKeys.length << 1];
+			slots = new int[oldKeys.length << 1];
+			Arrays.fill(slots, -1);
+			mask = keys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldSlots[i] >= 0) {
+					int j = mix(oldKeys[i]) & mask;
+					while (slots[j] >= 0) {
+						j = (j + 1) & mask;
+					}
+					keys[j] = oldKeys[i];
+					slots[j] = oldSlots[i];
+				}
+			}
+		}
+
+		private static int mix(long id) {
+			long h = id * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+
+}
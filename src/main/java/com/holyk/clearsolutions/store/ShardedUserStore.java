@@ -0,0 +1,345 @@
+package com.holyk.clearsolutions.store;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+
+import com.holyk.clearsolutions.entity.User;
+
+/**
+ * Users partitioned across independent {@link LongHashUserStore} shards, each
+ * with its own table, birthdate index and lock, so writers of different shards
+ * never wait for each other.
+ * <p>
+ * The shard of a user is its id modulo the number of shards. Ids come from the
+ * single counter of the service, so consecutive ids go to the shards in turn
+ * and every writer, batch or import spreads evenly over them. Point operations
+ * go straight to one shard.
+ * <p>
+ * Birthdate ranges are read from all shards and merged by birthdate and id:
+ * collected ranges in parallel on the common {@link ForkJoinPool}, visited
+ * ranges lazily page by page. Batch operations are applied at once per shard,
+ * not across shards.
+ */
+public class ShardedUserStore implements UserStore {
+
+	private static final int PAGE = 64;
+
+	private final LongHashUserStore[] shards;
+
+	/**
+	 * @param shards number of shards
+	 */
+	public ShardedUserStore(int shards) {
+		this(shards, 0);
+	}
+
+	/**
+	 * @param shards       number of shards
+	 * @param expectedSize of all shards together
+	 */
+	public ShardedUserStore(int shards, int expectedSize) {
+		super();
+		if (shards < 1) {
+			throw new IllegalArgumentException("At least one shard is needed");
+		}
+		this.shards = new LongHashUserStore[shards];
+		for (int i = 0; i < shards; i++) {
+			this.shards[i] = new LongHashUserStore(expectedSize / shards);
+		}
+	}
+
+	public int shards() {
+		return shards.length;
+	}
+
+	@Override
+	public Optional<User> findById(long id) {
+		return shardOf(id).findById(id);
+	}
+
+	@Override
+	public boolean contains(long id) {
+		return shardOf(id).contains(id);
+	}
+
+	@Override
+	public User put(User user) {
+		return shardOf(user.getId()).put(user);
+	}
+
+	@Override
+	public User replace(User user) {
+		return shardOf(user.getId()).replace(user);
+	}
+
+	@Override
+	public boolean replace(User expected, User replacement) {
+		if (expected.getId() != replacement.getId()) {
+			return false;
+		}
+		return shardOf(expected.getId()).replace(expected, replacement);
+	}
+
+	@Override
+	public User remove(long id) {
+		return shardOf(id).remove(id);
+	}
+
+	@Override
+	public void putAll(List<User> users) {
+		List<List<User>> parts = split(users);
+		for (int i = 0; i < shards.length; i++) {
+			if (!parts.get(i).isEmpty()) {
+				shards[i].putAll(parts.get(i));
+			}
+		}
+	}
+
+	@Override
+	public List<User> replaceAll(List<User> users) {
+		List<List<User>> parts = split(users);
+		List<Iterator<User>> replaced = new ArrayList<>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			replaced.add(parts.get(i).isEmpty() ? null : shards[i].replaceAll(parts.get(i)).iterator());
+		}
+		List<User> result = new ArrayList<>(users.size());
+		for (User user : users) {
+			result.add(replaced.get(indexOf(user.getId())).next());
+		}
+		return result;
+	}
+
+	@Override
+	public List<User> removeAll(long[] ids) {
+		int[] counts = new int[shards.length];
+		for (long id : ids) {
+			counts[indexOf(id)]++;
+		}
+		long[][] parts = new long[shards.length][];
+		for (int i = 0; i < shards.length; i++) {
+			parts[i] = new long[counts[i]];
+			counts[i] = 0;
+		}
+		for (long id : ids) {
+			int i = indexOf(id);
+			parts[i][counts[i]++] = id;
+		}
+		List<Iterator<User>> removed = new ArrayList<>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			removed.add(parts[i].length == 0 ? null : shards[i].removeAll(parts[i]).iterator());
+		}
+		List<User> result = new ArrayList<>(ids.length);
+		for (long id : ids) {
+			result.add(removed.get(indexOf(id)).next());
+		}
+		return result;
+	}
+
+	@Override
+	public List<User> findByBirthdateBetween(LocalDate from, LocalDate to) {
+		if (shards.length == 1) {
+			return shards[0].findByBirthdateBetween(from, to);
+		}
+		return ForkJoinPool.commonPool().invoke(new RangeTask(from, to, 0, shards.length));
+	}
+
+	@Override
+	public void forEachByBirthdateBetween(LocalDate from, long afterId, LocalDate to, Predicate<User> action) {
+		if (shards.length == 1) {
+			shards[0].forEachByBirthdateBetween(from, afterId, to, action);
+			return;
+		}
+		PriorityQueue<Cursor> cursors = new PriorityQueue<>(shards.length);
+		for (LongHashUserStore shard : shards) {
+			Cursor cursor = new Cursor(shard, from, afterId, to);
+			if (cursor.hasNext()) {
+				cursors.add(cursor);
+			}
+		}
+		while (!cursors.isEmpty()) {
+			Cursor cursor = cursors.poll();
+			if (!action.test(cursor.next())) {
+				return;
+			}
+			if (cursor.hasNext()) {
+				cursors.add(cursor);
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (LongHashUserStore shard : shards) {
+			size += shard.size();
+		}
+		return size;
+	}
+
+	@Override
+	public long nextId() {
+		long next = 1L;
+		for (LongHashUserStore shard : shards) {
+			next = Math.max(next, shard.nextId());
+		}
+		return next;
+	}
+
+	@Override
+	public List<User> values() {
+		List<User> values = new ArrayList<>();
+		for (LongHashUserStore shard : shards) {
+			values.addAll(shard.values());
+		}
+		return values;
+	}
+
+	@Override
+	public void clear() {
+		for (LongHashUserStore shard : shards) {
+			shard.clear();
+		}
+	}
+
+	private int indexOf(long id) {
+		return (int) Math.floorMod(id, (long) shards.length);
+	}
+
+	private LongHashUserStore shardOf(long id) {
+		return shards[indexOf(id)];
+	}
+
+	/**
+	 * @return users of every shard, in the given order
+	 */
+	private List<List<User>> split(List<User> users) {
+		List<List<User>> parts = new ArrayList<>(shards.length);
+		for (int i = 0; i < shards.length; i++) {
+			parts.add(new ArrayList<>());
+		}
+		for (User user : users) {
+			parts.get(indexOf(user.getId())).add(user);
+		}
+		return parts;
+	}
+
+	private static int compare(User a, User b) {
+		int byBirthdate = a.getBirthdate().compareTo(b.getBirthdate());
+		return byBirthdate != 0 ? byBirthdate : Long.compare(a.getId(), b.getId());
+	}
+
+	private static List<User> merge(List<User> a, List<User> b) {
+		if (a.isEmpty()) {
+			return b;
+		}
+		if (b.isEmpty()) {
+			return a;
+		}
+		List<User> merged = new ArrayList<>(a.size() + b.size());
+		int i = 0;
+		int j = 0;
+		while (i < a.size() && j < b.size()) {
+			merged.add(compare(a.get(i), b.get(j)) <= 0 ? a.get(i++) : b.get(j++));
+		}
+		merged.addAll(a.subList(i, a.size()));
+		merged.addAll(b.subList(j, b.size()));
+		return merged;
+	}
+
+	/**
+	 * Range of the shards {@code [low, high)}, halves are read in parallel and
+	 * merged
+	 */
+	private final class RangeTask extends RecursiveTask<List<User>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final LocalDate from;
+		private final LocalDate to;
+		private final int low;
+		private final int high;
+
+		RangeTask(LocalDate from, LocalDate to, int low, int high) {
+			this.from = from;
+			this.to = to;
+			this.low = low;
+			this.high = high;
+		}
+
+		@Override
+		protected List<User> compute() {
+			if (high - low == 1) {
+				return shards[low].findByBirthdateBetween(from, to);
+			}
+			int middle = (low + high) >>> 1;
+			RangeTask left = new RangeTask(from, to, low, middle);
+			left.fork();
+			List<User> right = new RangeTask(from, to, middle, high).compute();
+			return merge(left.join(), right);
+		}
+
+	}
+
+	/**
+	 * Users of one shard in range order, read a page at a time after the last
+	 * user returned
+	 */
+	private static final class Cursor implements Comparable<Cursor> {
+
+		private final LongHashUserStore shard;
+		private final LocalDate to;
+		private final List<User> page = new ArrayList<>(PAGE);
+		private LocalDate from;
+		private long afterId;
+		private int position;
+		private boolean last;
+
+		Cursor(LongHashUserStore shard, LocalDate from, long afterId, LocalDate to) {
+			this.shard = shard;
+			this.from = from;
+			this.afterId = afterId;
+			this.to = to;
+			fill();
+		}
+
+		boolean hasNext() {
+			if (position == page.size() && !last) {
+				fill();
+			}
+			return position < page.size();
+		}
+
+		User next() {
+			return page.get(position++);
+		}
+
+		private void fill() {
+			page.clear();
+			position = 0;
+			shard.forEachByBirthdateBetween(from, afterId, to, user -> {
+				page.add(user);
+				return page.size() < PAGE;
+			});
+			last = page.size() < PAGE;
+			if (!page.isEmpty()) {
+				User tail = page.get(page.size() - 1);
+				from = tail.getBirthdate();
+				afterId = tail.getId();
+			}
+		}
+
+		@Override
+		public int compareTo(Cursor other) {
+			return compare(page.get(position), other.page.get(other.position));
+		}
+
+	}
+
+}
@@ -0,0 +1,401 @@
+package com.holyk.clearsolutions.store;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import com.holyk.clearsolutions.entity.User;
+
+/**
+ * Serves users from a {@link MappedUserSnapshot} right after it is mapped. The
+ * snapshot is never changed, writes go to an in-memory overlay, users removed
+ * from the snapshot are marked in a bit set.
+ * <p>
+ * The overlay holds only users written since the snapshot. A snapshot user is
+ * decoded on every read, by id or in a range, and not kept, so the heap holds
+ * the changes only. Range queries merge the snapshot and the overlay in
+ * (birthdate, id) order. {@link #replace(User, User)} compares by value.
+ * <p>
+ * Thread safe: writers are serialized by a lock, reads do not lock.
+ */
+public class SnapshotUserStore implements UserStore {
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final LongHashUserStore overlay;
+	private final long snapshotNextId;
+	private final AtomicLongArray removed;
+	private volatile MappedUserSnapshot snapshot;
+	private volatile int size;
+
+	public SnapshotUserStore() {
+		this(MappedUserSnapshot.empty());
+	}
+
+	/**
+	 * @param snapshot
+	 */
+	public SnapshotUserStore(MappedUserSnapshot snapshot) {
+		super();
+		this.snapshot = snapshot;
+		this.snapshotNextId = snapshot.nextId();
+		this.removed = new AtomicLongArray((snapshot.size() + 63) >>> 6);
+		this.overlay = new LongHashUserStore();
+		this.size = snapshot.size();
+	}
+
+	@Override
+	public Optional<User> findById(long id) {
+		return Optional.ofNullable(get(id));
+	}
+
+	@Override
+	public boolean contains(long id) {
+		if (overlay.contains(id)) {
+			return true;
+		}
+		MappedUserSnapshot s = snapshot;
+		int position = s.positionOf(id);
+		return position >= 0 && !isRemoved(position);
+	}
+
+	@Override
+	public User put(User user) {
+		lock.lock();
+		try {
+			return putLocked(user);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public User replace(User user) {
+		lock.lock();
+		try {
+			return replaceLocked(user);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean replace(User expected, User replacement) {
+		lock.lock();
+		try {
+			User current = overlay.findById(replacement.getId()).orElse(null);
+			if (current == null) {
+				// not written since the snapshot
+				current = peekSnapshot(replacement.getId());
+				if (current == null || current.getVersion() != expected.getVersion() || !current.equals(expected)) {
+					return false;
+				}
+				overlay.put(replacement);
+				return true;
+			}
+			return overlay.replace(expected, replacement);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public User remove(long id) {
+		lock.lock();
+		try {
+			return removeLocked(id);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void putAll(List<User> users) {
+		lock.lock();
+		try {
+			for (User user : users) {
+				putLocked(user);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public List<User> replaceAll(List<User> users) {
+		List<User> replaced = new ArrayList<>(users.size());
+		lock.lock();
+		try {
+			for (User user : users) {
+				replaced.add(replaceLocked(user));
+			}
+		} finally {
+			lock.unlock();
+		}
+		return replaced;
+	}
+
+	@Override
+	public List<User> removeAll(long[] ids) {
+		List<User> removedUsers = new ArrayList<>(ids.length);
+		lock.lock();
+		try {
+			for (long id : ids) {
+				removedUsers.add(removeLocked(id));
+			}
+		} finally {
+			lock.unlock();
+		}
+		return removedUsers;
+	}
+
+	@Override
+	public List<User> findByBirthdateBetween(LocalDate from, LocalDate to) {
+		List<User> result = new ArrayList<>();
+		forEachByBirthdateBetween(from, Long.MIN_VALUE, to, result::add);
+		return result;
+	}
+
+	@Override
+	public void forEachByBirthdateBetween(LocalDate from, long afterId, LocalDate to, Predicate<User> action) {
+		MappedUserSnapshot s = snapshot;
+		int end = s.orderAfter(to.toEpochDay(), Long.MAX_VALUE);
+		int[] next = { s.orderAfter(from.toEpochDay(), afterId) };
+		boolean[] stopped = { false };
+
+		overlay.forEachByBirthdateBetween(from, afterId, to, user -> {
+			long day = user.getBirthdate().toEpochDay();
+			long id = user.getId();
+			// snapshot users that come before this one
+			while (next[0] < end) {
+				int position = s.positionAtOrder(next[0]);
+				int snapshotDay = s.epochDayAt(position);
+				if (snapshotDay > day || snapshotDay == day && s.idAt(position) > id) {
+					break;
+				}
+				next[0]++;
+				if (!visitSnapshot(s, position, action)) {
+					stopped[0] = true;
+					return false;
+				}
+			}
+			if (!action.test(user)) {
+				stopped[0] = true;
+				return false;
+			}
+			return true;
+		});
+
+		while (!stopped[0] && next[0] < end) {
+			stopped[0] = !visitSnapshot(s, s.positionAtOrder(next[0]++), action);
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public long nextId() {
+		return Math.max(snapshotNextId, overlay.nextId());
+	}
+
+	@Override
+	public List<User> values() {
+		lock.lock();
+		try {
+			MappedUserSnapshot s = snapshot;
+			List<User> result = new ArrayList<>(size);
+			result.addAll(overlay.values());
+			for (int position = 0; position < s.size(); position++) {
+				if (!isRemoved(position) && !overlay.contains(s.idAt(position))) {
+					result.add(s.userAt(position));
+				}
+			}
+			return result;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The users as they are now, for a new snapshot. Only the overlay and the
+	 * removed marks are copied, the mapped snapshot is shared and users are
+	 * decoded while they are iterated.
+	 *
+	 * @return users by ascending id, every call starts over
+	 */
+	public Supplier<Iterator<User>> frozen() {
+		lock.lock();
+		try {
+			MappedUserSnapshot s = snapshot;
+			List<User> changed = overlay.values();
+			changed.sort(Comparator.comparingLong(User::getId));
+			long[] gone = new long[(s.size() + 63) >>> 6];
+			for (int word = 0; word < gone.length; word++) {
+				gone[word] = removed.get(word);
+			}
+			return () -> new FrozenIterator(s, gone, changed);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void clear() {
+		lock.lock();
+		try {
+			// the removed bits stay, a reader may still look at the old snapshot
+			snapshot = MappedUserSnapshot.empty();
+			overlay.clear();
+			size = 0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private User get(long id) {
+		User user = overlay.findById(id).orElse(null);
+		if (user != null) {
+			return user;
+		}
+		MappedUserSnapshot s = snapshot;
+		int position = s.positionOf(id);
+		if (position < 0 || isRemoved(position)) {
+			return null;
+		}
+		User decoded = s.userAt(position);
+		// a write while decoding went to the overlay or marked the user removed
+		user = overlay.findById(id).orElse(null);
+		if (user != null) {
+			return user;
+		}
+		return s == snapshot && !isRemoved(position) ? decoded : null;
+	}
+
+	/**
+	 * Under the lock: current user, from the overlay or decoded from the snapshot
+	 */
+	private User peek(long id) {
+		User user = overlay.findById(id).orElse(null);
+		return user != null ? user : peekSnapshot(id);
+	}
+
+	private User peekSnapshot(long id) {
+		MappedUserSnapshot s = snapshot;
+		int position = s.positionOf(id);
+		return position < 0 || isRemoved(position) || overlay.contains(id) ? null : s.userAt(position);
+	}
+
+	private User putLocked(User user) {
+		User previous = peek(user.getId());
+		overlay.put(user);
+		if (previous == null) {
+			size++;
+		}
+		return previous;
+	}
+
+	private User replaceLocked(User user) {
+		User previous = peek(user.getId());
+		if (previous != null) {
+			user.setVersion(previous.getVersion() + 1);
+			overlay.put(user);
+		}
+		return previous;
+	}
+
+	private User removeLocked(long id) {
+		User previous = peek(id);
+		if (previous == null) {
+			return null;
+		}
+		int position = snapshot.positionOf(id);
+		if (position >= 0) {
+			// marked first, so a reader that misses the overlay does not fall back
+			// to the snapshot
+			markRemoved(position);
+		}
+		overlay.remove(id);
+		size--;
+		return previous;
+	}
+
+	private boolean visitSnapshot(MappedUserSnapshot s, int position, Predicate<User> action) {
+		if (isRemoved(position) || overlay.contains(s.idAt(position))) {
+			return true;
+		}
+		return action.test(s.userAt(position));
+	}
+
+	private boolean isRemoved(int position) {
+		return (removed.get(position >>> 6) & (1L << position)) != 0;
+	}
+
+	/**
+	 * Under the lock, so a plain read-modify-write of the word is enough
+	 */
+	private void markRemoved(int position) {
+		int word = position >>> 6;
+		removed.set(word, removed.get(word) | (1L << position));
+	}
+
+	/**
+	 * Snapshot users merged by id with the overlay, which wins on equal ids
+	 */
+	private static final class FrozenIterator implements Iterator<User> {
+
+		private final MappedUserSnapshot snapshot;
+		private final long[] removed;
+		private final List<User> overlay;
+		private int position;
+		private int index;
+
+		FrozenIterator(MappedUserSnapshot snapshot, long[] removed, List<User> overlay) {
+			this.snapshot = snapshot;
+			this.removed = removed;
+			this.overlay = overlay;
+			skipRemoved();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return position < snapshot.size() || index < overlay.size();
+		}
+
+		@Override
+		public User next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			User user;
+			if (index == overlay.size()
+					|| position < snapshot.size() && snapshot.idAt(position) < overlay.get(index).getId()) {
+				user = snapshot.userAt(position++);
+			} else {
+				user = overlay.get(index++);
+				if (position < snapshot.size() && snapshot.idAt(position) == user.getId()) {
+					position++;
+				}
+			}
+			skipRemoved();
+			return user;
+		}
+
+		private void skipRemoved() {
+			while (position < snapshot.size() && (removed[position >>> 6] & (1L << position)) != 0) {
+				position++;
+			}
+		}
+
+	}
+
+}
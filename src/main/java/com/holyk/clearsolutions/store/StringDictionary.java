@@ -0,0 +1,51 @@
+package com.holyk.clearsolutions.store;
+
+import java.util.Arrays;
+
+/**
+ * Shares one instance of repeated strings, such as names and cities, between
+ * records. A string is kept in one of {@code capacity} slots chosen by its
+ * hash and replaces whatever string was there, so the dictionary never grows,
+ * unique values cannot pin it and a string that keeps coming back keeps its
+ * slot. Strings stay after their last record is removed until they are
+ * replaced or {@link #clear()}.
+ * <p>
+ * Not thread safe, used under the write lock of its store.
+ */
+final class StringDictionary {
+
+	static final int DEFAULT_CAPACITY = 1 << 16;
+
+	private final String[] slots;
+
+	StringDictionary() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity rounded up to a power of two
+	 */
+	StringDictionary(int capacity) {
+		super();
+		this.slots = new String[Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1];
+	}
+
+	String intern(String string) {
+		if (string == null) {
+			return null;
+		}
+		int hash = string.hashCode();
+		int slot = (hash ^ (hash >>> 16)) & (slots.length - 1);
+		String shared = slots[slot];
+		if (string.equals(shared)) {
+			return shared;
+		}
+		slots[slot] = string;
+		return string;
+	}
+
+	void clear() {
+		Arrays.fill(slots, null);
+	}
+
+}
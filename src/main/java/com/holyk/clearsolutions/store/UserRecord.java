@@ -0,0 +1,136 @@
+package com.holyk.clearsolutions.store;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+import com.holyk.clearsolutions.entity.User;
+
+/**
+ * Immutable form of a {@link User} kept inside a store: primitive id, birthdate
+ * as an int epoch day and a hash computed once. A change is a new record that
+ * replaces the old one with a single reference write, a {@link User} handed out
+ * is always a copy.
+ */
+final class UserRecord {
+
+	static final int NO_BIRTHDATE = Integer.MIN_VALUE;
+
+	private final long id;
+	private final long version;
+	private final int epochDay;
+	private final String email;
+	private final String firstname;
+	private final String lastname;
+	private final String address;
+	private final String phone;
+	private final int hash;
+
+	private UserRecord(long id, long version, int epochDay, String email, String firstname, String lastname,
+			String address, String phone) {
+		super();
+		this.id = id;
+		this.version = version;
+		this.epochDay = epochDay;
+		this.email = email;
+		this.firstname = firstname;
+		this.lastname = lastname;
+		this.address = address;
+		this.phone = phone;
+		int hash = Long.hashCode(id) * 31 + epochDay;
+		hash = hash * 31 + Objects.hashCode(email);
+		hash = hash * 31 + Objects.hashCode(firstname);
+		hash = hash * 31 + Objects.hashCode(lastname);
+		hash = hash * 31 + Objects.hashCode(address);
+		hash = hash * 31 + Objects.hashCode(phone);
+		this.hash = hash * 31 + Long.hashCode(version);
+	}
+
+	/**
+	 * @param user
+	 * @param strings shares names and addresses with other records
+	 * @throws IllegalArgumentException if the birthdate does not fit an int epoch
+	 *                                  day
+	 */
+	static UserRecord of(User user, StringDictionary strings) {
+		return new UserRecord(user.getId(), user.getVersion(), epochDayOf(user.getBirthdate()), user.getEmail(),
+				strings.intern(user.getFirstname()), strings.intern(user.getLastname()),
+				strings.intern(user.getAddress()), user.getPhone());
+	}
+
+	static int epochDayOf(LocalDate birthdate) {
+		if (birthdate == null) {
+			return NO_BIRTHDATE;
+		}
+		long day = birthdate.toEpochDay();
+		if (day <= NO_BIRTHDATE || day > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Birthdate out of range: " + birthdate);
+		}
+		return (int) day;
+	}
+
+	long id() {
+		return id;
+	}
+
+	long version() {
+		return version;
+	}
+
+	/**
+	 * @return epoch day or {@link #NO_BIRTHDATE}
+	 */
+	int epochDay() {
+		return epochDay;
+	}
+
+	/**
+	 * @return new mutable copy
+	 */
+	User toUser() {
+		User user = new User(email, firstname, lastname, epochDay == NO_BIRTHDATE ? null : LocalDate.ofEpochDay(epochDay),
+				address, phone);
+		user.setId(id);
+		user.setVersion(version);
+		return user;
+	}
+
+	/**
+	 * Same values as the user, without creating a copy
+	 */
+	boolean matches(User user) {
+		if (user == null || user.getId() != id || user.getVersion() != version) {
+			return false;
+		}
+		LocalDate birthdate = user.getBirthdate();
+		if (birthdate == null ? epochDay != NO_BIRTHDATE : birthdate.toEpochDay() != epochDay) {
+			return false;
+		}
+		return Objects.equals(email, user.getEmail()) && Objects.equals(firstname, user.getFirstname())
+				&& Objects.equals(lastname, user.getLastname()) && Objects.equals(address, user.getAddress())
+				&& Objects.equals(phone, user.getPhone());
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof UserRecord))
+			return false;
+		UserRecord other = (UserRecord) obj;
+		return hash == other.hash && id == other.id && version == other.version && epochDay == other.epochDay
+				&& Objects.equals(email, other.email) && Objects.equals(firstname, other.firstname)
+				&& Objects.equals(lastname, other.lastname) && Objects.equals(address, other.address)
+				&& Objects.equals(phone, other.phone);
+	}
+
+	@Override
+	public String toString() {
+		return toUser().toString();
+	}
+
+}
@@ -0,0 +1,190 @@
+package com.holyk.clearsolutions.store;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.zip.CRC32C;
+
+import com.holyk.clearsolutions.entity.User;
+
+/**
+ * Binary records of the write-ahead log and the snapshots.
+ *
+ * <pre>
+ * int    length of type and body
+ * byte   type
+ * body   put: long id, long version, long birthdate epoch day, 5 strings
+ *        remove: long id
+ *        clear: empty
+ * int    CRC32C of type and body
+ * </pre>
+ *
+ * Strings are an int length, -1 for null, followed by UTF-8 bytes. A null
+ * birthdate is {@link Long#MIN_VALUE}. Logs written before users had versions
+ * hold puts of type 1 without the version, they are read in version 1.
+ */
+final class UserRecordCodec {
+
+	static final byte REMOVE = 2;
+	static final byte CLEAR = 3;
+	static final byte PUT = 4;
+
+	private static final byte UNVERSIONED_PUT = 1;
+	// length, type and id come first
+	private static final int VERSION_OFFSET = Integer.BYTES + 1 + Long.BYTES;
+
+	private static final long NO_BIRTHDATE = Long.MIN_VALUE;
+	private static final int MAX_LENGTH = 64 * 1024 * 1024;
+
+	private UserRecordCodec() {
+	}
+
+	static ByteBuffer put(User user) {
+		byte[] email = bytesOf(user.getEmail());
+		byte[] firstname = bytesOf(user.getFirstname());
+		byte[] lastname = bytesOf(user.getLastname());
+		byte[] address = bytesOf(user.getAddress());
+		byte[] phone = bytesOf(user.getPhone());
+		int body = 3 * Long.BYTES + sizeOf(email) + sizeOf(firstname) + sizeOf(lastname) + sizeOf(address)
+				+ sizeOf(phone);
+
+		ByteBuffer record = start(PUT, body);
+		record.putLong(user.getId());
+		record.putLong(user.getVersion());
+		record.putLong(user.getBirthdate() == null ? NO_BIRTHDATE : user.getBirthdate().toEpochDay());
+		putString(record, email);
+		putString(record, firstname);
+		putString(record, lastname);
+		putString(record, address);
+		putString(record, phone);
+		return finish(record);
+	}
+
+	/**
+	 * Set the version of a put record encoded before the version was known
+	 *
+	 * @param record from {@link #put(User)}, not read yet
+	 */
+	static void version(ByteBuffer record, long version) {
+		record.putLong(VERSION_OFFSET, version);
+		record.putInt(record.limit() - Integer.BYTES,
+				crcOf(record.array(), Integer.BYTES, record.limit() - 2 * Integer.BYTES));
+	}
+
+	static ByteBuffer remove(long id) {
+		return finish(start(REMOVE, Long.BYTES).putLong(id));
+	}
+
+	static ByteBuffer clear() {
+		return finish(start(CLEAR, 0));
+	}
+
+	/**
+	 * Reads the next record and hands it to the handler
+	 *
+	 * @return bytes taken by the record, 0 at the end of input or at a torn or
+	 *         corrupted record
+	 */
+	static int read(DataInputStream in, Handler handler) throws IOException {
+		byte[] bytes;
+		try {
+			int length = in.readInt();
+			if (length < 1 || length > MAX_LENGTH) {
+				return 0;
+			}
+			bytes = new byte[length];
+			in.readFully(bytes);
+			int crc = in.readInt();
+			if (crc != crcOf(bytes, 0, length)) {
+				return 0;
+			}
+		} catch (EOFException e) {
+			return 0;
+		}
+
+		ByteBuffer record = ByteBuffer.wrap(bytes);
+		switch (record.get()) {
+		case PUT -> handler.put(userOf(record, true));
+		case UNVERSIONED_PUT -> handler.put(userOf(record, false));
+		case REMOVE -> handler.remove(record.getLong());
+		case CLEAR -> handler.clear();
+		default -> {
+			return 0;
+		}
+		}
+		return 2 * Integer.BYTES + bytes.length;
+	}
+
+	private static User userOf(ByteBuffer record, boolean versioned) {
+		long id = record.getLong();
+		long version = versioned ? record.getLong() : 1;
+		long epochDay = record.getLong();
+		User user = new User(getString(record), getString(record), getString(record),
+				epochDay == NO_BIRTHDATE ? null : LocalDate.ofEpochDay(epochDay), getString(record),
+				getString(record));
+		user.setId(id);
+		user.setVersion(version);
+		return user;
+	}
+
+	private static ByteBuffer start(byte type, int body) {
+		ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + 1 + body);
+		record.putInt(1 + body);
+		record.put(type);
+		return record;
+	}
+
+	private static ByteBuffer finish(ByteBuffer record) {
+		int length = record.position() - Integer.BYTES;
+		record.putInt(crcOf(record.array(), Integer.BYTES, length));
+		return record.flip();
+	}
+
+	private static int crcOf(byte[] bytes, int offset, int length) {
+		CRC32C crc = new CRC32C();
+		crc.update(bytes, offset, length);
+		return (int) crc.getValue();
+	}
+
+	private static byte[] bytesOf(String string) {
+		return string == null ? null : string.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static int sizeOf(byte[] string) {
+		return Integer.BYTES + (string == null ? 0 : string.length);
+	}
+
+	private static void putString(ByteBuffer record, byte[] string) {
+		if (string == null) {
+			record.putInt(-1);
+		} else {
+			record.putInt(string.length).put(string);
+		}
+	}
+
+	private static String getString(ByteBuffer record) {
+		int length = record.getInt();
+		if (length < 0) {
+			return null;
+		}
+		String string = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+		record.position(record.position() + length);
+		return string;
+	}
+
+	/**
+	 * Receives decoded records
+	 */
+	interface Handler {
+
+		void put(User user);
+
+		void remove(long id);
+
+		void clear();
+	}
+
+}
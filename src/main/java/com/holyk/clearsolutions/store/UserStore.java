@@ -0,0 +1,117 @@
+package com.holyk.clearsolutions.store;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+import com.holyk.clearsolutions.entity.User;
+
+/**
+ * Storage of users keyed by their id. Implementations are expected to give
+ * constant time point operations.
+ * <p>
+ * A user is stored with its {@link User#getVersion() version}. {@link #put}
+ * keeps the version it is given, {@link #replace(User)} and
+ * {@link #replaceAll} give the user the version after the replaced one in the
+ * same atomic step, so a version names exactly one content of a user. Users
+ * are equal by content, the version is compared only by
+ * {@link #replace(User, User)}.
+ */
+public interface UserStore {
+
+	Optional<User> findById(long id);
+
+	boolean contains(long id);
+
+	/**
+	 * Insert or replace user by its id
+	 *
+	 * @param user
+	 * @return previous user with the same id or null
+	 */
+	User put(User user);
+
+	/**
+	 * Replace the user only if a user with the same id is stored
+	 *
+	 * @param user gets the version after the one of the replaced user
+	 * @return replaced user or null if there was no user with such id
+	 */
+	User replace(User user);
+
+	/**
+	 * Compare-and-set: replace the user only if the stored one for the same id is
+	 * still equal to {@code expected}, version included
+	 *
+	 * @param expected    user the replacement was derived from
+	 * @param replacement with the version after the one of {@code expected}
+	 * @return false if the user was changed or removed in the meantime
+	 */
+	boolean replace(User expected, User replacement);
+
+	/**
+	 * @param id
+	 * @return removed user or null if there was no user with such id
+	 */
+	User remove(long id);
+
+	/**
+	 * Insert or replace all users at once
+	 *
+	 * @param users
+	 */
+	void putAll(List<User> users);
+
+	/**
+	 * {@link #replace(User)} for each user, at once
+	 *
+	 * @param users get the versions after the ones of the replaced users
+	 * @return replaced users in the same order, null where there was no user
+	 */
+	List<User> replaceAll(List<User> users);
+
+	/**
+	 * {@link #remove(long)} for each id, at once
+	 *
+	 * @param ids
+	 * @return removed users in the same order, null where there was no user
+	 */
+	List<User> removeAll(long[] ids);
+
+	/**
+	 * @param from inclusive, not after {@code to}
+	 * @param to   inclusive
+	 * @return users born in the range, ordered by birthdate and then by id
+	 */
+	List<User> findByBirthdateBetween(LocalDate from, LocalDate to);
+
+	/**
+	 * Visit users in the order of {@link #findByBirthdateBetween}, starting after
+	 * the key ({@code from}, {@code afterId}). Nothing is collected and no lock is
+	 * held between users, so the action may be slow, e.g. write to a socket.
+	 *
+	 * @param from    inclusive
+	 * @param afterId users born on {@code from} are visited only if their id is
+	 *                greater, {@link Long#MIN_VALUE} to visit all
+	 * @param to      inclusive
+	 * @param action  returns false to stop
+	 */
+	void forEachByBirthdateBetween(LocalDate from, long afterId, LocalDate to, Predicate<User> action);
+
+	int size();
+
+	/**
+	 * @return id greater than any id ever stored, including removed users, 1 for
+	 *         a new store
+	 */
+	long nextId();
+
+	/**
+	 * @return snapshot of all stored users, in no particular order
+	 */
+	List<User> values();
+
+	void clear();
+
+}
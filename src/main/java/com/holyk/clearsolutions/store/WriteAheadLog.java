@@ -0,0 +1,163 @@
+package com.holyk.clearsolutions.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append only log with group commit. Records are appended to an in-memory
+ * buffer; a writer that needs its record on disk calls {@link #sync(long)}.
+ * The first such writer becomes the leader: it swaps the buffer, writes it and
+ * forces the channel without holding the lock, while writers arriving in the
+ * meantime keep appending to the other buffer and wait. The next leader then
+ * commits all of them with a single fsync.
+ * <p>
+ * After an I/O error the log is broken, every further append and sync fails.
+ */
+final class WriteAheadLog implements Closeable {
+
+	private static final int INITIAL_BUFFER = 64 * 1024;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition synced = lock.newCondition();
+	private FileChannel channel;
+	private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER);
+	private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER);
+	private long appendedPosition;
+	private long syncedPosition;
+	private boolean syncing;
+	private IOException failure;
+	private long syncs;
+
+	/**
+	 * @param channel opened for writing at its end
+	 */
+	WriteAheadLog(FileChannel channel) {
+		super();
+		this.channel = channel;
+	}
+
+	/**
+	 * @param record framed by {@link UserRecordCodec}, not modified
+	 * @return position to {@link #sync(long)} on to make the record durable
+	 */
+	long append(ByteBuffer record) throws IOException {
+		lock.lock();
+		try {
+			checkFailure();
+			int length = record.remaining();
+			if (pending.remaining() < length) {
+				ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() << 1, pending.position() + length));
+				pending.flip();
+				grown.put(pending);
+				pending = grown;
+			}
+			pending.put(record.duplicate());
+			appendedPosition += length;
+			return appendedPosition;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Blocks until everything up to the position is on disk
+	 */
+	void sync(long position) throws IOException {
+		lock.lock();
+		try {
+			while (syncedPosition < position) {
+				checkFailure();
+				if (syncing) {
+					synced.awaitUninterruptibly();
+					continue;
+				}
+				syncing = true;
+				ByteBuffer batch = pending;
+				long target = appendedPosition;
+				pending = spare;
+				FileChannel out = channel;
+				lock.unlock();
+				IOException error = null;
+				try {
+					batch.flip();
+					while (batch.hasRemaining()) {
+						out.write(batch);
+					}
+					out.force(false);
+				} catch (IOException e) {
+					error = e;
+				} finally {
+					lock.lock();
+				}
+				batch.clear();
+				spare = batch;
+				syncing = false;
+				if (error != null) {
+					failure = error;
+				} else {
+					syncedPosition = target;
+					syncs++;
+				}
+				synced.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Makes everything appended so far durable and continues in the given
+	 * channel, the current one is closed. Appends must be stopped by the caller.
+	 */
+	void rotate(FileChannel next) throws IOException {
+		sync(appendedPosition());
+		lock.lock();
+		try {
+			channel.close();
+			channel = next;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	long appendedPosition() {
+		lock.lock();
+		try {
+			return appendedPosition;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of fsyncs done, each one commits a group of records
+	 */
+	long syncs() {
+		lock.lock();
+		try {
+			return syncs;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			sync(appendedPosition());
+		} finally {
+			channel.close();
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			throw new IOException("Write-ahead log is broken", failure);
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+package com.holyk.clearsolutions.validation;
+
+/**
+ * Accepts exactly what {@value #PATTERN} accepts, in a single pass and without
+ * allocation or backtracking:
+ * <ul>
+ * <li>a local part of word characters, dots and hyphens</li>
+ * <li>one {@code @}</li>
+ * <li>at least one non-empty label of word characters and hyphens followed by a
+ * dot</li>
+ * <li>a last label of 2 to 4 word characters and hyphens</li>
+ * </ul>
+ * Word characters are ASCII letters, digits and underscore, as {@code \w}
+ * without flags.
+ */
+public final class EmailValidator {
+
+	/**
+	 * Rules of the regular expression this replaces
+	 */
+	public static final String PATTERN = "^[\\w-\\.]+@([\\w-]+\\.)+[\\w-]{2,4}$";
+
+	private EmailValidator() {
+		super();
+	}
+
+	/**
+	 * @param email
+	 * @return false also for null
+	 */
+	public static boolean isValid(CharSequence email) {
+		if (email == null) {
+			return false;
+		}
+		int length = email.length();
+		int at = 0;
+		while (at < length && email.charAt(at) != '@') {
+			char c = email.charAt(at);
+			if (!isWord(c) && c != '.' && c != '-') {
+				return false;
+			}
+			at++;
+		}
+		if (at == 0 || at == length) {
+			return false;
+		}
+
+		int labelStart = at + 1;
+		boolean dotted = false;
+		for (int i = labelStart; i < length; i++) {
+			char c = email.charAt(i);
+			if (c == '.') {
+				if (i == labelStart) {
+					return false;
+				}
+				dotted = true;
+				labelStart = i + 1;
+			} else if (!isWord(c) && c != '-') {
+				return false;
+			}
+		}
+		int last = length - labelStart;
+		return dotted && last >= 2 && last <= 4;
+	}
+
+	private static boolean isWord(char c) {
+		return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+	}
+
+}
@@ -0,0 +1,19 @@
+package com.holyk.clearsolutions.validation;
+
+import com.holyk.clearsolutions.controllers.UserRequest.UserRequestData;
+import com.holyk.clearsolutions.validation.UserValidator.Today;
+
+/**
+ * One check of a user, see {@link UserValidator}
+ */
+@FunctionalInterface
+public interface UserRule {
+
+	/**
+	 * @param user  required fields are already known to be present
+	 * @param today
+	 * @return error or null if the user passes
+	 */
+	ValidationError check(UserRequestData user, Today today);
+
+}
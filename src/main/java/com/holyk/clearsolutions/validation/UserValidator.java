@@ -0,0 +1,139 @@
+package com.holyk.clearsolutions.validation;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.controllers.UserRequest.UserRequestData;
+import com.holyk.clearsolutions.entity.User;
+
+/**
+ * Rules shared by request validation in the controller, bulk imports and patch
+ * validation in the service. The rule set is built once, cheap checks first,
+ * and stops at the first error. Dates are checked against a {@link Today}
+ * taken once per request or batch, so the clock and the age cutoff are not
+ * computed per rule or per user. Errors are returned, not thrown.
+ */
+@Component
+public class UserValidator {
+
+	private final int ageRequired;
+	private final Clock clock;
+	private final UserRule[] rules;
+
+	/**
+	 * @param ageRequired minimum age of a registered user
+	 */
+	@Autowired
+	public UserValidator(@Value("${app.user.minimum.age}") int ageRequired) {
+		this(ageRequired, Clock.systemDefaultZone(), List.of());
+	}
+
+	/**
+	 * @param ageRequired minimum age of a registered user
+	 * @param clock       source of today
+	 * @param extraRules  checked after the built in ones, in the given order
+	 */
+	public UserValidator(int ageRequired, Clock clock, List<UserRule> extraRules) {
+		super();
+		this.ageRequired = ageRequired;
+		this.clock = clock;
+		List<UserRule> all = new ArrayList<>();
+		//@formatter:off
+		all.add((user, today) -> user.birthdate().isAfter(today.date()) ? ValidationError.USER_NOT_VALID : null);
+		all.add((user, today) -> EmailValidator.isValid(user.email()) ? null : ValidationError.USER_NOT_VALID);
+		all.add((user, today) -> user.birthdate().isAfter(today.latestBirthdate()) ? ValidationError.TOO_YOUNG : null);
+		//@formatter:on
+		all.addAll(extraRules);
+		this.rules = all.toArray(new UserRule[0]);
+	}
+
+	/**
+	 * @return today and the latest birthdate old enough today
+	 */
+	public Today today() {
+		LocalDate date = LocalDate.now(clock);
+		// the latest birthdate whose birthday of the required age is before today,
+		// found around minusYears, which is off by a day around February 29
+		LocalDate latest = date.minusYears(ageRequired);
+		while (latest.plusYears(ageRequired).isBefore(date)) {
+			latest = latest.plusDays(1);
+		}
+		while (!latest.plusYears(ageRequired).isBefore(date)) {
+			latest = latest.minusDays(1);
+		}
+		return new Today(date, latest);
+	}
+
+	/**
+	 * @param user  may be null
+	 * @param today of the request or batch
+	 * @return first error or null if the user is valid
+	 */
+	public ValidationError validate(UserRequestData user, Today today) {
+		//@formatter:off
+		if (user == null
+				|| isNullOrEmpty(user.email())
+				|| isNullOrEmpty(user.firstname())
+				|| isNullOrEmpty(user.lastname())
+				|| user.birthdate() == null) {
+			return ValidationError.REQUIRED_FIELD_MISSING;
+		}
+		//@formatter:on
+		for (UserRule rule : rules) {
+			ValidationError error = rule.check(user, today);
+			if (error != null) {
+				return error;
+			}
+		}
+		return null;
+	}
+
+	public ValidationError validate(UserRequestData user) {
+		return validate(user, today());
+	}
+
+	/**
+	 * @param from  inclusive
+	 * @param to    inclusive, not in the future
+	 * @param today
+	 * @return error or null if the range is valid
+	 */
+	public ValidationError validateRange(LocalDate from, LocalDate to, Today today) {
+		if (from == null || to == null) {
+			return ValidationError.RANGE_MISSING;
+		}
+		if (to.isBefore(from) || to.isAfter(today.date())) {
+			return ValidationError.RANGE_NOT_VALID;
+		}
+		return null;
+	}
+
+	/**
+	 * Required fields are present and valid, the user is old enough
+	 * 
+	 * @param user  patched
+	 * @param today of the patch, taken once for all its attempts
+	 */
+	public boolean isPatchedUserValid(User user, Today today) {
+		return validate(UserRequest.of(user).data(), today) == null;
+	}
+
+	private static boolean isNullOrEmpty(String string) {
+		return string == null || "".equals(string);
+	}
+
+	/**
+	 * @param date            today
+	 * @param latestBirthdate latest birthdate of a user old enough today
+	 */
+	public record Today(LocalDate date, LocalDate latestBirthdate) {
+	}
+
+}
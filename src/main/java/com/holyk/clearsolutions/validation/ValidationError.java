@@ -0,0 +1,43 @@
+package com.holyk.clearsolutions.validation;
+
+import java.util.function.Function;
+
+import com.holyk.clearsolutions.exceptions.DateRangeIsNotValidException;
+import com.holyk.clearsolutions.exceptions.FieldIsNullException;
+import com.holyk.clearsolutions.exceptions.UserAgeNotSatisfyException;
+import com.holyk.clearsolutions.exceptions.UserNotValidException;
+
+/**
+ * Result of a failed rule. The constants are shared, so a rejected user costs
+ * no allocation, bulk paths report them as they are.
+ */
+public enum ValidationError {
+
+	REQUIRED_FIELD_MISSING("One or more required fields are null!", FieldIsNullException::new),
+	USER_NOT_VALID("User is not valid!", UserNotValidException::new),
+	TOO_YOUNG("Too young!", UserAgeNotSatisfyException::new),
+	RANGE_MISSING("Range of dates is not presented!", FieldIsNullException::new),
+	RANGE_NOT_VALID("Range of dates is not valid!", DateRangeIsNotValidException::new);
+
+	private final String message;
+	private final RuntimeException exception;
+
+	private ValidationError(String message, Function<String, RuntimeException> exception) {
+		this.message = message;
+		this.exception = exception.apply(message);
+	}
+
+	public String message() {
+		return message;
+	}
+
+	/**
+	 * @return exception the single user endpoints answer with, one shared
+	 *         instance per error as it has no stack trace, cause or suppressed
+	 *         exceptions to differ in
+	 */
+	public RuntimeException exception() {
+		return exception;
+	}
+
+}
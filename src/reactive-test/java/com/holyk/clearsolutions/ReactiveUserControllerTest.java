@@ -0,0 +1,167 @@
+package com.holyk.clearsolutions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import com.holyk.clearsolutions.controllers.ReactiveUserController;
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.services.ReactiveUserService;
+import com.holyk.clearsolutions.services.UserService;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+import com.holyk.clearsolutions.validation.UserValidator;
+
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.scheduler.Schedulers;
+
+@SpringBootTest(properties = { "spring.main.web-application-type=reactive" })
+@AutoConfigureWebTestClient
+class ReactiveUserControllerTest {
+
+	@Autowired
+	WebTestClient client;
+
+	private static String user(String email, String birthdate) {
+		return "{\"data\": {\"email\": \"" + email + "\", \"firstname\": \"John\", \"lastname\": \"Doe\", \"birthdate\": \""
+				+ birthdate + "\"}}";
+	}
+
+	@Test
+	void testUserLifecycle() {
+		//@formatter:off
+		client.post().uri("/users").contentType(MediaType.APPLICATION_JSON).bodyValue(user("reactive@mail.com", "1990-01-01"))
+				.exchange().expectStatus().isCreated();
+		client.post().uri("/users").contentType(MediaType.APPLICATION_JSON).bodyValue(user("REACTIVE@mail.com", "1990-01-01"))
+				.exchange().expectStatus().isEqualTo(409);
+		client.post().uri("/users").contentType(MediaType.APPLICATION_JSON).bodyValue(user("young@mail.com", "2020-01-01"))
+				.exchange().expectStatus().isForbidden()
+				.expectBody().jsonPath("$.message").isEqualTo("Too young!");
+		client.post().uri("/users").contentType(MediaType.APPLICATION_JSON).bodyValue(user("not an email", "1990-01-01"))
+				.exchange().expectStatus().isBadRequest();
+
+		long id = client.get().uri("/users/by-email/reactive@mail.com").exchange()
+				.expectStatus().isOk()
+				.expectBody(UserResponseBody.class).returnResult().getResponseBody().data().id();
+
+		client.patch().uri("/users/" + id).contentType(MediaType.valueOf("application/json-patch+json"))
+				.bodyValue("[{\"op\": \"replace\", \"path\": \"/firstname\", \"value\": \"Jane\"}]")
+				.exchange().expectStatus().isOk()
+				.expectBody().jsonPath("$.data.firstname").isEqualTo("Jane");
+		client.put().uri("/users/" + id).contentType(MediaType.APPLICATION_JSON).bodyValue(user("moved@mail.com", "1990-01-01"))
+				.exchange().expectStatus().isOk();
+		client.put().uri("/users/-1").contentType(MediaType.APPLICATION_JSON).bodyValue(user("missing@mail.com", "1990-01-01"))
+				.exchange().expectStatus().isNotFound();
+
+		client.delete().uri("/users/" + id).exchange().expectStatus().isNoContent();
+		client.delete().uri("/users/" + id).exchange().expectStatus().isNotFound();
+		client.get().uri("/users/by-email/moved@mail.com").exchange().expectStatus().isNotFound();
+		//@formatter:on
+	}
+
+	@Test
+	void testNullPointerIsBadRequest() {
+		LongHashUserStore store = new LongHashUserStore() {
+			@Override
+			public User put(User user) {
+				throw new NullPointerException("Field is null");
+			}
+		};
+		ReactiveUserService service = new ReactiveUserService(UserServiceBuilder.service(store),
+				Schedulers.immediate());
+		WebTestClient controller = WebTestClient
+				.bindToController(new ReactiveUserController(service, new UserValidator(18))).build();
+
+		//@formatter:off
+		controller.post().uri("/users").contentType(MediaType.APPLICATION_JSON).bodyValue(user("npe@mail.com", "1990-01-01"))
+				.exchange().expectStatus().isBadRequest()
+				.expectBody().jsonPath("$.message").isEqualTo("Field is null");
+		//@formatter:on
+	}
+
+	@Test
+	void testRange() {
+		for (int i = 0; i < 600; i++) {
+			client.post().uri("/users").contentType(MediaType.APPLICATION_JSON)
+					.bodyValue(user("range" + i + "@mail.com", LocalDate.of(1960, 1, 1).plusDays(i).toString()))
+					.exchange().expectStatus().isCreated();
+		}
+
+		//@formatter:off
+		List<User> users = client.get().uri("/users?fromDate=1960-01-01&toDate=1961-08-23")
+				.accept(MediaType.APPLICATION_NDJSON).exchange()
+				.expectStatus().isOk()
+				.returnResult(User.class).getResponseBody().collectList().block();
+		//@formatter:on
+		assertEquals(600, users.size());
+		for (int i = 1; i < users.size(); i++) {
+			assertEquals(users.get(i - 1).getBirthdate().plusDays(1), users.get(i).getBirthdate());
+		}
+
+		client.get().uri("/users?fromDate=1960-01-01&toDate=1960-01-10").accept(MediaType.APPLICATION_JSON).exchange()
+				.expectStatus().isOk().expectBody().jsonPath("$.length()").isEqualTo(10);
+		client.get().uri("/users?fromDate=1800-01-01&toDate=1800-01-10").accept(MediaType.APPLICATION_JSON).exchange()
+				.expectStatus().isNoContent();
+		client.get().uri("/users?fromDate=1961-01-01&toDate=1960-01-10").accept(MediaType.APPLICATION_JSON).exchange()
+				.expectStatus().isBadRequest();
+	}
+
+	/**
+	 * The store is read only as far as the subscriber asked
+	 */
+	@Test
+	void testBackpressure() {
+		AtomicInteger reads = new AtomicInteger();
+		LongHashUserStore store = new LongHashUserStore() {
+			@Override
+			public void forEachByBirthdateBetween(LocalDate from, long afterId, LocalDate to,
+					Predicate<User> action) {
+				reads.incrementAndGet();
+				super.forEachByBirthdateBetween(from, afterId, to, action);
+			}
+		};
+		UserService users = UserServiceBuilder.service(store);
+		for (int i = 0; i < 2000; i++) {
+			users.save(UserRequest.of("user" + i + "@mail.com", "John", "Doe", LocalDate.of(1960, 1, 1).plusDays(i),
+					null, null));
+		}
+		ReactiveUserService service = new ReactiveUserService(users, Schedulers.immediate());
+
+		List<User> received = new ArrayList<>();
+		service.getUsersByDateRange(LocalDate.of(1900, 1, 1), LocalDate.of(2000, 1, 1))
+				.subscribe(new BaseSubscriber<User>() {
+					@Override
+					protected void hookOnSubscribe(Subscription subscription) {
+						request(10);
+					}
+
+					@Override
+					protected void hookOnNext(User value) {
+						received.add(value);
+					}
+				});
+
+		assertEquals(10, received.size());
+		assertTrue(reads.get() <= 2, "Pages read: " + reads.get());
+	}
+
+	record UserResponseBody(UserResponseBodyData data) {
+	}
+
+	record UserResponseBodyData(long id) {
+	}
+
+}
@@ -0,0 +1,37 @@
+package com.holyk.clearsolutions.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.holyk.clearsolutions.services.ReactiveUserService;
+import com.holyk.clearsolutions.services.UserService;
+
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Reactive facade of the user service. Writes of every store are moved off the
+ * event loop: the durable store waits for the disk, the memory stores
+ * serialize writers by a lock and the off-heap store compacts its strings
+ * within a write.
+ * <p>
+ * Requests are served by Netty, Spring Boot would take Tomcat otherwise as the
+ * servlet stack keeps it on the classpath.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveUserConfiguration {
+
+	@Bean
+	public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+		return new NettyReactiveWebServerFactory();
+	}
+
+	@Bean
+	public ReactiveUserService reactiveUserService(UserService service) {
+		return new ReactiveUserService(service, Schedulers.boundedElastic());
+	}
+
+}
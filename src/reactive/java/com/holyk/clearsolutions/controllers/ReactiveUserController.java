@@ -0,0 +1,175 @@
+package com.holyk.clearsolutions.controllers;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.github.fge.jsonpatch.JsonPatch;
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.exceptions.DateRangeIsNotValidException;
+import com.holyk.clearsolutions.exceptions.FieldIsNullException;
+import com.holyk.clearsolutions.exceptions.UserAgeNotSatisfyException;
+import com.holyk.clearsolutions.exceptions.UserEmailConflictException;
+import com.holyk.clearsolutions.exceptions.UserNotFoundException;
+import com.holyk.clearsolutions.exceptions.UserNotValidException;
+import com.holyk.clearsolutions.exceptions.UserPatchIsNotValidException;
+import com.holyk.clearsolutions.services.ReactiveUserService;
+import com.holyk.clearsolutions.validation.UserValidator;
+import com.holyk.clearsolutions.validation.ValidationError;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * {@link UserController} on WebFlux, served instead of it when the application
+ * runs as a reactive web application. Requests, responses and errors are the
+ * same, the birthdate range can also be streamed with backpressure.
+ */
+@RestController
+@RequestMapping("/users")
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveUserController {
+
+	private static final String NDJSON = "application/x-ndjson";
+
+	private final ReactiveUserService service;
+	private final UserValidator validator;
+
+	/**
+	 * @param service
+	 * @param validator
+	 */
+	@Autowired
+	public ReactiveUserController(ReactiveUserService service, UserValidator validator) {
+		super();
+		this.service = service;
+		this.validator = validator;
+	}
+
+	/**
+	 * @see UserController#createUser(UserRequest)
+	 */
+	@PostMapping()
+	public Mono<ResponseEntity<User>> createUser(@RequestBody UserRequest data) {
+		return validateUser(data).then(service.save(data))
+				.map(user -> ResponseEntity.status(HttpStatus.CREATED).body(user));
+	}
+
+	/**
+	 * @see UserController#patchUser(long, JsonPatch)
+	 */
+	@PatchMapping(path = "/{id}", consumes = "application/json-patch+json")
+	public Mono<ResponseEntity<UserResponse>> patchUser(@PathVariable long id, @RequestBody JsonPatch patch) {
+		return service.patch(id, patch).map(user -> ResponseEntity.status(HttpStatus.OK).body(UserResponse.of(user)));
+	}
+
+	@PutMapping("/{id}")
+	public Mono<ResponseEntity<UserResponse>> updateUser(@PathVariable long id, @RequestBody UserRequest data) {
+		return validateUser(data).then(service.update(id, data))
+				.map(user -> ResponseEntity.status(HttpStatus.OK).body(UserResponse.of(user)));
+	}
+
+	/**
+	 * @see UserController#getUsersByBirthdateRange(LocalDate, LocalDate)
+	 */
+	@GetMapping()
+	public Mono<ResponseEntity<List<User>>> getUsersByBirthdateRange(@RequestParam("fromDate") LocalDate from,
+			@RequestParam("toDate") LocalDate to) {
+		//@formatter:off
+		return validateRange(from, to)
+				.then(service.getUsersByDateRange(from, to).collectList())
+				.map(list -> list.isEmpty()
+						? ResponseEntity.status(HttpStatus.NO_CONTENT).<List<User>>build()
+						: ResponseEntity.status(HttpStatus.OK).body(list));
+		//@formatter:on
+	}
+
+	/**
+	 * Newline delimited JSON, users are read from the store as the client
+	 * consumes them
+	 *
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	@GetMapping(produces = NDJSON)
+	public Flux<User> streamUsersByBirthdateRange(@RequestParam("fromDate") LocalDate from,
+			@RequestParam("toDate") LocalDate to) {
+		return validateRange(from, to).thenMany(service.getUsersByDateRange(from, to));
+	}
+
+	/**
+	 * @param email in any case
+	 * @return
+	 */
+	@GetMapping("/by-email/{email}")
+	public Mono<ResponseEntity<UserResponse>> getUserByEmail(@PathVariable String email) {
+		//@formatter:off
+		return service.findUserByEmail(email)
+				.switchIfEmpty(Mono.error(() -> new UserNotFoundException("User not found!")))
+				.map(user -> ResponseEntity.status(HttpStatus.OK).body(UserResponse.of(user)));
+		//@formatter:on
+	}
+
+	@DeleteMapping("/{id}")
+	public Mono<ResponseEntity<Object>> deleteUser(@PathVariable long id) {
+		return service.delete(id)
+				.map(deleted -> deleted ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build());
+	}
+
+	private Mono<Void> validateUser(UserRequest request) {
+		return Mono.defer(() -> {
+			ValidationError error = validator.validate(request == null ? null : request.data());
+			return error == null ? Mono.empty() : Mono.error(error.exception());
+		});
+	}
+
+	private Mono<Void> validateRange(LocalDate from, LocalDate to) {
+		return Mono.defer(() -> {
+			ValidationError error = validator.validateRange(from, to, validator.today());
+			return error == null ? Mono.empty() : Mono.error(error.exception());
+		});
+	}
+
+	@ExceptionHandler(value = { DateRangeIsNotValidException.class, NullPointerException.class,
+			FieldIsNullException.class, UserPatchIsNotValidException.class, UserNotValidException.class })
+	public ResponseEntity<UserErrorResponse> handle(RuntimeException ex) {
+		return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+				.body(new UserErrorResponse(HttpStatus.BAD_REQUEST.toString(), ex.getMessage()));
+	}
+
+	@ExceptionHandler
+	public ResponseEntity<UserErrorResponse> handle(UserAgeNotSatisfyException ex) {
+		return ResponseEntity.status(HttpStatus.FORBIDDEN)
+				.body(new UserErrorResponse(HttpStatus.FORBIDDEN.toString(), ex.getMessage()));
+	}
+
+	@ExceptionHandler
+	public ResponseEntity<UserErrorResponse> handle(UserNotFoundException ex) {
+		return ResponseEntity.status(HttpStatus.NOT_FOUND)
+				.body(new UserErrorResponse(HttpStatus.NOT_FOUND.toString(), ex.getMessage()));
+	}
+
+	@ExceptionHandler
+	public ResponseEntity<UserErrorResponse> handle(UserEmailConflictException ex) {
+		return ResponseEntity.status(HttpStatus.CONFLICT)
+				.body(new UserErrorResponse(HttpStatus.CONFLICT.toString(), ex.getMessage()));
+	}
+
+}
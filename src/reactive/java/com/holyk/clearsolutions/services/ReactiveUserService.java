@@ -0,0 +1,91 @@
+package com.holyk.clearsolutions.services;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.github.fge.jsonpatch.JsonPatch;
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.entity.User;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * {@link UserService} for the reactive controller. Nothing runs before
+ * subscription. Writes run on the given scheduler, a blocking one in the
+ * application, as they may wait for a lock or the disk. Reads are short and
+ * run on the subscribing thread.
+ */
+public class ReactiveUserService {
+
+	/**
+	 * Users read from the store at once by a range, more are read only when the
+	 * subscriber asks for them
+	 */
+	static final int PAGE_SIZE = 256;
+
+	private final UserService service;
+	private final Scheduler writes;
+
+	/**
+	 * @param service
+	 * @param writes  where store writes run
+	 */
+	public ReactiveUserService(UserService service, Scheduler writes) {
+		super();
+		this.service = service;
+		this.writes = writes;
+	}
+
+	public Mono<User> save(UserRequest request) {
+		return write(() -> service.save(request));
+	}
+
+	public Mono<User> update(long id, UserRequest request) {
+		return write(() -> service.update(id, request));
+	}
+
+	public Mono<User> patch(long id, JsonPatch patch) {
+		return write(() -> service.patch(id, patch));
+	}
+
+	public Mono<Boolean> delete(long id) {
+		return write(() -> service.delete(id));
+	}
+
+	public Mono<User> findUserByEmail(String email) {
+		return Mono.defer(() -> Mono.justOrEmpty(service.findUserByEmail(email)));
+	}
+
+	/**
+	 * Users of the range ordered by birthdate and then by id. The range is read
+	 * in keyset pages of {@value #PAGE_SIZE}, a page is read only when the
+	 * previous one is almost consumed, so a slow subscriber holds at most two
+	 * pages.
+	 */
+	public Flux<User> getUsersByDateRange(LocalDate from, LocalDate to) {
+		//@formatter:off
+		return Flux.<List<User>, List<User>>generate(() -> List.of(), (previous, sink) -> {
+					User last = previous.isEmpty() ? null : previous.get(previous.size() - 1);
+					List<User> page = last == null
+							? service.getUsersByDateRange(from, to, null, 0, PAGE_SIZE)
+							: service.getUsersByDateRange(from, to, last.getBirthdate(), last.getId(), PAGE_SIZE);
+					if (page.isEmpty()) {
+						sink.complete();
+					} else {
+						sink.next(page);
+					}
+					return page;
+				})
+				.takeUntil(page -> page.size() < PAGE_SIZE)
+				.concatMapIterable(page -> page, 1);
+		//@formatter:on
+	}
+
+	private <T> Mono<T> write(Callable<T> call) {
+		return Mono.fromCallable(call).subscribeOn(writes);
+	}
+
+}
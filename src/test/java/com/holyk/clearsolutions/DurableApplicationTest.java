@@ -0,0 +1,49 @@
+package com.holyk.clearsolutions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.env.Environment;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+
+import com.holyk.clearsolutions.store.DurableUserStore;
+import com.holyk.clearsolutions.store.UserStore;
+
+/**
+ * The application properties of the main resources, not the test ones, with
+ * the durable store
+ */
+@SpringBootTest
+@TestPropertySource(locations = "file:src/main/resources/application.properties", properties = "app.user.store.mode=durable")
+class DurableApplicationTest {
+
+	@TempDir
+	static Path directory;
+
+	@DynamicPropertySource
+	static void directory(DynamicPropertyRegistry registry) {
+		registry.add("app.user.store.directory", () -> directory.toString());
+	}
+
+	@Autowired
+	UserStore store;
+
+	@Autowired
+	Environment environment;
+
+	@Test
+	void contextLoads() {
+		assertInstanceOf(DurableUserStore.class, store);
+		assertEquals("100000", environment.getProperty("app.user.store.snapshot-every"));
+		assertEquals("full", environment.getProperty("app.user.metrics.mode"));
+	}
+
+}
@@ -0,0 +1,237 @@
+package com.holyk.clearsolutions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.services.UserService;
+import com.holyk.clearsolutions.store.DurableUserStore;
+
+class DurableUserStoreTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void testRestoreAfterRestart() throws IOException {
+		try (DurableUserStore store = open(1000)) {
+			UserService service = UserServiceBuilder.service(store);
+			User first = service.save(request("first@mail.com"));
+			User second = service.save(request("second@mail.com"));
+			User third = service.save(request(null));
+			service.update(first.getId(), request("updated@mail.com"));
+			service.delete(third.getId());
+			store.replace(second, second);
+		}
+
+		try (DurableUserStore store = open(1000)) {
+			UserService service = UserServiceBuilder.service(store);
+			assertEquals(2, store.size());
+			assertEquals("updated@mail.com", store.findById(1L).get().getEmail());
+			assertEquals("second@mail.com", store.findById(2L).get().getEmail());
+			assertFalse(store.contains(3L));
+			assertEquals(2, store.findByBirthdateBetween(LocalDate.of(2002, 1, 1), LocalDate.of(2002, 1, 1)).size());
+			// the id of the deleted user is not given out again
+			assertEquals(4L, service.save(request("fourth@mail.com")).getId());
+		}
+	}
+
+	@Test
+	void testRestoreFromSnapshot() throws Exception {
+		try (DurableUserStore store = open(10)) {
+			UserService service = UserServiceBuilder.service(store);
+			for (int i = 0; i < 25; i++) {
+				service.save(request("mail" + i + "@mail.com"));
+			}
+			service.delete(25L);
+		}
+		try (Stream<Path> files = Files.list(directory)) {
+			assertTrue(files.anyMatch(file -> file.getFileName().toString().startsWith("snapshot-")));
+		}
+
+		try (DurableUserStore store = open(10)) {
+			assertEquals(24, store.size());
+			assertEquals("mail0@mail.com", store.findById(1L).get().getEmail());
+			assertEquals(26L, store.nextId());
+		}
+	}
+
+	@Test
+	void testServesAdoptedSnapshot() throws Exception {
+		try (DurableUserStore store = open(1000)) {
+			UserService service = UserServiceBuilder.service(store);
+			for (int i = 0; i < 3; i++) {
+				service.save(request("mail" + i + "@mail.com"));
+			}
+			store.snapshot();
+			awaitSnapshot(2);
+			service.update(1L, request("updated@mail.com"));
+			service.delete(2L);
+
+			assertEquals(2, store.size());
+			assertEquals("updated@mail.com", store.findById(1L).get().getEmail());
+			assertFalse(store.contains(2L));
+			assertEquals("mail2@mail.com", store.findById(3L).get().getEmail());
+
+			store.clear();
+			service.save(request("fourth@mail.com"));
+			store.snapshot();
+			awaitSnapshot(3);
+			assertEquals(1, store.size());
+			assertEquals("fourth@mail.com", store.findById(4L).get().getEmail());
+		}
+
+		try (DurableUserStore store = open(1000)) {
+			assertEquals(1, store.size());
+			assertEquals("fourth@mail.com", store.findById(4L).get().getEmail());
+		}
+	}
+
+	@Test
+	void testVersionsAreRestored() throws Exception {
+		try (DurableUserStore store = open(1000)) {
+			UserService service = UserServiceBuilder.service(store);
+			service.save(request("first@mail.com"));
+			service.save(request("second@mail.com"));
+			service.update(1L, request("updated@mail.com"));
+			store.snapshot();
+			awaitSnapshot(2);
+			service.update(2L, request("changed@mail.com"));
+			service.update(2L, request("second@mail.com"));
+		}
+
+		try (DurableUserStore store = open(1000)) {
+			assertEquals(2, store.findById(1L).get().getVersion());
+			assertEquals(3, store.findById(2L).get().getVersion());
+		}
+	}
+
+	@Test
+	void testFailedSnapshotIsCounted() throws IOException {
+		DurableUserStore store = open(1000);
+		UserServiceBuilder.service(store).save(request("first@mail.com"));
+		// the next snapshot is 2, its temporary file cannot be created
+		Files.createDirectory(directory.resolve("snapshot-" + String.format("%019d", 2) + ".bin.tmp"));
+		store.snapshot();
+		store.close();
+
+		assertEquals(1, store.failedSnapshots());
+		try (DurableUserStore reopened = open(1000)) {
+			assertEquals(1, reopened.size());
+		}
+	}
+
+	@Test
+	void testTornTailIsCutOff() throws IOException {
+		try (DurableUserStore store = open(1000)) {
+			UserService service = UserServiceBuilder.service(store);
+			service.save(request("first@mail.com"));
+			service.save(request("second@mail.com"));
+		}
+		Path segment;
+		try (Stream<Path> files = Files.list(directory)) {
+			segment = files.filter(file -> file.getFileName().toString().endsWith(".log")).sorted()
+					.reduce((a, b) -> b).get();
+		}
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3);
+		}
+
+		try (DurableUserStore store = open(1000)) {
+			assertEquals(1, store.size());
+			UserService service = UserServiceBuilder.service(store);
+			service.save(request("third@mail.com"));
+		}
+		try (DurableUserStore store = open(1000)) {
+			assertEquals(2, store.size());
+		}
+	}
+
+	@Test
+	void testConcurrentWrites() throws Exception {
+		int threads = 8;
+		int perThread = 200;
+		try (DurableUserStore store = open(100_000)) {
+			UserService service = UserServiceBuilder.service(store);
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<?>> futures = new ArrayList<>();
+				for (int t = 0; t < threads; t++) {
+					int thread = t;
+					futures.add(executor.submit(() -> {
+						for (int i = 0; i < perThread; i++) {
+							service.save(request("mail" + thread + "-" + i + "@mail.com"));
+						}
+					}));
+				}
+				for (Future<?> future : futures) {
+					future.get();
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+
+		try (DurableUserStore store = open(100_000)) {
+			assertEquals(threads * perThread, store.size());
+		}
+	}
+
+	@Test
+	void testFailedSyncKeepsDurableState() throws IOException {
+		DurableUserStore store = open(1000);
+		UserService service = UserServiceBuilder.service(store);
+		User first = service.save(request("first@mail.com"));
+		// the log is closed, the next fsync fails
+		store.close();
+
+		User changed = new User("changed@mail.com", "firstname", "lastname", LocalDate.of(2002, 1, 1), "address", null);
+		changed.setId(first.getId());
+		assertThrows(UncheckedIOException.class, () -> store.replace(first, changed));
+		assertEquals(first, store.findById(first.getId()).get());
+		assertThrows(UncheckedIOException.class, () -> store.remove(first.getId()));
+		assertTrue(store.contains(first.getId()));
+		assertEquals(1, store.size());
+	}
+
+	/**
+	 * @param number of the snapshot, the segments before it are deleted once it
+	 *               is served
+	 */
+	private void awaitSnapshot(long number) throws InterruptedException {
+		Path previous = directory.resolve("wal-" + String.format("%019d", number - 1) + ".log");
+		for (int i = 0; i < 500 && Files.exists(previous); i++) {
+			Thread.sleep(10);
+		}
+		assertFalse(Files.exists(previous));
+	}
+
+	private DurableUserStore open(int snapshotEvery) throws IOException {
+		return DurableUserStore.open(directory, snapshotEvery);
+	}
+
+	private static UserRequest request(String email) {
+		return UserRequest.of(email, "firstname", "lastname", LocalDate.of(2002, 1, 1), "address", null);
+	}
+
+}
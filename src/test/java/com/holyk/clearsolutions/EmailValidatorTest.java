@@ -0,0 +1,76 @@
+package com.holyk.clearsolutions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import com.holyk.clearsolutions.validation.EmailValidator;
+
+class EmailValidatorTest {
+
+	private static final Pattern REGEX = Pattern.compile(EmailValidator.PATTERN);
+	private static final String ALPHABET = "aZ09_.-@.@-+ é\n!";
+
+	@Test
+	void testKnownEmails() {
+		assertTrue(EmailValidator.isValid("mail@mail.com"));
+		assertTrue(EmailValidator.isValid("first.last-1_x@sub.do-main.info"));
+		assertFalse(EmailValidator.isValid("mail@mail"));
+		assertFalse(EmailValidator.isValid("mail@mail.c"));
+		assertFalse(EmailValidator.isValid("mail@mail.museum"));
+		assertFalse(EmailValidator.isValid("mail@.mail.com"));
+		assertFalse(EmailValidator.isValid("mail@mail..com"));
+		assertFalse(EmailValidator.isValid("@mail.com"));
+		assertFalse(EmailValidator.isValid("ma@il@mail.com"));
+		assertFalse(EmailValidator.isValid("mail@mail.com\n"));
+		assertFalse(EmailValidator.isValid("mail+tag@mail.com"));
+		assertFalse(EmailValidator.isValid(""));
+		assertFalse(EmailValidator.isValid(null));
+	}
+
+	/**
+	 * Random strings over the characters that matter to the rules, half of them
+	 * shaped like emails, so both answers are common
+	 */
+	@Test
+	void testSameAsRegex() {
+		Random random = new Random(42);
+		int accepted = 0;
+		for (int i = 0; i < 500_000; i++) {
+			String email = i % 2 == 0 ? random(random, random.nextInt(16)) : shaped(random);
+			boolean expected = REGEX.matcher(email).matches();
+			assertEquals(expected, EmailValidator.isValid(email), () -> "Input: [" + email + "]");
+			if (expected) {
+				accepted++;
+			}
+		}
+		assertTrue(accepted > 10_000, "Accepted only " + accepted);
+	}
+
+	private static String shaped(Random random) {
+		StringBuilder email = new StringBuilder(random(random, random.nextInt(5)));
+		email.append('@');
+		for (int labels = random.nextInt(3); labels >= 0; labels--) {
+			email.append(random(random, random.nextInt(4))).append('.');
+		}
+		return email.append(random(random, random.nextInt(6))).toString();
+	}
+
+	/**
+	 * Mostly word characters, so shaped strings are often valid
+	 */
+	private static String random(Random random, int length) {
+		StringBuilder string = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			string.append(random.nextInt(4) > 0 ? ALPHABET.charAt(random.nextInt(4))
+					: ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		}
+		return string.toString();
+	}
+
+}
@@ -7,6 +7,7 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
@@ -22,6 +23,7 @@ import java.lang.reflect.Array;
 import java.time.LocalDate;
 import java.time.Period;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 import org.assertj.core.util.Arrays;
@@ -84,6 +86,10 @@ class IntergrationTest {
 	UserController controller;
 
 	ObjectMapper om;
+	@Autowired
+	ObjectMapper objectMapper;
+	// emails are unique and the context is shared by all tests
+	static final AtomicLong EMAILS = new AtomicLong();
 	User defaultUser = new User("mail@mail.com", "John", "Doe", LocalDate.of(2002, 1, 1), "Somewhere over the rainbow",
 			"+36985214702");
 
@@ -323,6 +329,135 @@ class IntergrationTest {
 				.andExpect(status().isNotFound());
 	}
 
+	@Test
+	void usersBatch() throws Exception {
+		String valid = "{\"data\": {\"email\": \"batch@mail.com\", \"firstname\": \"John\", \"lastname\": \"Doe\", \"birthdate\": \"2002-01-01\"}}";
+		String young = "{\"data\": {\"email\": \"batch@mail.com\", \"firstname\": \"John\", \"lastname\": \"Doe\", \"birthdate\": \""
+				+ LocalDate.now().minusYears(1) + "\"}}";
+		String other = valid.replace("batch@mail.com", "other.batch@mail.com");
+
+		String created = mvc
+				.perform(post("/users/batch").contentType(MediaType.APPLICATION_JSON)
+						.content("[" + valid + "," + young + "," + valid.replace("batch@", "BATCH@") + "," + other + "]"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.data[0].status").value(HttpStatus.CREATED.toString()))
+				.andExpect(jsonPath("$.data[1].status").value(HttpStatus.FORBIDDEN.toString()))
+				.andExpect(jsonPath("$.data[1].id").doesNotExist())
+				.andExpect(jsonPath("$.data[2].status").value(HttpStatus.CONFLICT.toString()))
+				.andExpect(jsonPath("$.data[3].status").value(HttpStatus.CREATED.toString())).andReturn().getResponse()
+				.getContentAsString();
+		JsonNode items = getMapper().readTree(created).get("data");
+		long first = items.get(0).get("id").asLong();
+		long second = items.get(3).get("id").asLong();
+
+		mvc.perform(put("/users/batch").contentType(MediaType.APPLICATION_JSON)
+				.content("[{\"id\": " + first + ", " + valid.substring(1) + ", {\"id\": -1, " + valid.substring(1)
+						+ ", {\"id\": " + second + ", " + valid.substring(1) + "]"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.data[0].status").value(HttpStatus.OK.toString()))
+				.andExpect(jsonPath("$.data[1].status").value(HttpStatus.NOT_FOUND.toString()))
+				.andExpect(jsonPath("$.data[2].status").value(HttpStatus.CONFLICT.toString()));
+
+		mvc.perform(delete("/users/batch").contentType(MediaType.APPLICATION_JSON)
+				.content("[" + first + ", " + second + ", " + first + "]")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.data[0].status").value(HttpStatus.NO_CONTENT.toString()))
+				.andExpect(jsonPath("$.data[1].status").value(HttpStatus.NO_CONTENT.toString()))
+				.andExpect(jsonPath("$.data[2].status").value(HttpStatus.NOT_FOUND.toString()));
+	}
+
+	@Test
+	void usersImport() throws Exception {
+		String valid = "{\"data\": {\"email\": \"import@mail.com\", \"firstname\": \"John\", \"lastname\": \"Doe\", \"birthdate\": \"2002-01-01\"}}";
+		String invalidEmail = valid.replace("import@mail.com", "import");
+		String upload = valid + "\n" + "{\"data\": \n" + "\n" + invalidEmail + "\n" + valid + " {}\n" + valid;
+
+		mvc.perform(post("/users/import").contentType("application/x-ndjson").content(upload))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.lines").value(5))
+				.andExpect(jsonPath("$.imported").value(1)).andExpect(jsonPath("$.rejected").value(4))
+				.andExpect(jsonPath("$.errors[0].line").value(2)).andExpect(jsonPath("$.errors[1].line").value(4))
+				.andExpect(jsonPath("$.errors[1].message").value("User is not valid!"))
+				.andExpect(jsonPath("$.errors[2].line").value(5)).andExpect(jsonPath("$.errors[3].line").value(6))
+				.andExpect(jsonPath("$.errors[3].message").value("Email is already in use!"));
+	}
+
+	@Test
+	void userByEmail() throws Exception {
+		User user = createUser();
+
+		mvc.perform(get("/users/by-email/{email}", user.getEmail().toUpperCase())).andExpect(status().isOk())
+				.andExpect(jsonPath("$.data.id").value(user.getId()))
+				.andExpect(jsonPath("$.data.email").value(user.getEmail()));
+		mvc.perform(get("/users/by-email/{email}", "nobody@mail.com")).andExpect(status().isNotFound());
+
+		mvc.perform(post("/users").contentType(MediaType.APPLICATION_JSON)
+				.content("{ \"data\": {\"email\": \"" + user.getEmail()
+						+ "\", \"firstname\": \"John\", \"lastname\": \"Doe\", \"birthdate\": \"2002-01-01\"}}"))
+				.andExpect(status().isConflict())
+				.andExpect(jsonPath("$.message").value("Email is already in use!"));
+	}
+
+	@Test
+	void serviceMetrics() throws Exception {
+		createUser();
+
+		mvc.perform(get("/actuator/metrics/users.operations").param("tag", "operation:save"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.measurements[0].value").isNumber());
+		mvc.perform(get("/actuator/metrics/users.store.size")).andExpect(status().isOk());
+	}
+
+	@Test
+	void userVersions() throws Exception {
+		User user = createUser();
+		String etag = mvc.perform(get("/users/{id}", user.getId())).andExpect(status().isOk())
+				.andExpect(jsonPath("$.data.email").value(user.getEmail())).andReturn().getResponse()
+				.getHeader("ETag");
+		assertNotNull(etag);
+		mvc.perform(get("/users/{id}", user.getId()).header("If-None-Match", etag))
+				.andExpect(status().isNotModified()).andExpect(header().string("ETag", etag));
+		mvc.perform(get("/users/{id}", -1)).andExpect(status().isNotFound());
+
+		String patch = "[{\"op\": \"replace\", \"path\": \"/firstname\", \"value\": \"Jane\"}]";
+		String patched = mvc
+				.perform(patch("/users/{id}", user.getId()).contentType("application/json-patch+json")
+						.header("If-Match", etag).content(patch))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.data.firstname").value("Jane")).andReturn()
+				.getResponse().getHeader("ETag");
+		assertNotEquals(etag, patched);
+		mvc.perform(patch("/users/{id}", user.getId()).contentType("application/json-patch+json")
+				.header("If-Match", etag).content(patch)).andExpect(status().isPreconditionFailed())
+				.andExpect(jsonPath("$.message").value("User was changed!"));
+		mvc.perform(get("/users/{id}", user.getId()).header("If-None-Match", etag)).andExpect(status().isOk())
+				.andExpect(header().string("ETag", patched));
+
+		String update = "{ \"data\": {\"email\": \"" + user.getEmail()
+				+ "\", \"firstname\": \"John\", \"lastname\": \"Doe\", \"birthdate\": \"2002-01-01\"}}";
+		mvc.perform(put("/users/{id}", user.getId()).contentType(MediaType.APPLICATION_JSON)
+				.header("If-Match", etag).content(update)).andExpect(status().isPreconditionFailed());
+		mvc.perform(put("/users/{id}", user.getId()).contentType(MediaType.APPLICATION_JSON)
+				.header("If-Match", "W/" + patched).content(update)).andExpect(status().isPreconditionFailed());
+		mvc.perform(put("/users/{id}", user.getId()).contentType(MediaType.APPLICATION_JSON)
+				.header("If-Match", patched).content(update)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.data.firstname").value("John")).andExpect(header().exists("ETag"));
+		mvc.perform(put("/users/{id}", -1).contentType(MediaType.APPLICATION_JSON).header("If-Match", "*")
+				.content(update)).andExpect(status().isNotFound());
+	}
+
+	@Test
+	void serializedUsers() throws Exception {
+		LocalDate birthdate = LocalDate.of(1952, 3, 1);
+		User user = createUser(birthdate);
+		String expected = objectMapper.writeValueAsString(UserResponse.of(user));
+
+		for (int i = 0; i < 2; i++) {
+			assertEquals(expected, mvc.perform(get("/users/by-email/{email}", user.getEmail()))
+					.andExpect(status().isOk()).andReturn().getResponse().getContentAsString());
+		}
+		assertEquals(objectMapper.writeValueAsString(List.of(user)),
+				mvc.perform(get("/users?fromDate={fromDate}&toDate={toDate}", birthdate, birthdate))
+						.andExpect(status().isOk()).andExpect(content().contentType(MediaType.APPLICATION_JSON))
+						.andReturn().getResponse().getContentAsString());
+		mvc.perform(get("/actuator/metrics/cache.gets").param("tag", "cache:users.json").param("tag", "result:hit"))
+				.andExpect(status().isOk()).andExpect(jsonPath("$.measurements[0].value").value(greaterThan(0.0)));
+	}
+
 	@ParameterizedTest
 	@MethodSource("selectByBirthdatesSuccess")
 	void selectUsersByDateSuccess(LocalDate[] birthdates, LocalDate[] expectedBirthdates,
@@ -345,6 +480,73 @@ class IntergrationTest {
 
 	}
 
+	@Test
+	void selectUsersByDatePages() throws Exception {
+		LocalDate from = LocalDate.of(1950, 3, 1);
+		LocalDate to = LocalDate.of(1950, 3, 3);
+		for (LocalDate birthdate : List.of(to, from, from, to, from.plusDays(1))) {
+			createUser(birthdate);
+		}
+		ObjectMapper mapper = getMapper();
+
+		List<LocalDate> birthdates = new java.util.ArrayList<>();
+		String cursor = null;
+		int pages = 0;
+		do {
+			var request = get("/users?fromDate={fromDate}&toDate={toDate}&limit={limit}", from, to, 2);
+			if (cursor != null) {
+				request.param("cursor", cursor);
+			}
+			JsonNode page = mapper.readTree(
+					mvc.perform(request).andExpect(status().isOk()).andReturn().getResponse().getContentAsString());
+			for (JsonNode user : page.get("data")) {
+				birthdates.add(LocalDate.parse(user.get("birthdate").asText()));
+			}
+			cursor = page.get("next").isNull() ? null : page.get("next").asText();
+			pages++;
+		} while (cursor != null);
+
+		assertEquals(3, pages);
+		assertEquals(List.of(from, from, from.plusDays(1), to, to), birthdates);
+
+		mvc.perform(get("/users?fromDate={fromDate}&toDate={toDate}&limit={limit}&cursor={cursor}", from, to, 2, "%%%"))
+				.andExpect(status().isBadRequest()).andExpect(jsonPath("$.message").value("Page is not valid!"));
+		mvc.perform(get("/users?fromDate={fromDate}&toDate={toDate}&limit={limit}", from, to, 0))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void selectUsersByDateStream() throws Exception {
+		LocalDate from = LocalDate.of(1951, 3, 1);
+		for (LocalDate birthdate : List.of(from.plusDays(1), from)) {
+			createUser(birthdate);
+		}
+
+		String body = mvc
+				.perform(get("/users?fromDate={fromDate}&toDate={toDate}", from, from.plusDays(1))
+						.accept("application/x-ndjson"))
+				.andExpect(status().isOk()).andExpect(content().contentType("application/x-ndjson")).andReturn()
+				.getResponse().getContentAsString();
+
+		String[] lines = body.split("\n");
+		assertEquals(2, lines.length);
+		ObjectMapper mapper = getMapper();
+		assertEquals(from, mapper.readValue(lines[0], User.class).getBirthdate());
+		assertEquals(from.plusDays(1), mapper.readValue(lines[1], User.class).getBirthdate());
+	}
+
+	@Test
+	void selectUsersByDateStreamInvalidRange() throws Exception {
+		String body = mvc
+				.perform(get("/users?fromDate={fromDate}&toDate={toDate}", LocalDate.of(2020, 1, 1),
+						LocalDate.of(2000, 1, 1)).accept("application/x-ndjson"))
+				.andExpect(status().isBadRequest()).andExpect(content().contentType("application/x-ndjson"))
+				.andReturn().getResponse().getContentAsString();
+
+		UserErrorResponse error = getMapper().readValue(body.trim(), UserErrorResponse.class);
+		assertEquals(HttpStatus.BAD_REQUEST.toString(), error.status());
+	}
+
 	@Test
 	void selectUsersByDateNoContent() throws Exception {
 		mvc.perform(get("/users?fromDate={fromDate}&toDate={toDate}", LocalDate.of(1900, 10, 10),
@@ -445,7 +647,8 @@ class IntergrationTest {
 
 	private User createUser(LocalDate birthdate) throws UnsupportedEncodingException, Exception {
 		String result = mvc.perform(post("/users").contentType(MediaType.APPLICATION_JSON)
-				.content("{ \"data\": {\"email\": \"" + defaultUser.getEmail() + "\"," + "\"firstname\": \""
+				.content("{ \"data\": {\"email\": \"" + EMAILS.incrementAndGet() + defaultUser.getEmail() + "\","
+						+ "\"firstname\": \""
 						+ defaultUser.getFirstname() + "\"," + "\"lastname\": \"" + defaultUser.getLastname() + "\",\n"
 						+ "\"birthdate\": \"" + birthdate.toString() + "\"," + "\"address\": \""
 						+ defaultUser.getAddress() + "\",\n" + "\"phone\": \"" + defaultUser.getPhone() + "\"" + "}}"))
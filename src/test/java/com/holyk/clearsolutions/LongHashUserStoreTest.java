@@ -0,0 +1,143 @@
+package com.holyk.clearsolutions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+
+class LongHashUserStoreTest {
+
+	@Test
+	void testPutFindRemove() {
+		LongHashUserStore store = new LongHashUserStore();
+		User user = user(1L);
+
+		assertNull(store.put(user));
+		assertEquals(user, store.findById(1L).get());
+		assertTrue(store.contains(1L));
+
+		User replacement = user(1L);
+		replacement.setFirstname("Replacement");
+		assertEquals(user, store.put(replacement));
+		assertEquals(1, store.size());
+
+		assertEquals(replacement, store.remove(1L));
+		assertNull(store.remove(1L));
+		assertTrue(store.findById(1L).isEmpty());
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	void testReplace() {
+		LongHashUserStore store = new LongHashUserStore();
+		User user = user(1L);
+		store.put(user);
+
+		User first = user(1L);
+		first.setBirthdate(LocalDate.of(1990, 1, 1));
+		assertTrue(store.replace(user, first));
+		assertFalse(store.replace(user, user(1L)));
+		assertEquals(first, store.findById(1L).get());
+		assertEquals(1, store.findByBirthdateBetween(LocalDate.of(1990, 1, 1), LocalDate.of(1990, 1, 1)).size());
+		assertTrue(store.findByBirthdateBetween(LocalDate.of(2002, 1, 1), LocalDate.of(2002, 1, 1)).isEmpty());
+
+		store.remove(1L);
+		assertFalse(store.replace(first, user(1L)));
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	void testReadsAreCopies() {
+		LongHashUserStore store = new LongHashUserStore();
+		User user = user(1L);
+		store.put(user);
+		user.setEmail("changed@mail.com");
+
+		User read = store.findById(1L).get();
+		assertNotSame(read, store.findById(1L).get());
+		assertEquals("mail@mail.com", read.getEmail());
+		read.setFirstname("Changed");
+		assertEquals("firstname", store.findById(1L).get().getFirstname());
+
+		User replacement = user(1L);
+		replacement.setLastname("Replacement");
+		assertFalse(store.replace(read, replacement));
+		assertTrue(store.replace(user(1L), replacement));
+		assertEquals("Replacement", store.values().get(0).getLastname());
+	}
+
+	@Test
+	void testForEachByBirthdateAfter() {
+		LongHashUserStore store = new LongHashUserStore();
+		LocalDate day = LocalDate.of(2002, 1, 1);
+		for (long id = 1; id <= 6; id++) {
+			User user = user(id);
+			user.setBirthdate(day.plusDays(id % 3));
+			store.put(user);
+		}
+
+		List<Long> ids = new ArrayList<>();
+		store.forEachByBirthdateBetween(day.plusDays(1), 1L, day.plusDays(2), user -> {
+			ids.add(user.getId());
+			return ids.size() < 2;
+		});
+
+		assertEquals(List.of(4L, 2L), ids);
+	}
+
+	@Test
+	void testAgainstHashMap() {
+		LongHashUserStore store = new LongHashUserStore();
+		Map<Long, User> expected = new HashMap<>();
+		Random random = new Random(42);
+
+		for (int i = 0; i < 100_000; i++) {
+			long id = random.nextInt(5_000) - 100;
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.remove(id), store.remove(id));
+			} else {
+				User user = user(id);
+				assertEquals(expected.put(id, user), store.put(user));
+			}
+		}
+
+		assertEquals(expected.size(), store.size());
+		for (long id = -100; id < 4_900; id++) {
+			assertEquals(expected.containsKey(id), store.contains(id));
+		}
+		assertEquals(expected.size(), store.values().size());
+	}
+
+	@Test
+	void testClear() {
+		LongHashUserStore store = new LongHashUserStore(1);
+		for (long id = 0; id < 100; id++) {
+			store.put(user(id));
+		}
+		store.clear();
+
+		assertEquals(0, store.size());
+		assertFalse(store.contains(5L));
+		assertTrue(store.values().isEmpty());
+	}
+
+	private static User user(long id) {
+		User user = new User("mail@mail.com", "firstname", "lastname", LocalDate.of(2002, 1, 1), "address", "phone");
+		user.setId(id);
+		return user;
+	}
+
+}
@@ -0,0 +1,113 @@
+package com.holyk.clearsolutions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+import com.holyk.clearsolutions.store.OffHeapUserStore;
+
+class OffHeapUserStoreTest {
+
+	private static final LocalDate EARLIEST = LocalDate.of(1990, 1, 1);
+
+	@Test
+	void testAgainstLongHashUserStore() {
+		Random random = new Random(42);
+		LongHashUserStore expected = new LongHashUserStore();
+		OffHeapUserStore store = new OffHeapUserStore();
+
+		for (int i = 0; i < 50_000; i++) {
+			long id = random.nextInt(3_000) - 100;
+			switch (random.nextInt(4)) {
+			case 0 -> assertEquals(expected.remove(id), store.remove(id));
+			case 1 -> {
+				User user = user(id, random.nextInt(100));
+				assertEquals(expected.put(user), store.put(user));
+			}
+			case 2 -> {
+				User current = store.findById(id).orElse(null);
+				assertEquals(expected.findById(id).orElse(null), current);
+				if (current != null) {
+					User replacement = user(id, random.nextInt(100));
+					assertTrue(store.replace(current, replacement));
+					// compared by value, an equal replacement still matches
+					assertEquals(replacement.equals(current), store.replace(current, replacement));
+					expected.put(replacement);
+				}
+			}
+			default -> assertEquals(expected.contains(id), store.contains(id));
+			}
+		}
+
+		assertEquals(expected.size(), store.size());
+		assertEquals(expected.nextId(), store.nextId());
+		Comparator<User> byId = Comparator.comparingLong(User::getId);
+		assertEquals(expected.values().stream().sorted(byId).toList(), store.values().stream().sorted(byId).toList());
+		for (int day = 0; day < 100; day += 7) {
+			LocalDate from = EARLIEST.plusDays(day);
+			LocalDate to = from.plusDays(random.nextInt(30));
+			assertEquals(expected.findByBirthdateBetween(from, to), store.findByBirthdateBetween(from, to));
+		}
+		List<User> page = new ArrayList<>();
+		store.forEachByBirthdateBetween(EARLIEST.plusDays(50), 1_000L, EARLIEST.plusDays(99), user -> {
+			page.add(user);
+			return page.size() < 10;
+		});
+		List<User> expectedPage = new ArrayList<>();
+		expected.forEachByBirthdateBetween(EARLIEST.plusDays(50), 1_000L, EARLIEST.plusDays(99), user -> {
+			expectedPage.add(user);
+			return expectedPage.size() < 10;
+		});
+		assertEquals(expectedPage, page);
+
+		store.clear();
+		assertEquals(0, store.size());
+		assertTrue(store.values().isEmpty());
+	}
+
+	@Test
+	void testCompaction() {
+		OffHeapUserStore store = new OffHeapUserStore();
+		String address = "Їжака ".repeat(2_000);
+		for (int i = 0; i < 2_000; i++) {
+			User user = user(1 + i % 10, i % 100);
+			user.setAddress(address + i);
+			store.put(user);
+		}
+
+		assertEquals(10, store.size());
+		User last = store.findById(10L).get();
+		assertEquals(address + 1_999, last.getAddress());
+		assertEquals(EARLIEST.plusDays(99), last.getBirthdate());
+		// 2000 addresses of 24 KB were written, only the live ones are kept
+		assertTrue(store.offHeapBytes() < 16 << 20, () -> "Off-heap bytes: " + store.offHeapBytes());
+	}
+
+	@Test
+	void testBirthdateOutOfRange() {
+		User user = user(1L, 0);
+		user.setBirthdate(LocalDate.MAX);
+		OffHeapUserStore store = new OffHeapUserStore();
+
+		assertThrows(IllegalArgumentException.class, () -> store.put(user));
+		assertEquals(0, store.size());
+	}
+
+	private static User user(long id, int day) {
+		User user = new User("mail" + id + "@mail.com", "firstname", "Їжак", EARLIEST.plusDays(day),
+				id % 5 == 0 ? null : "address", id % 3 == 0 ? null : "phone");
+		user.setId(id);
+		return user;
+	}
+
+}
@@ -0,0 +1,153 @@
+package com.holyk.clearsolutions;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.services.UserService;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+import com.holyk.clearsolutions.store.ShardedUserStore;
+
+class ShardedUserStoreTest {
+
+	private static final LocalDate EARLIEST = LocalDate.of(1990, 1, 1);
+
+	private static User user(long id, LocalDate birthdate) {
+		User user = new User("mail" + id + "@mail.com", "John", "Doe", birthdate, null, null);
+		user.setId(id);
+		return user;
+	}
+
+	/**
+	 * Ranges give the same users in the same order as a single store
+	 */
+	@Test
+	void testRangesMergeShards() {
+		ShardedUserStore sharded = new ShardedUserStore(5);
+		LongHashUserStore single = new LongHashUserStore();
+		Random random = new Random(42);
+		for (long id = 1; id <= 3000; id++) {
+			User user = user(id, EARLIEST.plusDays(random.nextInt(200)));
+			sharded.put(user);
+			single.put(user);
+		}
+		for (User user : single.findByBirthdateBetween(EARLIEST, EARLIEST.plusDays(20))) {
+			if (user.getId() % 3 == 0) {
+				sharded.remove(user.getId());
+				single.remove(user.getId());
+			}
+		}
+
+		LocalDate from = EARLIEST.plusDays(10);
+		LocalDate to = EARLIEST.plusDays(150);
+		List<User> expected = single.findByBirthdateBetween(from, to);
+		assertEquals(expected, sharded.findByBirthdateBetween(from, to));
+
+		List<User> visited = new ArrayList<>();
+		sharded.forEachByBirthdateBetween(from, Long.MIN_VALUE, to, visited::add);
+		assertEquals(expected, visited);
+
+		User after = expected.get(500);
+		List<User> page = new ArrayList<>();
+		sharded.forEachByBirthdateBetween(after.getBirthdate(), after.getId(), to, user -> {
+			page.add(user);
+			return page.size() < 100;
+		});
+		assertEquals(expected.subList(501, 601), page);
+		assertEquals(single.size(), sharded.size());
+	}
+
+	@Test
+	void testBatchesKeepOrder() {
+		ShardedUserStore store = new ShardedUserStore(3);
+		List<User> users = new ArrayList<>();
+		for (long id = 1; id <= 10; id++) {
+			users.add(user(id, EARLIEST));
+		}
+		store.putAll(users);
+
+		List<User> replacements = List.of(user(7, EARLIEST.plusDays(1)), user(42, EARLIEST), user(2, EARLIEST));
+		List<User> replaced = store.replaceAll(replacements);
+		assertEquals(users.get(6), replaced.get(0));
+		assertNull(replaced.get(1));
+		assertEquals(users.get(1), replaced.get(2));
+
+		List<User> removed = store.removeAll(new long[] { 9, 4, 42, 9 });
+		assertEquals(users.get(8), removed.get(0));
+		assertEquals(users.get(3), removed.get(1));
+		assertNull(removed.get(2));
+		assertNull(removed.get(3));
+		assertEquals(8, store.size());
+		assertEquals(11, store.nextId());
+	}
+
+	/**
+	 * One writer, single saves and a large batch alike, fills all shards evenly
+	 */
+	@Test
+	void testIdsSpreadOverShards() {
+		ShardedUserStore store = new ShardedUserStore(4);
+		UserService service = UserServiceBuilder.service(store);
+		List<UserRequest> batch = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			batch.add(UserRequest.of("b" + i + "@mail.com", "John", "Doe", EARLIEST, null, null));
+		}
+		int[] perShard = new int[4];
+		service.saveAll(batch).forEach(user -> perShard[(int) (user.getId() % 4)]++);
+		assertArrayEquals(new int[] { 250, 250, 250, 250 }, perShard);
+
+		for (int i = 0; i < 100; i++) {
+			perShard[(int) (service.save(UserRequest.of("s" + i + "@mail.com", "John", "Doe", EARLIEST, null, null))
+					.getId() % 4)]++;
+		}
+		assertArrayEquals(new int[] { 275, 275, 275, 275 }, perShard);
+	}
+
+	/**
+	 * Concurrent writers never get the same id
+	 */
+	@Test
+	void testConcurrentIdsAreUnique() throws Exception {
+		ShardedUserStore store = new ShardedUserStore(4);
+		store.put(user(41, EARLIEST));
+		UserService service = UserServiceBuilder.service(store);
+		Set<Long> ids = ConcurrentHashMap.newKeySet();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				int thread = t;
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 1000; i++) {
+						ids.add(service.save(UserRequest.of("t" + thread + "u" + i + "@mail.com", "John", "Doe",
+								EARLIEST, null, null)).getId());
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(4 * 1000, ids.size());
+		assertTrue(ids.stream().allMatch(id -> id > 41));
+		assertEquals(4 * 1000 + 1, store.size());
+	}
+
+}
@@ -0,0 +1,153 @@
+package com.holyk.clearsolutions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+import com.holyk.clearsolutions.store.MappedUserSnapshot;
+import com.holyk.clearsolutions.store.SnapshotUserStore;
+
+class SnapshotUserStoreTest {
+
+	private static final LocalDate EARLIEST = LocalDate.of(1990, 1, 1);
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void testReadSnapshot() throws IOException {
+		User user = user(7L, 3);
+		user.setAddress(null);
+		user.setFirstname("Їжак");
+		User noBirthdate = user(9L, 0);
+		noBirthdate.setBirthdate(null);
+		MappedUserSnapshot snapshot = write(List.of(noBirthdate, user(3L, 3), user), 12L);
+
+		SnapshotUserStore store = new SnapshotUserStore(snapshot);
+		assertEquals(3, store.size());
+		assertEquals(12L, store.nextId());
+		assertEquals(user, store.findById(7L).get());
+		assertEquals(store.findById(7L).get(), store.findById(7L).get());
+		assertEquals(noBirthdate, store.findById(9L).get());
+		assertFalse(store.contains(8L));
+		assertEquals(List.of(3L, 7L), store.findByBirthdateBetween(EARLIEST, EARLIEST.plusDays(10)).stream()
+				.map(User::getId).toList());
+	}
+
+	@Test
+	void testAgainstLongHashUserStore() throws IOException {
+		Random random = new Random(42);
+		LongHashUserStore expected = new LongHashUserStore();
+		List<User> initial = new ArrayList<>();
+		for (long id = 1; id <= 2_000; id++) {
+			User user = user(id, random.nextInt(100));
+			initial.add(user);
+			expected.put(user);
+		}
+		SnapshotUserStore store = new SnapshotUserStore(write(initial, 2_001L));
+
+		for (int i = 0; i < 20_000; i++) {
+			long id = 1 + random.nextInt(2_500);
+			switch (random.nextInt(4)) {
+			case 0 -> assertEquals(expected.remove(id), store.remove(id));
+			case 1 -> {
+				User user = user(id, random.nextInt(100));
+				assertEquals(expected.put(user), store.put(user));
+			}
+			case 2 -> {
+				User current = store.findById(id).orElse(null);
+				assertEquals(expected.findById(id).orElse(null), current);
+				if (current != null) {
+					User replacement = user(id, random.nextInt(100));
+					assertTrue(store.replace(current, replacement));
+					// compared by value, an equal replacement still matches
+					assertEquals(replacement.equals(current), store.replace(current, replacement));
+					expected.put(replacement);
+				}
+			}
+			default -> assertEquals(expected.contains(id), store.contains(id));
+			}
+		}
+
+		assertEquals(expected.size(), store.size());
+		assertEquals(expected.values().size(), store.values().size());
+		for (int day = 0; day < 100; day += 7) {
+			LocalDate from = EARLIEST.plusDays(day);
+			LocalDate to = from.plusDays(random.nextInt(30));
+			assertEquals(expected.findByBirthdateBetween(from, to), store.findByBirthdateBetween(from, to));
+		}
+		List<User> page = new ArrayList<>();
+		store.forEachByBirthdateBetween(EARLIEST.plusDays(50), 1_000L, EARLIEST.plusDays(99), user -> {
+			page.add(user);
+			return page.size() < 10;
+		});
+		List<User> expectedPage = new ArrayList<>();
+		expected.forEachByBirthdateBetween(EARLIEST.plusDays(50), 1_000L, EARLIEST.plusDays(99), user -> {
+			expectedPage.add(user);
+			return expectedPage.size() < 10;
+		});
+		assertEquals(expectedPage, page);
+	}
+
+	/**
+	 * A frozen view streamed to a new snapshot holds the changes, a later change
+	 * does not reach it
+	 */
+	@Test
+	void testFrozenSnapshot() throws IOException {
+		List<User> initial = new ArrayList<>();
+		for (long id = 1; id <= 10; id++) {
+			initial.add(user(id, (int) id));
+		}
+		SnapshotUserStore store = new SnapshotUserStore(write(initial, 11L));
+		store.remove(2L);
+		store.remove(5L);
+		store.put(user(5L, 50));
+		store.replace(user(7L, 70));
+		store.put(user(12L, 1));
+		store.put(user(11L, 0));
+		List<User> expected = store.values();
+
+		Supplier<Iterator<User>> frozen = store.frozen();
+		store.remove(1L);
+		store.put(user(13L, 0));
+		Path path = directory.resolve("frozen.bin");
+		MappedUserSnapshot.write(path, frozen, 13L);
+
+		SnapshotUserStore written = new SnapshotUserStore(MappedUserSnapshot.open(path));
+		assertEquals(expected.size(), written.size());
+		for (User user : expected) {
+			assertEquals(user, written.findById(user.getId()).get());
+		}
+		assertFalse(written.contains(2L));
+		assertFalse(written.contains(13L));
+	}
+
+	private MappedUserSnapshot write(List<User> users, long nextId) throws IOException {
+		Path path = directory.resolve("snapshot.bin");
+		MappedUserSnapshot.write(path, users, nextId);
+		return MappedUserSnapshot.open(path);
+	}
+
+	private static User user(long id, int day) {
+		User user = new User("mail" + id + "@mail.com", "firstname", "lastname", EARLIEST.plusDays(day), "address",
+				id % 3 == 0 ? null : "phone");
+		user.setId(id);
+		return user;
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.holyk.clearsolutions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.holyk.clearsolutions.controllers.UserImportResponse;
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.services.UserImporter;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+import com.holyk.clearsolutions.validation.ValidationError;
+
+class UserImporterTest {
+
+	@Test
+	void testImportInChunks() throws IOException {
+		List<Integer> chunks = new ArrayList<>();
+		LongHashUserStore store = new LongHashUserStore() {
+			@Override
+			public void putAll(List<User> users) {
+				chunks.add(users.size());
+				super.putAll(users);
+			}
+		};
+		UserImporter importer = new UserImporter(UserServiceBuilder.service(store),
+				JsonMapper.builder().findAndAddModules().build(), 4, 2, 65536);
+
+		StringBuilder upload = new StringBuilder();
+		for (int i = 0; i < 10; i++) {
+			upload.append("{\"data\": {\"email\": \"mail").append(i)
+					.append("@mail.com\", \"firstname\": \"John\", \"lastname\": \"Doe\", \"birthdate\": \"2002-01-01\"}}\n");
+		}
+		upload.append("not json\n");
+
+		UserImportResponse response = importer.importUsers(
+				new ByteArrayInputStream(upload.toString().getBytes(StandardCharsets.UTF_8)), request -> request.data().email().startsWith("mail3")
+						|| request.data().email().startsWith("mail7") ? ValidationError.USER_NOT_VALID : null);
+
+		assertEquals(List.of(4, 4), chunks);
+		assertEquals(11, response.lines());
+		assertEquals(8, response.imported());
+		assertEquals(3, response.rejected());
+		assertEquals(2, response.errors().size());
+		assertEquals(4, response.errors().get(0).line());
+		assertEquals("User is not valid!", response.errors().get(0).message());
+		assertEquals(8, store.size());
+	}
+
+	@Test
+	void testTooLongLineIsSkipped() throws IOException {
+		LongHashUserStore store = new LongHashUserStore();
+		UserImporter importer = new UserImporter(UserServiceBuilder.service(store),
+				JsonMapper.builder().findAndAddModules().build(), 4, 10, 200);
+
+		String user = "{\"data\": {\"email\": \"mail%d@mail.com\", \"firstname\": \"%s\", \"lastname\": \"Doe\", \"birthdate\": \"2002-01-01\"}}\r\n";
+		String upload = String.format(user, 1, "John") + String.format(user, 2, "J".repeat(100_000))
+				+ String.format(user, 3, "John");
+
+		UserImportResponse response = importer.importUsers(
+				new ByteArrayInputStream(upload.getBytes(StandardCharsets.UTF_8)), request -> null);
+
+		assertEquals(3, response.lines());
+		assertEquals(2, response.imported());
+		assertEquals(1, response.rejected());
+		assertEquals(2, response.errors().get(0).line());
+		assertEquals("Line is longer than 200 characters!", response.errors().get(0).message());
+		assertEquals(2, store.size());
+	}
+
+}
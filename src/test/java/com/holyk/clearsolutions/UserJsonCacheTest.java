@@ -0,0 +1,84 @@
+package com.holyk.clearsolutions;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.services.UserJsonCache;
+import com.holyk.clearsolutions.services.UserNdjsonWriter;
+import com.holyk.clearsolutions.services.UserService;
+
+class UserJsonCacheTest {
+
+	private final ObjectMapper mapper = new ObjectMapper().findAndRegisterModules()
+			.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+	private static UserRequest user(String email, String firstname) {
+		return UserRequest.of(email, firstname, "Doe", LocalDate.of(1990, 1, 1), null, null);
+	}
+
+	@Test
+	void testCachedUntilChanged() throws Exception {
+		UserJsonCache json = new UserJsonCache(mapper, 1 << 20);
+		UserService service = new UserServiceBuilder().json(json).build();
+		User user = service.save(user("a@mail.com", "John"));
+
+		byte[] first = json.json(user);
+		assertArrayEquals(mapper.writeValueAsBytes(user), first);
+		assertSame(first, json.json(service.findUserById(user.getId()).get()));
+		assertEquals(1, json.stats().hitCount());
+
+		User updated = service.update(user.getId(), user("a@mail.com", "Jane"));
+		assertArrayEquals(mapper.writeValueAsBytes(updated), json.json(updated));
+		assertEquals(2, json.stats().missCount());
+
+		User patched = service.patch(user.getId(), JsonPatch.fromJson(
+				mapper.readTree("[{\"op\": \"replace\", \"path\": \"/lastname\", \"value\": \"Roe\"}]")));
+		assertArrayEquals(mapper.writeValueAsBytes(patched), json.json(patched));
+		assertEquals(3, json.stats().missCount());
+	}
+
+	/**
+	 * An entry of an older version of the user is not served
+	 */
+	@Test
+	void testStaleEntry() throws Exception {
+		UserJsonCache json = new UserJsonCache(mapper, 1 << 20);
+		User before = new User("a@mail.com", "John", "Doe", LocalDate.of(1990, 1, 1), null, null);
+		before.setId(1);
+		before.setVersion(1);
+		User after = new User("a@mail.com", "Jane", "Doe", LocalDate.of(1990, 1, 1), null, null);
+		after.setId(1);
+		after.setVersion(2);
+
+		json.json(before);
+		assertArrayEquals(mapper.writeValueAsBytes(after), json.json(after));
+		assertArrayEquals(mapper.writeValueAsBytes(before), json.json(before));
+	}
+
+	@Test
+	void testNdjson() throws Exception {
+		UserJsonCache json = new UserJsonCache(mapper, 1 << 20);
+		User user = new User("a@mail.com", "John", "Doe", LocalDate.of(1990, 1, 1), "address", "phone");
+		user.setId(7);
+		user.setVersion(1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new UserNdjsonWriter(json).write(out, users -> List.of(user, user).forEach(users));
+
+		String line = mapper.writeValueAsString(user);
+		assertEquals(line + "\n" + line + "\n", out.toString("UTF-8"));
+		assertEquals(1, json.stats().hitCount());
+	}
+
+}
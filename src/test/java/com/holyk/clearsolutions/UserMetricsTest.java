@@ -0,0 +1,67 @@
+package com.holyk.clearsolutions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.exceptions.UserNotFoundException;
+import com.holyk.clearsolutions.exceptions.UserPatchIsNotValidException;
+import com.holyk.clearsolutions.services.UserMetrics;
+import com.holyk.clearsolutions.services.UserMetrics.Mode;
+import com.holyk.clearsolutions.services.UserService;
+import com.holyk.clearsolutions.validation.UserValidator;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class UserMetricsTest {
+
+	@Test
+	void testServiceMetrics() throws Exception {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		UserService service = new UserServiceBuilder().validator(new UserValidator(18)).metrics(new UserMetrics(registry, Mode.FULL)).build();
+		for (int i = 0; i < 3; i++) {
+			service.save(UserRequest.of("mail" + i + "@mail.com", "John", "Doe", LocalDate.of(1990, 1, 1 + i), null,
+					null));
+		}
+		assertEquals(2, service.getUsersByDateRange(LocalDate.of(1990, 1, 2), LocalDate.of(1990, 1, 9)).size());
+		service.delete(1);
+
+		JsonPatch young = JsonPatch.fromJson(new ObjectMapper()
+				.readTree("[{\"op\": \"replace\", \"path\": \"/birthdate\", \"value\": \"2020-01-01\"}]"));
+		assertThrows(UserPatchIsNotValidException.class, () -> service.patch(2, young));
+		assertThrows(UserPatchIsNotValidException.class, () -> service.patch(2, young));
+		assertThrows(UserNotFoundException.class, () -> service.patch(1, young));
+
+		assertEquals(3, registry.get("users.operations").tag("operation", "save").timer().count());
+		assertEquals(1, registry.get("users.operations").tag("operation", "delete").timer().count());
+		assertEquals(3, registry.get("users.operations").tag("operation", "patch").timer().count());
+		assertEquals(2, registry.get("users.patch.rejected").tag("exception", "UserPatchIsNotValidException")
+				.counter().count());
+		assertEquals(1, registry.get("users.patch.rejected").tag("exception", "UserNotFoundException").counter()
+				.count());
+		assertEquals(2, registry.get("users.range.size").summary().totalAmount());
+		assertEquals(2, registry.get("users.store.size").gauge().value());
+		assertEquals(2, registry.get("users.email.index.size").gauge().value());
+	}
+
+	@Test
+	void testModes() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		new UserServiceBuilder().validator(new UserValidator(18)).metrics(new UserMetrics(registry, Mode.LIGHT)).build()
+				.save(UserRequest.of("mail@mail.com", "John", "Doe", LocalDate.of(1990, 1, 1), null, null));
+		assertEquals(1, registry.get("users.operations").tag("operation", "save").timer().count());
+
+		SimpleMeterRegistry off = new SimpleMeterRegistry();
+		new UserServiceBuilder().validator(new UserValidator(18)).metrics(new UserMetrics(off, Mode.OFF)).build()
+				.save(UserRequest.of("mail@mail.com", "John", "Doe", LocalDate.of(1990, 1, 1), null, null));
+		assertNull(off.find("users.operations").timer());
+	}
+
+}
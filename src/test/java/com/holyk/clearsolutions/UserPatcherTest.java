@@ -0,0 +1,105 @@
+package com.holyk.clearsolutions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+import java.time.LocalDate;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.services.UserPatcher;
+
+class UserPatcherTest {
+
+	private final ObjectMapper mapper = JsonMapper.builder().findAndAddModules()
+			.enable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES).build();
+	private final UserPatcher patcher = new UserPatcher(mapper);
+
+	@ParameterizedTest
+	@MethodSource("patches")
+	void testSameResultAsJsonNodeRoundTrip(String operations) throws Exception {
+		User user = new User("mail@mail.com", "John", "Doe", LocalDate.of(2002, 1, 1), "address", null);
+		user.setId(7);
+		JsonPatch patch = JsonPatch.fromJson(mapper.readTree(operations));
+
+		Object expected = outcome(() -> {
+			JsonNode patched = patch.apply(mapper.valueToTree(user));
+			return mapper.treeToValue(patched, User.class);
+		});
+		Object actual = outcome(() -> patcher.apply(patch, user));
+
+		assertEquals(expected, actual);
+		if (actual instanceof User) {
+			assertNotSame(user, actual);
+		}
+		assertEquals("mail@mail.com", user.getEmail());
+	}
+
+	/**
+	 * Field operations do not need the JsonNode round trip, which this mapper
+	 * cannot do for lack of the java.time module
+	 */
+	@Test
+	void testFieldOperationsSkipRoundTrip() throws Exception {
+		User user = new User("mail@mail.com", "John", "Doe", LocalDate.of(2002, 1, 1), "address", null);
+		JsonPatch patch = JsonPatch.fromJson(mapper.readTree(
+				"[{\"op\": \"replace\", \"path\": \"/birthdate\", \"value\": \"1999-12-31\"}]"));
+
+		User patched = new UserPatcher(new ObjectMapper()).apply(patch, user);
+		assertEquals(LocalDate.of(1999, 12, 31), patched.getBirthdate());
+	}
+
+	private static Stream<String> patches() {
+		//@formatter:off
+		return Stream.of(
+				"[]",
+				"[{\"op\": \"replace\", \"path\": \"/email\", \"value\": \"new@mail.com\"}]",
+				"[{\"op\": \"add\", \"path\": \"/address\", \"value\": \"new address\"}]",
+				"[{\"op\": \"add\", \"path\": \"/phone\", \"value\": \"+380\"}]",
+				"[{\"op\": \"remove\", \"path\": \"/lastname\"}]",
+				"[{\"op\": \"remove\", \"path\": \"/phone\"}]",
+				"[{\"op\": \"replace\", \"path\": \"/firstname\", \"value\": null}]",
+				"[{\"op\": \"replace\", \"path\": \"/firstname\", \"value\": \"\"}]",
+				"[{\"op\": \"replace\", \"path\": \"/firstname\", \"value\": 42}]",
+				"[{\"op\": \"replace\", \"path\": \"/birthdate\", \"value\": \"1999-12-31\"}]",
+				"[{\"op\": \"replace\", \"path\": \"/birthdate\", \"value\": \"31.12.1999\"}]",
+				"[{\"op\": \"replace\", \"path\": \"/birthdate\", \"value\": \"1999-02-30\"}]",
+				"[{\"op\": \"replace\", \"path\": \"/birthdate\", \"value\": \"1999-1-31\"}]",
+				"[{\"op\": \"replace\", \"path\": \"/birthdate\", \"value\": \"\"}]",
+				"[{\"op\": \"replace\", \"path\": \"/birthdate\", \"value\": [1999, 12, 31]}]",
+				"[{\"op\": \"replace\", \"path\": \"/id\", \"value\": 8}]",
+				"[{\"op\": \"add\", \"path\": \"/unknown\", \"value\": \"x\"}]",
+				"[{\"op\": \"test\", \"path\": \"/email\", \"value\": \"other@mail.com\"}]",
+				"[{\"op\": \"copy\", \"from\": \"/firstname\", \"path\": \"/lastname\"}]",
+				"[{\"op\": \"replace\", \"path\": \"/email\", \"value\": \"a@mail.com\"},"
+						+ "{\"op\": \"remove\", \"path\": \"/address\"},"
+						+ "{\"op\": \"replace\", \"path\": \"/email\", \"value\": \"b@mail.com\"}]");
+		//@formatter:on
+	}
+
+	/**
+	 * Patched user or the class of the thrown exception
+	 */
+	private static Object outcome(ThrowingSupplier supplier) {
+		try {
+			return supplier.get();
+		} catch (Exception e) {
+			return e.getClass();
+		}
+	}
+
+	@FunctionalInterface
+	private interface ThrowingSupplier {
+		User get() throws Exception;
+	}
+
+}
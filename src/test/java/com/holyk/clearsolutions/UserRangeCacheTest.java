@@ -0,0 +1,131 @@
+package com.holyk.clearsolutions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.services.UserRangeCache;
+import com.holyk.clearsolutions.services.UserService;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+import com.holyk.clearsolutions.validation.UserValidator;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class UserRangeCacheTest {
+
+	private static final LocalDate FROM = LocalDate.of(1990, 1, 1);
+	private static final LocalDate TO = LocalDate.of(1990, 1, 31);
+
+	private static UserRequest user(String email, LocalDate birthdate) {
+		return UserRequest.of(email, "John", "Doe", birthdate, null, null);
+	}
+
+	private static UserService service(UserRangeCache ranges) {
+		return new UserServiceBuilder().validator(new UserValidator(18)).ranges(ranges).build();
+	}
+
+	@Test
+	void testHitsAndPreciseInvalidation() {
+		UserRangeCache ranges = new UserRangeCache(1000, Duration.ofMinutes(1));
+		UserService service = service(ranges);
+		service.save(user("a@mail.com", FROM.plusDays(1)));
+
+		List<User> first = service.getUsersByDateRange(FROM, TO);
+		assertSame(first, service.getUsersByDateRange(FROM, TO));
+		assertSame(first, service.getUsersByDateRange(TO, FROM));
+		assertEquals(2, ranges.stats().hitCount());
+
+		service.save(user("b@mail.com", TO.plusDays(1)));
+		assertSame(first, service.getUsersByDateRange(FROM, TO));
+		assertEquals(0, ranges.invalidations());
+
+		service.save(user("c@mail.com", TO));
+		assertEquals(2, service.getUsersByDateRange(FROM, TO).size());
+		assertEquals(1, ranges.invalidations());
+	}
+
+	@Test
+	void testWritesInvalidate() throws Exception {
+		UserRangeCache ranges = new UserRangeCache(1000, Duration.ofMinutes(1));
+		UserService service = service(ranges);
+		long id = service.save(user("a@mail.com", FROM)).getId();
+		assertEquals(1, service.getUsersByDateRange(FROM, TO).size());
+
+		service.update(id, user("a@mail.com", TO.plusYears(1)));
+		assertEquals(0, service.getUsersByDateRange(FROM, TO).size());
+
+		JsonPatch back = JsonPatch.fromJson(new ObjectMapper()
+				.readTree("[{\"op\": \"replace\", \"path\": \"/birthdate\", \"value\": \"1990-01-15\"}]"));
+		service.patch(id, back);
+		assertEquals("1990-01-15", service.getUsersByDateRange(FROM, TO).get(0).getBirthdate().toString());
+
+		service.delete(id);
+		assertEquals(0, service.getUsersByDateRange(FROM, TO).size());
+		assertEquals(3, ranges.invalidations());
+	}
+
+	@Test
+	void testLoadKeptUnlessItsDaysWereWritten() {
+		List<Runnable> during = new ArrayList<>();
+		LongHashUserStore store = new LongHashUserStore() {
+			@Override
+			public List<User> findByBirthdateBetween(LocalDate from, LocalDate to) {
+				during.forEach(Runnable::run);
+				during.clear();
+				return super.findByBirthdateBetween(from, to);
+			}
+		};
+		UserRangeCache ranges = new UserRangeCache(1000, Duration.ofMinutes(1));
+		UserService service = new UserServiceBuilder().store(store).ranges(ranges).build();
+
+		during.add(() -> service.save(user("a@mail.com", TO.plusDays(1))));
+		List<User> first = service.getUsersByDateRange(FROM, TO);
+		assertSame(first, service.getUsersByDateRange(FROM, TO));
+
+		during.add(() -> service.save(user("b@mail.com", TO.plusDays(1))));
+		List<User> next = service.getUsersByDateRange(FROM, TO.plusDays(1));
+		assertEquals(2, next.size());
+		assertNotSame(next, service.getUsersByDateRange(FROM, TO.plusDays(1)));
+	}
+
+	@Test
+	void testBoundedByUsers() {
+		UserRangeCache ranges = new UserRangeCache(10, Duration.ofMinutes(1));
+		UserService service = service(ranges);
+		for (int i = 0; i < 20; i++) {
+			service.save(user("mail" + i + "@mail.com", FROM.plusDays(i)));
+		}
+		assertEquals(20, service.getUsersByDateRange(FROM, TO).size());
+		assertEquals(20, service.getUsersByDateRange(FROM, TO).size());
+		assertEquals(0, ranges.stats().hitCount());
+	}
+
+	@Test
+	void testMeters() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		UserRangeCache ranges = new UserRangeCache(1000, Duration.ofMinutes(1));
+		ranges.bind(registry);
+		UserService service = service(ranges);
+		service.getUsersByDateRange(FROM, TO);
+		service.getUsersByDateRange(FROM, TO);
+		service.save(user("a@mail.com", FROM));
+
+		assertEquals(1, registry.get("cache.gets").tag("cache", "users.range").tag("result", "hit")
+				.functionCounter().count());
+		assertEquals(1, registry.get("cache.gets").tag("cache", "users.range").tag("result", "miss")
+				.functionCounter().count());
+		assertEquals(1, registry.get("users.range.cache.invalidations").functionCounter().count());
+	}
+
+}
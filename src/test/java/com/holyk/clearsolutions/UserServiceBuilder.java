@@ -0,0 +1,68 @@
+package com.holyk.clearsolutions;
+
+import com.holyk.clearsolutions.services.UserJsonCache;
+import com.holyk.clearsolutions.services.UserMetrics;
+import com.holyk.clearsolutions.services.UserPatcher;
+import com.holyk.clearsolutions.services.UserRangeCache;
+import com.holyk.clearsolutions.services.UserService;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+import com.holyk.clearsolutions.store.UserStore;
+import com.holyk.clearsolutions.validation.UserValidator;
+
+/**
+ * {@link UserService} for tests and benchmarks. By default users are kept in a
+ * {@link LongHashUserStore}, patched users are not validated and there are no
+ * metrics and no caches.
+ */
+public class UserServiceBuilder {
+
+	private UserStore store;
+	private UserPatcher patcher = new UserPatcher();
+	private UserValidator validator;
+	private UserMetrics metrics = UserMetrics.NONE;
+	private UserRangeCache ranges = UserRangeCache.NONE;
+	private UserJsonCache json = UserJsonCache.NONE;
+
+	public static UserService service(UserStore store) {
+		return new UserServiceBuilder().store(store).build();
+	}
+
+	public UserServiceBuilder store(UserStore store) {
+		this.store = store;
+		return this;
+	}
+
+	public UserServiceBuilder patcher(UserPatcher patcher) {
+		this.patcher = patcher;
+		return this;
+	}
+
+	/**
+	 * @param validator of patched users
+	 */
+	public UserServiceBuilder validator(UserValidator validator) {
+		this.validator = validator;
+		return this;
+	}
+
+	public UserServiceBuilder metrics(UserMetrics metrics) {
+		this.metrics = metrics;
+		return this;
+	}
+
+	public UserServiceBuilder ranges(UserRangeCache ranges) {
+		this.ranges = ranges;
+		return this;
+	}
+
+	public UserServiceBuilder json(UserJsonCache json) {
+		this.json = json;
+		return this;
+	}
+
+	public UserService build() {
+		return new UserService(store == null ? new LongHashUserStore() : store, patcher, validator, metrics, ranges,
+				json);
+	}
+
+}
@@ -0,0 +1,178 @@
+package com.holyk.clearsolutions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.fge.jsonpatch.JsonPatch;
+import com.github.fge.jsonpatch.JsonPatchException;
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.exceptions.UserVersionMismatchException;
+import com.holyk.clearsolutions.services.UserService;
+import com.holyk.clearsolutions.services.VersionedUser;
+
+class UserServiceConcurrencyTest {
+
+	private static final int THREADS = 8;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final AtomicLong emails = new AtomicLong();
+
+	@Test
+	void testConcurrentSaveGivesUniqueIds() throws Exception {
+		UserService service = new UserServiceBuilder().build();
+		Set<Long> ids = ConcurrentHashMap.newKeySet();
+		int perThread = 5_000;
+
+		runConcurrently(() -> {
+			for (int i = 0; i < perThread; i++) {
+				ids.add(service.save(request(LocalDate.of(2000, 1, 1).plusDays(i % 100))).getId());
+			}
+			return null;
+		});
+
+		assertEquals(THREADS * perThread, ids.size());
+		assertEquals(THREADS * perThread, service.getList().size());
+		assertEquals(THREADS * perThread + 1, service.getIncrement());
+	}
+
+	/**
+	 * Every thread increments a counter kept in the phone field with a
+	 * test-and-replace patch, retrying when the test fails. A lost update would
+	 * leave the counter below the number of successful patches.
+	 */
+	@Test
+	void testConcurrentPatchLosesNoUpdates() throws Exception {
+		UserService service = new UserServiceBuilder().build();
+		User user = service.save(request(LocalDate.of(2000, 1, 1)));
+		long id = user.getId();
+		int perThread = 300;
+
+		runConcurrently(() -> {
+			int done = 0;
+			while (done < perThread) {
+				int current = Integer.parseInt(service.findUserById(id).get().getPhone());
+				try {
+					service.patch(id, increment(current));
+					done++;
+				} catch (JsonPatchException e) {
+					// somebody else was first, read again
+				}
+			}
+			return null;
+		});
+
+		assertEquals(String.valueOf(THREADS * perThread), service.findUserById(id).get().getPhone());
+	}
+
+	/**
+	 * Like {@link #testConcurrentPatchLosesNoUpdates()}, but the counter is
+	 * replaced by a full update conditional on the version that was read
+	 */
+	@Test
+	void testConditionalUpdateLosesNoUpdates() throws Exception {
+		UserService service = new UserServiceBuilder().build();
+		User user = service.save(request(LocalDate.of(2000, 1, 1)));
+		long id = user.getId();
+		int perThread = 300;
+
+		runConcurrently(() -> {
+			int done = 0;
+			long seen = 0;
+			while (done < perThread) {
+				VersionedUser current = service.findVersionedUserById(id).get();
+				if (current.version() < seen) {
+					throw new AssertionError("Version went back to " + current.version());
+				}
+				seen = current.version();
+				int counter = Integer.parseInt(current.user().getPhone());
+				UserRequest next = UserRequest.of(user.getEmail(), "firstname", "lastname", user.getBirthdate(),
+						"address", String.valueOf(counter + 1));
+				try {
+					service.update(id, next, version -> version == current.version());
+					done++;
+				} catch (UserVersionMismatchException e) {
+					// somebody else was first, read again
+				}
+			}
+			return null;
+		});
+
+		VersionedUser last = service.findVersionedUserById(id).get();
+		assertEquals(String.valueOf(THREADS * perThread), last.user().getPhone());
+		assertEquals(THREADS * perThread + 1, last.version());
+	}
+
+	@Test
+	void testConcurrentWritesKeepRangeQueriesConsistent() throws Exception {
+		UserService service = new UserServiceBuilder().build();
+		LocalDate from = LocalDate.of(1990, 1, 1);
+		LocalDate to = LocalDate.of(1990, 12, 31);
+
+		runConcurrently(() -> {
+			List<User> mine = new ArrayList<>();
+			for (int i = 0; i < 500; i++) {
+				mine.add(service.save(request(from.plusDays(i % 365))));
+				if (i % 3 == 0) {
+					service.delete(mine.remove(0).getId());
+				}
+				for (User found : service.getUsersByDateRange(from, to)) {
+					if (found.getBirthdate().isBefore(from) || found.getBirthdate().isAfter(to)) {
+						throw new AssertionError("Out of range " + found);
+					}
+				}
+			}
+			return null;
+		});
+
+		assertEquals(service.getList().size(), service.getUsersByDateRange(from, to).size());
+	}
+
+	private void runConcurrently(Callable<Void> task) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<Void>> futures = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				futures.add(executor.submit(() -> {
+					start.await();
+					return task.call();
+				}));
+			}
+			start.countDown();
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private JsonPatch increment(int current) throws Exception {
+		//@formatter:off
+		return JsonPatch.fromJson(mapper.readTree("["
+				+ "{\"op\": \"test\", \"path\": \"/phone\", \"value\": \"" + current + "\"},"
+				+ "{\"op\": \"replace\", \"path\": \"/phone\", \"value\": \"" + (current + 1) + "\"}]"));
+		//@formatter:on
+	}
+
+	private UserRequest request(LocalDate birthdate) {
+		return UserRequest.of("mail" + emails.incrementAndGet() + "@mail.com", "firstname", "lastname", birthdate,
+				"address", "0");
+	}
+
+}
@@ -5,6 +5,8 @@ package com.holyk.clearsolutions;
 //@formatter:on
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -20,14 +22,23 @@ import com.github.fge.jsonpatch.JsonPatch;
 import com.github.fge.jsonpatch.JsonPatchException;
 import com.holyk.clearsolutions.controllers.UserRequest;
 import com.holyk.clearsolutions.entity.User;
+import com.holyk.clearsolutions.exceptions.UserEmailConflictException;
 import com.holyk.clearsolutions.exceptions.UserNotFoundException;
+import com.holyk.clearsolutions.exceptions.UserPatchIsNotValidException;
+import com.holyk.clearsolutions.exceptions.UserVersionMismatchException;
 import com.holyk.clearsolutions.services.UserService;
+import com.holyk.clearsolutions.services.VersionedUser;
+import com.holyk.clearsolutions.store.LongHashUserStore;
+import com.holyk.clearsolutions.store.OffHeapUserStore;
+import com.holyk.clearsolutions.store.SnapshotUserStore;
+import com.holyk.clearsolutions.store.UserStore;
+import com.holyk.clearsolutions.validation.UserValidator;
 
 class UserServiceTest {
 
 	@Test
 	void testUserCreate() {
-		UserService service = new UserService();
+		UserService service = new UserServiceBuilder().build();
 		UserRequest request = UserRequest.of("mail", "firstname", "lastname", LocalDate.of(2002, 1, 1), "address",
 				"phone");
 
@@ -41,12 +52,12 @@ class UserServiceTest {
 
 	@Test
 	void testUserDelete() {
-		UserService service = new UserService();
+		UserService service = new UserServiceBuilder().build();
 		UserRequest request = UserRequest.of("mail", "firstname", "lastname", LocalDate.of(2002, 1, 1), "address",
 				"phone");
 
 		User user = service.save(request);
-		service.save(request);
+		service.save(request("other"));
 		assertEquals(2, service.getList().size());
 		assertTrue(service.delete(user.getId()));
 		assertEquals(1, service.getList().size());
@@ -60,10 +71,14 @@ class UserServiceTest {
 		UserRequest request = UserRequest.of("mail", "firstname", "lastname", LocalDate.of(2002, 1, 1), "address",
 				"phone");
 		User user = User.of(request);
+		user.setId(3L);
 		User user2 = User.of(request);
+		user2.setId(4L);
 		user2.setBirthdate(LocalDate.of(2004, 1, 2));
+		LongHashUserStore store = new LongHashUserStore();
+		store.putAll(List.of(user, user2));
 
-		UserService service = new UserService(List.of(user, user2), 3L);
+		UserService service = UserServiceBuilder.service(store);
 
 		List<User> result = service.getUsersByDateRange(LocalDate.of(2001, 1, 1), LocalDate.of(2003, 1, 1));
 		assertEquals(1, result.size());
@@ -88,14 +103,38 @@ class UserServiceTest {
 
 	}
 
+	@Test
+	void testGetUsersByDateRangeFollowsWrites() {
+		UserService service = new UserServiceBuilder().build();
+		User user = service.save(UserRequest.of("mail", "firstname", "lastname", LocalDate.of(2002, 1, 1), "address",
+				"phone"));
+		User other = service.save(UserRequest.of("other", "firstname", "lastname", LocalDate.of(2002, 1, 1), "address",
+				"phone"));
+
+		List<User> result = service.getUsersByDateRange(LocalDate.of(2002, 1, 1), LocalDate.of(2002, 1, 1));
+		assertEquals(List.of(user, other), result);
+
+		service.update(user.getId(), UserRequest.of("mail", "firstname", "lastname", LocalDate.of(1990, 5, 5),
+				"address", "phone"));
+		result = service.getUsersByDateRange(LocalDate.of(2002, 1, 1), LocalDate.of(2002, 1, 1));
+		assertEquals(List.of(other), result);
+		result = service.getUsersByDateRange(LocalDate.of(1990, 1, 1), LocalDate.of(1991, 1, 1));
+		assertEquals(user.getId(), result.get(0).getId());
+
+		service.delete(other.getId());
+		result = service.getUsersByDateRange(LocalDate.of(1980, 1, 1), LocalDate.of(2005, 1, 1));
+		assertEquals(1, result.size());
+
+	}
+
 	@Test
 	void testUserUpdate() {
-		UserService service = new UserService();
+		UserService service = new UserServiceBuilder().build();
 		UserRequest request = UserRequest.of("mail", "firstname", "lastname", LocalDate.of(2002, 1, 1), "address",
 				"phone");
 
 		User user = service.save(request);
-		service.save(request);
+		service.save(request("other"));
 		user.setFirstname("Other");
 		user.setLastname("Lost name");
 
@@ -112,12 +151,12 @@ class UserServiceTest {
 
 	@Test
 	void testUserPatch() throws IOException, JsonPatchException {
-		UserService service = new UserService();
+		UserService service = new UserServiceBuilder().build();
 		UserRequest request = UserRequest.of("mail", "firstname", "lastname", LocalDate.of(2002, 1, 1), "address",
 				"phone");
 
 		User user = service.save(request);
-		service.save(request);
+		service.save(request("other"));
 
 		long id = user.getId();
 		user.setFirstname("Other");
@@ -141,7 +180,7 @@ class UserServiceTest {
 
 	@Test
 	void testUserPatchFail() throws JsonPatchException, IOException {
-		UserService service = new UserService();
+		UserService service = new UserServiceBuilder().build();
 
 		ObjectMapper mapper = new ObjectMapper();
 		mapper.findAndRegisterModules();
@@ -156,4 +195,113 @@ class UserServiceTest {
 
 	}
 
+	@Test
+	void testUserPatchNotValid() throws JsonPatchException, IOException {
+		UserService service = new UserServiceBuilder().validator(new UserValidator(18)).build();
+		User user = service.save(UserRequest.of("mail@mail.com", "firstname", "lastname", LocalDate.of(2002, 1, 1),
+				"address", "phone"));
+
+		ObjectMapper mapper = new ObjectMapper();
+
+		//@formatter:off
+		JsonNode json = mapper.readTree("[{\"op\": \"replace\","
+				+ "\"path\": \"/email\","
+				+ "\"value\": \"mail2\"}]");
+		//@formatter:on
+		JsonPatch patch = JsonPatch.fromJson(json);
+		assertThrows(UserPatchIsNotValidException.class, () -> service.patch(user.getId(), patch));
+		assertEquals("mail@mail.com", service.findUserById(user.getId()).get().getEmail());
+
+	}
+
+	@Test
+	void testUserBatch() {
+		UserService service = new UserServiceBuilder().build();
+		List<UserRequest> requests = List.of(request("mail1"), request("mail2"), request("mail3"), request("MAIL1"));
+
+		List<User> saved = service.saveAll(requests);
+		assertEquals(3, service.getList().size());
+		assertEquals(saved.get(0).getId() + 1, saved.get(1).getId());
+		assertEquals(saved.get(1).getId() + 1, saved.get(2).getId());
+		assertNull(saved.get(3));
+
+		User changed = User.of(UserRequest.of("mail2@mail.com", "changed", "lastname", LocalDate.of(2002, 1, 1), null, null));
+		changed.setId(saved.get(1).getId());
+		User missing = User.of(request("mail4"));
+		missing.setId(-1L);
+		User taken = User.of(request("mail1"));
+		taken.setId(saved.get(2).getId());
+		List<RuntimeException> errors = service.updateAll(List.of(changed, missing, taken));
+		assertNull(errors.get(0));
+		assertInstanceOf(UserNotFoundException.class, errors.get(1));
+		assertInstanceOf(UserEmailConflictException.class, errors.get(2));
+		assertEquals("changed", service.findUserById(changed.getId()).get().getFirstname());
+		assertEquals("mail3@mail.com", service.findUserById(taken.getId()).get().getEmail());
+
+		boolean[] deleted = service.deleteAll(new long[] { saved.get(0).getId(), -1L, saved.get(0).getId() });
+		assertTrue(deleted[0]);
+		assertFalse(deleted[1]);
+		assertFalse(deleted[2]);
+		assertEquals(2, service.getList().size());
+		assertTrue(service.findUserByEmail("mail1@mail.com").isEmpty());
+	}
+
+	/**
+	 * Every write gives the next version, also one that brings back an earlier
+	 * content
+	 */
+	@Test
+	void testVersions() throws IOException, JsonPatchException {
+		for (UserStore store : List.of(new LongHashUserStore(), new OffHeapUserStore(), new SnapshotUserStore())) {
+			UserService service = UserServiceBuilder.service(store);
+			long id = service.save(request("mail")).getId();
+			assertEquals(1, service.findVersionedUserById(id).get().version());
+
+			assertEquals(2, service.update(id, request("other")).getVersion());
+			User back = User.of(request("mail"));
+			back.setId(id);
+			service.updateAll(List.of(back));
+			assertEquals(3, back.getVersion());
+			JsonPatch patch = JsonPatch.fromJson(new ObjectMapper()
+					.readTree("[{\"op\": \"replace\", \"path\": \"/firstname\", \"value\": \"firstname\"}]"));
+			assertEquals(4, service.patch(id, patch, version -> version == 3).version());
+			assertThrows(UserVersionMismatchException.class, () -> service.patch(id, patch, version -> version == 3));
+
+			VersionedUser current = service.findVersionedUserById(id).get();
+			assertEquals(4, current.version());
+			assertEquals(4, current.user().getVersion());
+		}
+	}
+
+	@Test
+	void testUniqueEmail() throws IOException, JsonPatchException {
+		UserService service = new UserServiceBuilder().build();
+		User first = service.save(request("first"));
+		User second = service.save(request("second"));
+
+		assertEquals(first, service.findUserByEmail(" FIRST@mail.com").get());
+		assertThrows(UserEmailConflictException.class, () -> service.save(request("First")));
+		assertThrows(UserEmailConflictException.class, () -> service.update(second.getId(), request("first")));
+		JsonPatch patch = JsonPatch.fromJson(new ObjectMapper()
+				.readTree("[{\"op\": \"replace\", \"path\": \"/email\", \"value\": \"FIRST@mail.com\"}]"));
+		assertThrows(UserEmailConflictException.class, () -> service.patch(second.getId(), patch));
+		assertThrows(UserNotFoundException.class, () -> service.update(-1L, request("missing")));
+		assertTrue(service.findUserByEmail("missing@mail.com").isEmpty());
+
+		// an update frees the old email, an update to the same email keeps it
+		service.update(first.getId(), request("renamed"));
+		service.update(first.getId(), request("renamed"));
+		assertEquals(first.getId(), service.findUserByEmail("renamed@mail.com").get().getId());
+		assertEquals("first@mail.com", service.save(request("first")).getEmail());
+
+		assertTrue(service.delete(second.getId()));
+		assertEquals("second@mail.com", service.save(request("second")).getEmail());
+		assertEquals(3, service.getList().size());
+	}
+
+	private static UserRequest request(String name) {
+		return UserRequest.of(name + "@mail.com", "firstname", "lastname", LocalDate.of(2002, 1, 1), "address",
+				"phone");
+	}
+
 }
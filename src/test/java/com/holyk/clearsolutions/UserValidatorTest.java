@@ -0,0 +1,81 @@
+package com.holyk.clearsolutions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.holyk.clearsolutions.controllers.UserRequest;
+import com.holyk.clearsolutions.controllers.UserRequest.UserRequestData;
+import com.holyk.clearsolutions.validation.UserValidator;
+import com.holyk.clearsolutions.validation.UserValidator.Today;
+import com.holyk.clearsolutions.validation.ValidationError;
+
+class UserValidatorTest {
+
+	private static UserValidator validator(LocalDate today) {
+		Clock clock = Clock.fixed(today.atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+		return new UserValidator(18, clock, List.of((user, now) -> "Nobody".equals(user.lastname())
+				? ValidationError.USER_NOT_VALID : null));
+	}
+
+	private static UserRequestData user(String email, String lastname, LocalDate birthdate) {
+		return UserRequest.of(email, "John", lastname, birthdate, null, null).data();
+	}
+
+	@Test
+	void testFirstErrorWins() {
+		UserValidator validator = validator(LocalDate.of(2024, 5, 10));
+		Today today = validator.today();
+
+		assertNull(validator.validate(user("mail@mail.com", "Doe", LocalDate.of(2000, 1, 1)), today));
+		assertEquals(ValidationError.REQUIRED_FIELD_MISSING, validator.validate(null, today));
+		assertEquals(ValidationError.REQUIRED_FIELD_MISSING,
+				validator.validate(user("", "Doe", LocalDate.of(2000, 1, 1)), today));
+		assertEquals(ValidationError.USER_NOT_VALID,
+				validator.validate(user("mail", "Doe", LocalDate.of(2020, 1, 1)), today));
+		assertEquals(ValidationError.USER_NOT_VALID,
+				validator.validate(user("mail@mail.com", "Doe", LocalDate.of(2025, 1, 1)), today));
+		assertEquals(ValidationError.TOO_YOUNG,
+				validator.validate(user("mail@mail.com", "Doe", LocalDate.of(2020, 1, 1)), today));
+		assertEquals(ValidationError.USER_NOT_VALID,
+				validator.validate(user("mail@mail.com", "Nobody", LocalDate.of(2000, 1, 1)), today));
+	}
+
+	@Test
+	void testRange() {
+		UserValidator validator = validator(LocalDate.of(2024, 5, 10));
+		Today today = validator.today();
+
+		assertNull(validator.validateRange(LocalDate.of(2000, 1, 1), LocalDate.of(2024, 5, 10), today));
+		assertEquals(ValidationError.RANGE_MISSING, validator.validateRange(null, LocalDate.of(2000, 1, 1), today));
+		assertEquals(ValidationError.RANGE_NOT_VALID,
+				validator.validateRange(LocalDate.of(2001, 1, 1), LocalDate.of(2000, 1, 1), today));
+		assertEquals(ValidationError.RANGE_NOT_VALID,
+				validator.validateRange(LocalDate.of(2000, 1, 1), LocalDate.of(2024, 5, 11), today));
+	}
+
+	/**
+	 * The precomputed cutoff agrees with adding the age to every birthdate, also
+	 * around February 29
+	 */
+	@Test
+	void testAgeCutoff() {
+		for (LocalDate date = LocalDate.of(2019, 12, 1); date.isBefore(LocalDate.of(2025, 4, 1)); date = date
+				.plusDays(1)) {
+			UserValidator validator = validator(date);
+			Today today = validator.today();
+			for (LocalDate birthdate = date.minusYears(18).minusDays(3); birthdate
+					.isBefore(date.minusYears(18).plusDays(3)); birthdate = birthdate.plusDays(1)) {
+				boolean oldEnough = birthdate.plusYears(18).isBefore(date);
+				assertEquals(oldEnough, !birthdate.isAfter(today.latestBirthdate()), date + " " + birthdate);
+			}
+		}
+	}
+
+}